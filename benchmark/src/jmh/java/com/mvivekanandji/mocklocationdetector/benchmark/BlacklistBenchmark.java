@@ -0,0 +1,119 @@
+package com.mvivekanandji.mocklocationdetector.benchmark;
+
+import com.mvivekanandji.mocklocationdetector.core.BlacklistIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Blacklist membership and loading: the compiled {@link BlacklistIndex} against the HashSet
+ * it replaced, and parsing the text list against reading the binary asset.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx512m")
+public class BlacklistBenchmark {
+
+    private static final int LOOKUPS = 1024;
+
+    @Param({"64", "1024", "16384"})
+    public int rules;
+
+    private Set<String> hashSet;
+    private BlacklistIndex index;
+    private String[] lookups;
+    private byte[] text;
+    private byte[] binary;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        BlacklistIndex.Builder builder = new BlacklistIndex.Builder();
+        hashSet = new HashSet<>();
+        StringBuilder textBuilder = new StringBuilder();
+
+        for (int i = 0; i < rules; i++) {
+            String rule = packageName(random, i);
+            // a few vendor wide rules, like the bundled list has
+            if (i % 50 == 0) rule = rule.substring(0, rule.lastIndexOf('.')) + ".*";
+            builder.add(rule);
+            hashSet.add(rule);
+            textBuilder.append(rule).append('\n');
+        }
+        index = builder.build();
+        text = textBuilder.toString().getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        index.writeTo(outputStream);
+        binary = outputStream.toByteArray();
+
+        // roughly what a device looks like: almost every installed package is a miss
+        lookups = new String[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++)
+            lookups[i] = i % 16 == 0 ? packageName(new Random(42), 0)
+                    : packageName(random, rules + i);
+    }
+
+    static String packageName(Random random, int i) {
+        return "com.vendor" + random.nextInt(1000) + ".app" + i;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void hashSetContains(Blackhole blackhole) {
+        for (String lookup : lookups) blackhole.consume(hashSet.contains(lookup));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void indexContains(Blackhole blackhole) {
+        for (String lookup : lookups) blackhole.consume(index.contains(lookup));
+    }
+
+    /**
+     * What loading the bundled text file costs: line parsing plus building the index
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public BlacklistIndex loadText() throws IOException {
+        BlacklistIndex.Builder builder = new BlacklistIndex.Builder();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(text), StandardCharsets.UTF_8));
+
+        String line;
+        while ((line = reader.readLine()) != null)
+            if (!line.trim().isEmpty()) builder.add(line.trim());
+
+        return builder.build();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public BlacklistIndex loadBinary() throws IOException {
+        return BlacklistIndex.read(ByteBuffer.wrap(binary));
+    }
+}
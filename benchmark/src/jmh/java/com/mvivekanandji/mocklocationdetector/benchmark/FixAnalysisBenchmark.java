@@ -0,0 +1,129 @@
+package com.mvivekanandji.mocklocationdetector.benchmark;
+
+import com.mvivekanandji.mocklocationdetector.core.BatchFixScorer;
+import com.mvivekanandji.mocklocationdetector.core.Fix;
+import com.mvivekanandji.mocklocationdetector.core.FixColumns;
+import com.mvivekanandji.mocklocationdetector.core.FixScorer;
+import com.mvivekanandji.mocklocationdetector.core.ImpossibleTravelDetector;
+import com.mvivekanandji.mocklocationdetector.core.LocationPlausibilityAnalyzer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per fix cost of the location checks. Each invocation feeds the next fix of a pre generated
+ * track, wrapping around, so the detectors stay in their steady state.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+public class FixAnalysisBenchmark {
+
+    private static final int TRACK_LENGTH = 4096;
+    private static final int TRACKS = 64;
+
+    private Fix[] fixes;
+    private int next;
+
+    private FixScorer fixScorer;
+    private ImpossibleTravelDetector impossibleTravelDetector;
+    private LocationPlausibilityAnalyzer plausibilityAnalyzer;
+
+    private BatchFixScorer batchFixScorer;
+    private FixColumns fixColumns;
+    private float[] scores;
+    private int[] flags;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        fixes = new Fix[TRACK_LENGTH];
+        fixColumns = new FixColumns(TRACK_LENGTH * TRACKS);
+
+        double latitude = 28.6139;
+        double longitude = 77.2090;
+        long nanos = 0;
+        for (int i = 0; i < TRACK_LENGTH; i++) {
+            // walking pace with GPS noise, one fix per second
+            latitude += (random.nextDouble() - 0.5) * 2e-5;
+            longitude += (random.nextDouble() - 0.5) * 2e-5;
+            nanos += 1_000_000_000L;
+            fixes[i] = new Fix()
+                    .setLatitude(latitude)
+                    .setLongitude(longitude)
+                    .setAltitude(216 + random.nextGaussian() * 3)
+                    .setSpeed((float) (1.4 + random.nextGaussian() * 0.3))
+                    .setAccuracy((float) (5 + random.nextDouble() * 10))
+                    .setElapsedRealtimeNanos(nanos)
+                    .setFromMockProvider(random.nextInt(100) == 0);
+        }
+
+        for (int track = 0; track < TRACKS; track++)
+            for (Fix fix : fixes) fixColumns.add(track, fix);
+
+        scores = new float[fixColumns.size()];
+        flags = new int[fixColumns.size()];
+
+        fixScorer = new FixScorer();
+        impossibleTravelDetector = new ImpossibleTravelDetector();
+        plausibilityAnalyzer = new LocationPlausibilityAnalyzer();
+        batchFixScorer = new BatchFixScorer();
+    }
+
+    private Fix nextFix() {
+        Fix fix = fixes[next];
+        if (++next == TRACK_LENGTH) {
+            next = 0;
+            // the timestamps restart, do not let that read as a time reversal
+            fixScorer.reset();
+            impossibleTravelDetector.reset();
+        }
+        return fix;
+    }
+
+    /**
+     * Baseline, what isMockLocation costs on its own
+     */
+    @Benchmark
+    public boolean mockProviderFlag() {
+        return nextFix().isFromMockProvider();
+    }
+
+    @Benchmark
+    public int impossibleTravel() {
+        return impossibleTravelDetector.addFix(nextFix());
+    }
+
+    @Benchmark
+    public float plausibility() {
+        return plausibilityAnalyzer.addFix(nextFix());
+    }
+
+    @Benchmark
+    public float fixScorer() {
+        return fixScorer.score(nextFix());
+    }
+
+    /**
+     * Columnar batch scoring of {@value #TRACKS} tracks, one invocation scores every fix
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public float[] batchScorer() {
+        batchFixScorer.score(fixColumns, scores, flags);
+        return scores;
+    }
+}
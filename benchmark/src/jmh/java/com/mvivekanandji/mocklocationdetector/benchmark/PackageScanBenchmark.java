@@ -0,0 +1,278 @@
+package com.mvivekanandji.mocklocationdetector.benchmark;
+
+import com.mvivekanandji.mocklocationdetector.core.Blacklist;
+import com.mvivekanandji.mocklocationdetector.core.BlacklistIndex;
+import com.mvivekanandji.mocklocationdetector.core.BlacklistSnapshot;
+import com.mvivekanandji.mocklocationdetector.core.Cancellation;
+import com.mvivekanandji.mocklocationdetector.core.CertificateDigestIndex;
+import com.mvivekanandji.mocklocationdetector.core.DetectionRule;
+import com.mvivekanandji.mocklocationdetector.core.DetectionScan;
+import com.mvivekanandji.mocklocationdetector.core.PackageRules;
+import com.mvivekanandji.mocklocationdetector.core.PackageSource;
+import com.mvivekanandji.mocklocationdetector.core.ScannedPackage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scans of a synthetic device with 100 to 10k installed packages. PackageManager itself
+ * cannot run on the JVM, so a fake package source stands in for it: the detectionScan
+ * benchmarks run the library's DetectionScan over packages built one at a time from their
+ * requested permissions, as after an app was installed, or already known in memory, as when
+ * nothing changed. The other benchmarks are the bare matching loop over arrays: the
+ * permission match and the blacklist lookup.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+public class PackageScanBenchmark {
+
+    private static final String[] COMMON_PERMISSIONS = {
+            "android.permission.INTERNET",
+            "android.permission.ACCESS_NETWORK_STATE",
+            "android.permission.ACCESS_FINE_LOCATION",
+            "android.permission.ACCESS_COARSE_LOCATION",
+            "android.permission.CAMERA",
+            "android.permission.READ_EXTERNAL_STORAGE",
+            "android.permission.WRITE_EXTERNAL_STORAGE",
+            "android.permission.WAKE_LOCK",
+            "android.permission.VIBRATE",
+            "android.permission.RECEIVE_BOOT_COMPLETED",
+            "com.google.android.c2dm.permission.RECEIVE",
+            "android.permission.FOREGROUND_SERVICE"
+    };
+
+    @Param({"100", "1000", "10000"})
+    public int packages;
+
+    private static final Set<DetectionRule> ALL_RULES = EnumSet.allOf(DetectionRule.class);
+    private static final Set<DetectionRule> PERMISSION_RULE =
+            EnumSet.of(DetectionRule.MOCK_LOCATION_PERMISSION);
+
+    private String[] packageNames;
+    private String[][] requestedPermissions;
+    private BlacklistIndex blacklist;
+    private Blacklist detectorBlacklist;
+    private BlacklistSnapshot.Loader loader;
+    private FakePackageSource rescanSource;
+    private FakePackageSource inMemorySource;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        packageNames = new String[packages];
+        requestedPermissions = new String[packages][];
+        BlacklistIndex.Builder builder = new BlacklistIndex.Builder();
+
+        for (int i = 0; i < packages; i++) {
+            packageNames[i] = BlacklistBenchmark.packageName(random, i);
+
+            // system packages often request nothing at all
+            if (random.nextInt(10) == 0) continue;
+
+            String[] permissions = new String[1 + random.nextInt(COMMON_PERMISSIONS.length)];
+            for (int j = 0; j < permissions.length; j++)
+                permissions[j] = COMMON_PERMISSIONS[random.nextInt(COMMON_PERMISSIONS.length)];
+
+            // about one package in a thousand is a mock location app
+            if (random.nextInt(1000) == 0) {
+                permissions[permissions.length - 1] = PackageRules.ACCESS_MOCK_LOCATION;
+                builder.add(packageNames[i]);
+            }
+            requestedPermissions[i] = permissions;
+        }
+        for (int i = 0; i < 300; i++) builder.add(BlacklistBenchmark.packageName(random, -i));
+        blacklist = builder.build();
+
+        loader = new BlacklistSnapshot.Loader() {
+            @Override
+            public BlacklistIndex loadFileIndex(String filePath) {
+                return blacklist;
+            }
+
+            @Override
+            public CertificateDigestIndex loadBundledCertificateIndex() {
+                return CertificateDigestIndex.EMPTY;
+            }
+
+            @Override
+            public void onLoaded(BlacklistSnapshot loaded, long loadTimeNanos) {
+            }
+        };
+        // loaded once per app process, not per scan
+        detectorBlacklist = new Blacklist();
+        detectorBlacklist.getLoaded(loader);
+
+        rescanSource = new FakePackageSource(packageNames, requestedPermissions, true);
+        inMemorySource = new FakePackageSource(packageNames, requestedPermissions, false);
+    }
+
+    @Benchmark
+    public int detectionScan() {
+        return new DetectionScan<FakePackage>(ALL_RULES, detectorBlacklist, loader)
+                .run(rescanSource, Cancellation.NONE).getMatches().size();
+    }
+
+    @Benchmark
+    public int detectionScanInMemory() {
+        return new DetectionScan<FakePackage>(ALL_RULES, detectorBlacklist, loader)
+                .run(inMemorySource, Cancellation.NONE).getMatches().size();
+    }
+
+    @Benchmark
+    public int detectionScanFindAny() {
+        return new DetectionScan<FakePackage>(PERMISSION_RULE, detectorBlacklist, loader)
+                .setStopAtFirstMatch(true)
+                .run(rescanSource, Cancellation.NONE).getPackagesExamined();
+    }
+
+    @Benchmark
+    public int permissionScan() {
+        int matches = 0;
+        for (int i = 0; i < packages; i++)
+            if (PackageRules.requestsPermission(requestedPermissions[i],
+                    PackageRules.ACCESS_MOCK_LOCATION))
+                matches++;
+
+        return matches;
+    }
+
+    @Benchmark
+    public int blacklistScan() {
+        int matches = 0;
+        for (int i = 0; i < packages; i++)
+            if (blacklist.contains(packageNames[i])) matches++;
+
+        return matches;
+    }
+
+    @Benchmark
+    public int fullScan() {
+        int matches = 0;
+        for (int i = 0; i < packages; i++)
+            if (PackageRules.requestsPermission(requestedPermissions[i],
+                    PackageRules.ACCESS_MOCK_LOCATION) || blacklist.contains(packageNames[i]))
+                matches++;
+
+        return matches;
+    }
+
+    /**
+     * Package as the Android package scanner records it, the permission is matched once when
+     * it is loaded
+     */
+    private static final class FakePackage implements ScannedPackage {
+        private final String packageName;
+        private final boolean requestsMockLocation;
+
+        FakePackage(String packageName, String[] requestedPermissions) {
+            this.packageName = packageName;
+            this.requestsMockLocation = PackageRules.requestsPermission(requestedPermissions,
+                    PackageRules.ACCESS_MOCK_LOCATION);
+        }
+
+        @Override
+        public String getPackageName() {
+            return packageName;
+        }
+
+        @Override
+        public boolean requestsMockLocation() {
+            return requestsMockLocation;
+        }
+
+        @Override
+        public byte[] getCertificateDigests() {
+            return null;
+        }
+    }
+
+    /**
+     * Stands in for PackageManager and the package snapshot: a rescan loads every package
+     * again, otherwise the packages are already known
+     */
+    private static final class FakePackageSource implements PackageSource<FakePackage> {
+        private final String[] packageNames;
+        private final String[][] requestedPermissions;
+        private final boolean rescan;
+        private final List<FakePackage> known;
+
+        FakePackageSource(String[] packageNames, String[][] requestedPermissions,
+                          boolean rescan) {
+            this.packageNames = packageNames;
+            this.requestedPermissions = requestedPermissions;
+            this.rescan = rescan;
+
+            FakePackage[] fakePackages = new FakePackage[packageNames.length];
+            for (int i = 0; i < packageNames.length; i++)
+                fakePackages[i] = new FakePackage(packageNames[i], requestedPermissions[i]);
+            known = Arrays.asList(fakePackages);
+        }
+
+        @Override
+        public Refresh<FakePackage> refresh(Cancellation cancellation,
+                                            boolean withCertificates,
+                                            Listener<FakePackage> listener) {
+            if (!rescan) return new FakeRefresh(known, false, false);
+
+            List<FakePackage> loaded = new ArrayList<>(packageNames.length);
+            for (int i = 0; i < packageNames.length; i++) {
+                FakePackage fakePackage = new FakePackage(packageNames[i], requestedPermissions[i]);
+                loaded.add(fakePackage);
+                if (listener.onPackage(fakePackage)) return new FakeRefresh(loaded, true, true);
+            }
+            return new FakeRefresh(loaded, true, false);
+        }
+    }
+
+    private static final class FakeRefresh implements PackageSource.Refresh<FakePackage> {
+        private final List<FakePackage> packages;
+        private final boolean fullScan;
+        private final boolean stopped;
+
+        FakeRefresh(List<FakePackage> packages, boolean fullScan, boolean stopped) {
+            this.packages = packages;
+            this.fullScan = fullScan;
+            this.stopped = stopped;
+        }
+
+        @Override
+        public List<FakePackage> getPackages() {
+            return packages;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isStopped() {
+            return stopped;
+        }
+
+        @Override
+        public boolean isFullScan() {
+            return fullScan;
+        }
+    }
+}
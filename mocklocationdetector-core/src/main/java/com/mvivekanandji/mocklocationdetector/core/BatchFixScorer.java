@@ -0,0 +1,138 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Scores a {@link FixColumns} batch in parallel with fork-join, for server side scoring of
+ * uploaded fixes.
+ * <p>
+ * The batch is split into ranges at track boundaries, so every track is still scored in order
+ * by a single {@link FixScorer}, while different tracks are spread across cores. A range is
+ * split at the track boundary nearest to its middle, so a long track only stops the split when
+ * it is the whole range: one track is always scored by one task.
+ * <p>
+ * Server only: ForkJoinPool needs API 21 on Android.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+public final class BatchFixScorer {
+
+    /**
+     * Ranges smaller than this are scored on the current thread
+     */
+    private static final int SPLIT_THRESHOLD = 8192;
+
+    private final ForkJoinPool forkJoinPool;
+
+    /**
+     * Uses a pool with one thread per available core
+     */
+    public BatchFixScorer() {
+        this(new ForkJoinPool());
+    }
+
+    /**
+     * @param forkJoinPool ForkJoinPool the batches are scored on
+     */
+    public BatchFixScorer(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    /**
+     * Scores every fix of the batch, see {@link FixScorer#score}
+     *
+     * @param fixColumns FixColumns
+     * @param scoresOut  receives the score of every fix
+     * @param flagsOut   receives the flags of every fix, null if not needed
+     */
+    public void score(FixColumns fixColumns, float[] scoresOut, int[] flagsOut) {
+        if (scoresOut.length < fixColumns.size() || (flagsOut != null && flagsOut.length < fixColumns.size()))
+            throw new IllegalArgumentException("Output arrays are smaller than the batch");
+
+        forkJoinPool.invoke(new ScoreTask(fixColumns, scoresOut, flagsOut, 0, fixColumns.size()));
+    }
+
+    /**
+     * Scores fixes [from, to) on the current thread
+     */
+    static void scoreRange(FixColumns fixColumns, float[] scoresOut, int[] flagsOut,
+                           int from, int to) {
+        FixScorer fixScorer = new FixScorer();
+
+        for (int i = from; i < to; i++) {
+            if (i > from && fixColumns.getTrackId(i) != fixColumns.getTrackId(i - 1))
+                fixScorer.reset();
+
+            scoresOut[i] = fixColumns.score(fixScorer, i);
+            if (flagsOut != null) flagsOut[i] = fixScorer.getLastFlags();
+        }
+    }
+
+    /**
+     * @return start of the track, in (from, to), nearest to the middle of the range, from if the
+     * range holds a single track
+     */
+    static int splitPoint(FixColumns fixColumns, int from, int to) {
+        int middle = (from + to) >>> 1;
+
+        for (int forward = middle, backward = middle - 1; forward < to || backward > from;
+             forward++, backward--) {
+            if (forward < to && forward > from && isTrackStart(fixColumns, forward))
+                return forward;
+            if (backward > from && isTrackStart(fixColumns, backward)) return backward;
+        }
+        return from;
+    }
+
+    private static boolean isTrackStart(FixColumns fixColumns, int index) {
+        return fixColumns.getTrackId(index) != fixColumns.getTrackId(index - 1);
+    }
+
+    private static final class ScoreTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final FixColumns fixColumns;
+        private final float[] scoresOut;
+        private final int[] flagsOut;
+        private final int from;
+        private final int to;
+
+        ScoreTask(FixColumns fixColumns, float[] scoresOut, int[] flagsOut, int from, int to) {
+            this.fixColumns = fixColumns;
+            this.scoresOut = scoresOut;
+            this.flagsOut = flagsOut;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SPLIT_THRESHOLD) {
+                int middle = splitPoint(fixColumns, from, to);
+
+                if (middle > from) {
+                    invokeAll(new ScoreTask(fixColumns, scoresOut, flagsOut, from, middle),
+                            new ScoreTask(fixColumns, scoresOut, flagsOut, middle, to));
+                    return;
+                }
+            }
+            scoreRange(fixColumns, scoresOut, flagsOut, from, to);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Current {@link BlacklistSnapshot} of the blacklist.
+ * <p>
+ * Every update builds a new snapshot and swaps it in with a compare-and-set, retried if
+ * another update won the race, so concurrent updates are never lost. The file rules and the
+ * bundled certificate digests are loaded lazily, by the first scan that needs them.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+public final class Blacklist {
+
+    private final AtomicReference<BlacklistSnapshot> snapshot =
+            new AtomicReference<>(BlacklistSnapshot.INITIAL);
+
+    /**
+     * @return current snapshot, not necessarily loaded
+     */
+    public BlacklistSnapshot get() {
+        return snapshot.get();
+    }
+
+    /**
+     * Loads what is missing from the current snapshot and swaps the loaded snapshot in, as one
+     * version. Updates that race the load are kept: the load is retried on top of them, and
+     * the file index is loaded again only if the file path changed meanwhile
+     *
+     * @param loader Loader
+     * @return loaded snapshot, the current one if it was already loaded
+     */
+    public BlacklistSnapshot getLoaded(BlacklistSnapshot.Loader loader) {
+        BlacklistSnapshot current = snapshot.get();
+        if (current.isLoaded()) return current;
+
+        long startNanos = System.nanoTime();
+        BlacklistIndex fileIndex = null;
+        String loadedFilePath = null;
+        CertificateDigestIndex certificateIndex = null;
+
+        while (true) {
+            current = snapshot.get();
+            if (current.isLoaded()) return current;
+
+            if (current.getFileIndex() == null && (fileIndex == null
+                    || !equals(loadedFilePath, current.getFilePath()))) {
+                loadedFilePath = current.getFilePath();
+                fileIndex = loader.loadFileIndex(loadedFilePath);
+            }
+            if (current.getBundledCertificateIndex() == null && certificateIndex == null)
+                certificateIndex = loader.loadBundledCertificateIndex();
+
+            BlacklistSnapshot loaded = current.withLoaded(
+                    current.getFileIndex() != null ? current.getFileIndex() : fileIndex,
+                    current.getBundledCertificateIndex() != null
+                            ? current.getBundledCertificateIndex()
+                            : certificateIndex);
+            if (snapshot.compareAndSet(current, loaded)) {
+                loader.onLoaded(loaded, System.nanoTime() - startNanos);
+                return loaded;
+            }
+        }
+    }
+
+    /**
+     * @param rules package names, prefix rules such as com.example.* and wildcard rules such as
+     *              *.fakegps, added in one update
+     */
+    public void addRules(Iterable<String> rules) {
+        BlacklistSnapshot current;
+        BlacklistSnapshot updated;
+        do {
+            current = snapshot.get();
+            updated = current.withUserIndex(new BlacklistIndex.Builder()
+                    .addAll(current.getUserIndex())
+                    .addAll(rules)
+                    .build());
+        } while (!snapshot.compareAndSet(current, updated));
+    }
+
+    /**
+     * @param certificateDigests SHA-256 digests of signing certificates as hex, added in one
+     *                           update
+     */
+    public void addCertificateDigests(Iterable<String> certificateDigests) {
+        BlacklistSnapshot current;
+        BlacklistSnapshot updated;
+        do {
+            current = snapshot.get();
+            updated = current.withUserCertificateIndex(new CertificateDigestIndex.Builder()
+                    .addAll(current.getUserCertificateIndex())
+                    .addAll(certificateDigests)
+                    .build());
+        } while (!snapshot.compareAndSet(current, updated));
+    }
+
+    /**
+     * @param filePath text file the file rules are loaded from on next use, null for the
+     *                 bundled blacklist
+     */
+    public void setFilePath(String filePath) {
+        BlacklistSnapshot current;
+        do {
+            current = snapshot.get();
+        } while (!snapshot.compareAndSet(current, current.withFilePath(filePath)));
+    }
+
+    private static boolean equals(String first, String second) {
+        return first == null ? second == null : first.equals(second);
+    }
+}
@@ -0,0 +1,407 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Immutable, compact index of blacklisted package names.
+ * <p>
+ * Three kinds of rules are supported:
+ * <ul>
+ * <li>exact - {@code com.lexa.fakegps}</li>
+ * <li>prefix - {@code com.edugorilla.*} matches every package below com.edugorilla</li>
+ * <li>wildcard - {@code *.fakegps} or {@code com.*.mocklocation}, where * matches within a
+ * single segment, and a trailing * segment matches one or more segments</li>
+ * </ul>
+ * Exact and prefix rules are stored as sorted ASCII bytes packed into one array each, with an
+ * offset table, instead of one String per entry. Lookups binary search the packed arrays and
+ * do not allocate.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+public final class BlacklistIndex {
+
+    public static final BlacklistIndex EMPTY = new Builder().build();
+
+    /**
+     * "MLDB", first bytes of a compiled blacklist
+     */
+    public static final int MAGIC = 0x4d4c4442;
+    public static final int FORMAT_VERSION = 1;
+
+    private static final String PREFIX_SUFFIX = ".*";
+    private static final char WILDCARD = '*';
+    private static final char SEPARATOR = '.';
+
+    private final byte[] exactData;
+    private final int[] exactOffsets;
+    private final byte[] prefixData;
+    private final int[] prefixOffsets;
+    private final String[][] wildcardSegments;
+
+    private BlacklistIndex(byte[] exactData, int[] exactOffsets, byte[] prefixData,
+                           int[] prefixOffsets, String[][] wildcardSegments) {
+        this.exactData = exactData;
+        this.exactOffsets = exactOffsets;
+        this.prefixData = prefixData;
+        this.prefixOffsets = prefixOffsets;
+        this.wildcardSegments = wildcardSegments;
+    }
+
+    /**
+     * @param packageName String
+     * @return true if the package matches any rule
+     */
+    public boolean contains(String packageName) {
+        if (packageName == null) return false;
+
+        int length = packageName.length();
+        if (find(exactData, exactOffsets, packageName, length) >= 0) return true;
+
+        if (prefixOffsets.length > 1)
+            for (int i = 0; i < length - 1; i++)
+                if (packageName.charAt(i) == SEPARATOR
+                        && find(prefixData, prefixOffsets, packageName, i + 1) >= 0)
+                    return true;
+
+        for (String[] segments : wildcardSegments)
+            if (matchesWildcard(segments, packageName)) return true;
+
+        return false;
+    }
+
+    /**
+     * @return number of rules in the index
+     */
+    public int size() {
+        return exactOffsets.length - 1 + prefixOffsets.length - 1 + wildcardSegments.length;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return every rule in the index, in the syntax accepted by {@link Builder#add(String)}
+     */
+    public List<String> getRules() {
+        List<String> rules = new ArrayList<>(size());
+
+        for (int i = 0; i < exactOffsets.length - 1; i++)
+            rules.add(decode(exactData, exactOffsets[i], exactOffsets[i + 1]));
+
+        for (int i = 0; i < prefixOffsets.length - 1; i++)
+            rules.add(decode(prefixData, prefixOffsets[i], prefixOffsets[i + 1]) + WILDCARD);
+
+        for (String[] segments : wildcardSegments) {
+            StringBuilder rule = new StringBuilder();
+            for (String segment : segments) {
+                if (rule.length() > 0) rule.append(SEPARATOR);
+                rule.append(segment);
+            }
+            rules.add(rule.toString());
+        }
+        return rules;
+    }
+
+    /**
+     * Reads an index compiled by the compileBlacklist Gradle task. The packed arrays are bulk
+     * copied out of the buffer, no per-entry parsing is done except for wildcard rules.
+     * <p>
+     * Layout (big endian): magic, format version, exact count, exact data length, prefix count,
+     * prefix data length, wildcard count, exact offsets, exact data, prefix offsets,
+     * prefix data, then each wildcard rule as an unsigned short length followed by ASCII bytes.
+     *
+     * @param buffer ByteBuffer positioned at the start of the index
+     * @return BlacklistIndex
+     * @throws IOException if the buffer does not hold a supported index
+     */
+    public static BlacklistIndex read(ByteBuffer buffer) throws IOException {
+        try {
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            if (buffer.getInt() != MAGIC)
+                throw new IOException("Not a compiled blacklist");
+
+            int formatVersion = buffer.getInt();
+            if (formatVersion != FORMAT_VERSION)
+                throw new IOException("Unsupported blacklist format version: " + formatVersion);
+
+            int exactCount = buffer.getInt();
+            int exactDataLength = buffer.getInt();
+            int prefixCount = buffer.getInt();
+            int prefixDataLength = buffer.getInt();
+            int wildcardCount = buffer.getInt();
+
+            int[] exactOffsets = readOffsets(buffer, exactCount, exactDataLength);
+            byte[] exactData = new byte[exactDataLength];
+            buffer.get(exactData);
+            int[] prefixOffsets = readOffsets(buffer, prefixCount, prefixDataLength);
+            byte[] prefixData = new byte[prefixDataLength];
+            buffer.get(prefixData);
+
+            // every wildcard rule takes at least its length and one byte
+            if (wildcardCount < 0 || wildcardCount > buffer.remaining() / 3)
+                throw new IOException("Corrupt compiled blacklist wildcard count");
+
+            String[][] wildcardSegments = new String[wildcardCount][];
+            for (int i = 0; i < wildcardCount; i++) {
+                int length = buffer.getShort() & 0xffff;
+                if (length == 0) throw new IOException("Empty wildcard rule");
+
+                byte[] rule = new byte[length];
+                buffer.get(rule);
+                wildcardSegments[i] = decode(rule, 0, length).split("\\.", -1);
+            }
+            return new BlacklistIndex(exactData, exactOffsets, prefixData, prefixOffsets,
+                    wildcardSegments);
+
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Corrupt compiled blacklist", e);
+        }
+    }
+
+    /**
+     * Writes the index in the format read by {@link #read(ByteBuffer)}, the same format the
+     * compileBlacklist Gradle task produces
+     *
+     * @param outputStream OutputStream, not closed
+     * @throws IOException if writing fails
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+        dataOutputStream.writeInt(MAGIC);
+        dataOutputStream.writeInt(FORMAT_VERSION);
+        dataOutputStream.writeInt(exactOffsets.length - 1);
+        dataOutputStream.writeInt(exactData.length);
+        dataOutputStream.writeInt(prefixOffsets.length - 1);
+        dataOutputStream.writeInt(prefixData.length);
+        dataOutputStream.writeInt(wildcardSegments.length);
+
+        for (int offset : exactOffsets) dataOutputStream.writeInt(offset);
+        dataOutputStream.write(exactData);
+        for (int offset : prefixOffsets) dataOutputStream.writeInt(offset);
+        dataOutputStream.write(prefixData);
+
+        List<String> rules = getRules();
+        for (String rule : rules.subList(rules.size() - wildcardSegments.length, rules.size())) {
+            dataOutputStream.writeShort(rule.length());
+            dataOutputStream.writeBytes(rule);
+        }
+        dataOutputStream.flush();
+    }
+
+    /**
+     * Reads the offsets of a section and checks them against its data, which must follow them
+     * in the buffer. Checked before allocating, a corrupt count or length must not overflow or
+     * exhaust memory, and lookups must never index past the data
+     */
+    private static int[] readOffsets(ByteBuffer buffer, int count, int dataLength) throws IOException {
+        if (count < 0 || count >= buffer.remaining() / 4 || dataLength < 0
+                || dataLength > buffer.remaining() - (count + 1) * 4)
+            throw new IOException("Corrupt compiled blacklist section size");
+
+        int[] offsets = new int[count + 1];
+        buffer.asIntBuffer().get(offsets);
+        buffer.position(buffer.position() + offsets.length * 4);
+
+        if (offsets[0] != 0 || offsets[count] != dataLength)
+            throw new IOException("Corrupt compiled blacklist offsets");
+        for (int i = 1; i <= count; i++)
+            if (offsets[i] < offsets[i - 1])
+                throw new IOException("Corrupt compiled blacklist offsets");
+
+        return offsets;
+    }
+
+    //region lookup
+
+    /**
+     * Binary search for the first {@code length} chars of key
+     * @return entry index, or a negative value if absent
+     */
+    private static int find(byte[] data, int[] offsets, String key, int length) {
+        int low = 0;
+        int high = offsets.length - 2;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(data, offsets[middle], offsets[middle + 1], key, length);
+
+            if (comparison < 0) low = middle + 1;
+            else if (comparison > 0) high = middle - 1;
+            else return middle;
+        }
+        return -(low + 1);
+    }
+
+    private static int compare(byte[] data, int start, int end, String key, int length) {
+        int entryLength = end - start;
+        int limit = Math.min(entryLength, length);
+
+        for (int i = 0; i < limit; i++) {
+            int difference = (data[start + i] & 0xff) - key.charAt(i);
+            if (difference != 0) return difference;
+        }
+        return entryLength - length;
+    }
+
+    private static boolean matchesWildcard(String[] segments, String packageName) {
+        int length = packageName.length();
+        int segmentStart = 0;
+
+        for (int i = 0; i < segments.length; i++) {
+            if (segmentStart > length) return false;
+
+            boolean last = i == segments.length - 1;
+            if (last && segments[i].length() == 1 && segments[i].charAt(0) == WILDCARD)
+                return segmentStart < length;
+
+            int segmentEnd = packageName.indexOf(SEPARATOR, segmentStart);
+            if (segmentEnd < 0) segmentEnd = length;
+
+            if (!matchesGlob(segments[i], packageName, segmentStart, segmentEnd)) return false;
+            segmentStart = segmentEnd + 1;
+        }
+        return segmentStart == length + 1;
+    }
+
+    /**
+     * Glob match of pattern against text[start, end) where * matches any run of characters
+     */
+    private static boolean matchesGlob(String pattern, String text, int start, int end) {
+        int patternIndex = 0;
+        int textIndex = start;
+        int starIndex = -1;
+        int starTextIndex = start;
+
+        while (textIndex < end) {
+            if (patternIndex < pattern.length() && pattern.charAt(patternIndex) == WILDCARD) {
+                starIndex = patternIndex++;
+                starTextIndex = textIndex;
+            } else if (patternIndex < pattern.length()
+                    && pattern.charAt(patternIndex) == text.charAt(textIndex)) {
+                patternIndex++;
+                textIndex++;
+            } else if (starIndex >= 0) {
+                patternIndex = starIndex + 1;
+                textIndex = ++starTextIndex;
+            } else return false;
+        }
+
+        while (patternIndex < pattern.length() && pattern.charAt(patternIndex) == WILDCARD)
+            patternIndex++;
+
+        return patternIndex == pattern.length();
+    }
+
+    private static String decode(byte[] data, int start, int end) {
+        char[] chars = new char[end - start];
+        for (int i = 0; i < chars.length; i++)
+            chars[i] = (char) (data[start + i] & 0xff);
+
+        return new String(chars);
+    }
+
+    //endregion
+
+    /**
+     * Collects rules and compiles them into a {@link BlacklistIndex}
+     */
+    public static final class Builder {
+        private final TreeSet<String> exact = new TreeSet<>();
+        private final TreeSet<String> prefixes = new TreeSet<>();
+        private final TreeSet<String> wildcards = new TreeSet<>();
+
+        /**
+         * @param rule package name, prefix or wildcard rule. Blank lines and lines starting
+         *             with # are ignored
+         * @return this object
+         * @throws IllegalArgumentException if the rule contains non ASCII characters
+         */
+        public Builder add(String rule) {
+            if (rule == null) return this;
+
+            rule = rule.trim();
+            if (rule.isEmpty() || rule.charAt(0) == '#') return this;
+
+            for (int i = 0; i < rule.length(); i++)
+                if (rule.charAt(i) > 0x7f)
+                    throw new IllegalArgumentException("Blacklist rules must be ASCII: " + rule);
+
+            int wildcardIndex = rule.indexOf(WILDCARD);
+            if (wildcardIndex < 0) exact.add(rule);
+            else if (wildcardIndex == rule.length() - 1 && rule.endsWith(PREFIX_SUFFIX)
+                    && rule.length() > PREFIX_SUFFIX.length())
+                prefixes.add(rule.substring(0, rule.length() - 1));
+            else wildcards.add(rule);
+
+            return this;
+        }
+
+        public Builder addAll(Iterable<String> rules) {
+            for (String rule : rules) add(rule);
+            return this;
+        }
+
+        public Builder addAll(BlacklistIndex blacklistIndex) {
+            return addAll(blacklistIndex.getRules());
+        }
+
+        public BlacklistIndex build() {
+            int[] exactOffsets = new int[exact.size() + 1];
+            byte[] exactData = pack(exact, exactOffsets);
+            int[] prefixOffsets = new int[prefixes.size() + 1];
+            byte[] prefixData = pack(prefixes, prefixOffsets);
+
+            List<String[]> wildcardSegments = new ArrayList<>(wildcards.size());
+            for (String wildcard : wildcards)
+                wildcardSegments.add(wildcard.split("\\.", -1));
+
+            return new BlacklistIndex(exactData, exactOffsets, prefixData, prefixOffsets,
+                    wildcardSegments.toArray(new String[0][]));
+        }
+
+        private static byte[] pack(TreeSet<String> entries, int[] offsets) {
+            int length = 0;
+            for (String entry : entries) length += entry.length();
+
+            byte[] data = new byte[length];
+            int index = 0;
+            int position = 0;
+            for (String entry : entries) {
+                offsets[index++] = position;
+                for (int i = 0; i < entry.length(); i++)
+                    data[position++] = (byte) entry.charAt(i);
+            }
+            offsets[index] = position;
+            return data;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getRules().toString();
+    }
+}
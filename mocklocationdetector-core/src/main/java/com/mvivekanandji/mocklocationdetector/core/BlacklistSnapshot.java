@@ -0,0 +1,161 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Immutable, versioned state of the blacklist.
+ * <p>
+ * A {@link Blacklist} holds the current snapshot. Scans read it once and use it for the whole
+ * scan without locking, writers build a new snapshot and swap it in, so a scan never sees a
+ * half applied update.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+public final class BlacklistSnapshot {
+
+    /**
+     * Loads the parts of the blacklist that are loaded lazily
+     */
+    public interface Loader {
+
+        /**
+         * @param filePath text file with one rule per line, null for the bundled blacklist
+         * @return BlacklistIndex
+         */
+        BlacklistIndex loadFileIndex(String filePath);
+
+        CertificateDigestIndex loadBundledCertificateIndex();
+
+        /**
+         * Called once the loaded snapshot is current, e.g. to record the load time
+         *
+         * @param loaded        BlacklistSnapshot
+         * @param loadTimeNanos long
+         */
+        void onLoaded(BlacklistSnapshot loaded, long loadTimeNanos);
+    }
+
+    static final BlacklistSnapshot INITIAL = new BlacklistSnapshot(0, null, null,
+            BlacklistIndex.EMPTY, null, CertificateDigestIndex.EMPTY);
+
+    private final long version;
+    private final String filePath;
+    private final BlacklistIndex fileIndex;
+    private final BlacklistIndex userIndex;
+    private final CertificateDigestIndex bundledCertificateIndex;
+    private final CertificateDigestIndex userCertificateIndex;
+
+    private BlacklistSnapshot(long version, String filePath, BlacklistIndex fileIndex,
+                              BlacklistIndex userIndex,
+                              CertificateDigestIndex bundledCertificateIndex,
+                              CertificateDigestIndex userCertificateIndex) {
+        this.version = version;
+        this.filePath = filePath;
+        this.fileIndex = fileIndex;
+        this.userIndex = userIndex;
+        this.bundledCertificateIndex = bundledCertificateIndex;
+        this.userCertificateIndex = userCertificateIndex;
+    }
+
+    /**
+     * @param packageName String
+     * @return true if the package matches a rule from the file or added by the user
+     */
+    public boolean contains(String packageName) {
+        return userIndex.contains(packageName)
+                || (fileIndex != null && fileIndex.contains(packageName));
+    }
+
+    /**
+     * @param certificateDigests SHA-256 digests of the signing certificates of a package, packed
+     * @return true if any of the certificates is blacklisted
+     */
+    public boolean containsCertificate(byte[] certificateDigests) {
+        return userCertificateIndex.containsAny(certificateDigests)
+                || (bundledCertificateIndex != null
+                && bundledCertificateIndex.containsAny(certificateDigests));
+    }
+
+    /**
+     * @return true if any certificate digest is blacklisted, only then are certificates queried
+     * and hashed
+     */
+    public boolean hasCertificateRules() {
+        return !userCertificateIndex.isEmpty()
+                || (bundledCertificateIndex != null && !bundledCertificateIndex.isEmpty());
+    }
+
+    /**
+     * @return true if the file rules and the bundled certificates are loaded
+     */
+    public boolean isLoaded() {
+        return fileIndex != null && bundledCertificateIndex != null;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return text file the file rules come from, null for the bundled blacklist
+     */
+    public String getFilePath() {
+        return filePath;
+    }
+
+    /**
+     * @return rules loaded from the file, null until loaded
+     */
+    public BlacklistIndex getFileIndex() {
+        return fileIndex;
+    }
+
+    public BlacklistIndex getUserIndex() {
+        return userIndex;
+    }
+
+    /**
+     * @return certificate digests bundled with the library, null until loaded
+     */
+    public CertificateDigestIndex getBundledCertificateIndex() {
+        return bundledCertificateIndex;
+    }
+
+    public CertificateDigestIndex getUserCertificateIndex() {
+        return userCertificateIndex;
+    }
+
+    BlacklistSnapshot withLoaded(BlacklistIndex fileIndex,
+                                 CertificateDigestIndex bundledCertificateIndex) {
+        return new BlacklistSnapshot(version + 1, filePath, fileIndex, userIndex,
+                bundledCertificateIndex, userCertificateIndex);
+    }
+
+    BlacklistSnapshot withFilePath(String filePath) {
+        return new BlacklistSnapshot(version + 1, filePath, null, userIndex,
+                bundledCertificateIndex, userCertificateIndex);
+    }
+
+    BlacklistSnapshot withUserIndex(BlacklistIndex userIndex) {
+        return new BlacklistSnapshot(version + 1, filePath, fileIndex, userIndex,
+                bundledCertificateIndex, userCertificateIndex);
+    }
+
+    BlacklistSnapshot withUserCertificateIndex(CertificateDigestIndex userCertificateIndex) {
+        return new BlacklistSnapshot(version + 1, filePath, fileIndex, userIndex,
+                bundledCertificateIndex, userCertificateIndex);
+    }
+}
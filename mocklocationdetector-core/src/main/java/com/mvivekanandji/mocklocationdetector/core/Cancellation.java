@@ -0,0 +1,36 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Polled by long running scan loops between packages, e.g. by a {@link DetectionScan}
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+public interface Cancellation {
+
+    Cancellation NONE = new Cancellation() {
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    /**
+     * @return true if the loop should stop and return what it has so far
+     */
+    boolean isCancelled();
+}
@@ -0,0 +1,268 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Immutable index of SHA-256 digests of blacklisted APK signing certificates, which catches
+ * known mock apps that were repackaged under a new package name.
+ * <p>
+ * Digests are stored sorted and packed into one byte array, {@value #DIGEST_LENGTH} bytes
+ * each. Lookups binary search the array and do not allocate. Digests are written as hex, as
+ * printed by {@code apksigner verify --print-certs} or {@code keytool -printcert} (colons are
+ * ignored).
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+public final class CertificateDigestIndex {
+
+    public static final int DIGEST_LENGTH = 32;
+
+    public static final CertificateDigestIndex EMPTY = new Builder().build();
+
+    /**
+     * "MLCD", first bytes of a compiled digest table
+     */
+    public static final int MAGIC = 0x4d4c4344;
+    public static final int FORMAT_VERSION = 1;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final byte[] digests;
+
+    private CertificateDigestIndex(byte[] digests) {
+        this.digests = digests;
+    }
+
+    /**
+     * @param digest SHA-256 digest of an encoded certificate
+     * @return true if the digest is blacklisted
+     */
+    public boolean contains(byte[] digest) {
+        return digest != null && digest.length == DIGEST_LENGTH && find(digest, 0);
+    }
+
+    /**
+     * @param packedDigests digests of all signing certificates of a package, packed one after
+     *                      the other
+     * @return true if any of the digests is blacklisted
+     */
+    public boolean containsAny(byte[] packedDigests) {
+        if (packedDigests == null || digests.length == 0) return false;
+
+        for (int offset = 0; offset + DIGEST_LENGTH <= packedDigests.length; offset += DIGEST_LENGTH)
+            if (find(packedDigests, offset)) return true;
+
+        return false;
+    }
+
+    private boolean find(byte[] key, int keyOffset) {
+        int low = 0;
+        int high = digests.length / DIGEST_LENGTH - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(digests, middle * DIGEST_LENGTH, key, keyOffset);
+
+            if (comparison < 0) low = middle + 1;
+            else if (comparison > 0) high = middle - 1;
+            else return true;
+        }
+        return false;
+    }
+
+    private static int compare(byte[] a, int aOffset, byte[] b, int bOffset) {
+        for (int i = 0; i < DIGEST_LENGTH; i++) {
+            int difference = (a[aOffset + i] & 0xff) - (b[bOffset + i] & 0xff);
+            if (difference != 0) return difference;
+        }
+        return 0;
+    }
+
+    /**
+     * @return number of digests in the index
+     */
+    public int size() {
+        return digests.length / DIGEST_LENGTH;
+    }
+
+    public boolean isEmpty() {
+        return digests.length == 0;
+    }
+
+    /**
+     * @return every digest in the index as lower case hex
+     */
+    public List<String> getDigests() {
+        List<String> hexDigests = new ArrayList<>(size());
+        for (int offset = 0; offset < digests.length; offset += DIGEST_LENGTH)
+            hexDigests.add(toHex(digests, offset, DIGEST_LENGTH));
+
+        return hexDigests;
+    }
+
+    /**
+     * @param encodedCertificate DER encoded certificate
+     * @return SHA-256 digest of the certificate
+     */
+    public static byte[] sha256(byte[] encodedCertificate) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(encodedCertificate);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java and Android platform is required to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes, int offset, int length) {
+        char[] chars = new char[length * 2];
+        for (int i = 0; i < length; i++) {
+            int value = bytes[offset + i] & 0xff;
+            chars[i * 2] = HEX[value >>> 4];
+            chars[i * 2 + 1] = HEX[value & 0xf];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Reads a table compiled by the compileCertificateBlacklist Gradle task
+     *
+     * @param buffer ByteBuffer positioned at the start of the table
+     * @return CertificateDigestIndex
+     * @throws IOException if the table is corrupt or of an unsupported format version
+     */
+    public static CertificateDigestIndex read(ByteBuffer buffer) throws IOException {
+        try {
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            if (buffer.getInt() != MAGIC)
+                throw new IOException("Not a compiled certificate digest table");
+
+            int formatVersion = buffer.getInt();
+            if (formatVersion != FORMAT_VERSION)
+                throw new IOException("Unsupported certificate digest table version: " + formatVersion);
+
+            int count = buffer.getInt();
+            // checked before allocating, a corrupt count must not overflow or exhaust memory
+            if (count < 0 || count > buffer.remaining() / DIGEST_LENGTH)
+                throw new IOException("Corrupt certificate digest table");
+
+            byte[] digests = new byte[count * DIGEST_LENGTH];
+            buffer.get(digests);
+            for (int i = 1; i < count; i++)
+                if (compare(digests, (i - 1) * DIGEST_LENGTH, digests, i * DIGEST_LENGTH) >= 0)
+                    throw new IOException("Certificate digest table is not sorted");
+
+            return new CertificateDigestIndex(digests);
+
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Corrupt certificate digest table", e);
+        }
+    }
+
+    /**
+     * Writes the index in the format read by {@link #read(ByteBuffer)}
+     *
+     * @param outputStream OutputStream, not closed
+     * @throws IOException if writing fails
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        DataOutputStream dataOutputStream = new DataOutputStream(outputStream);
+        dataOutputStream.writeInt(MAGIC);
+        dataOutputStream.writeInt(FORMAT_VERSION);
+        dataOutputStream.writeInt(size());
+        dataOutputStream.write(digests);
+        dataOutputStream.flush();
+    }
+
+    /**
+     * Collects digests and compiles them into a {@link CertificateDigestIndex}
+     */
+    public static final class Builder {
+        private final TreeSet<String> hexDigests = new TreeSet<>();
+
+        /**
+         * @param hexDigest SHA-256 digest as hex, colons and whitespace are ignored. Blank lines
+         *                  and lines starting with # are ignored
+         * @return this object
+         * @throws IllegalArgumentException if the digest is not 32 bytes of hex
+         */
+        public Builder add(String hexDigest) {
+            if (hexDigest == null) return this;
+
+            hexDigest = hexDigest.trim();
+            if (hexDigest.isEmpty() || hexDigest.charAt(0) == '#') return this;
+
+            StringBuilder normalized = new StringBuilder(DIGEST_LENGTH * 2);
+            for (int i = 0; i < hexDigest.length(); i++) {
+                char c = hexDigest.charAt(i);
+                if (c == ':' || Character.isWhitespace(c)) continue;
+                if (Character.digit(c, 16) < 0)
+                    throw new IllegalArgumentException("Not a hex digest: " + hexDigest);
+                normalized.append(Character.toLowerCase(c));
+            }
+
+            if (normalized.length() != DIGEST_LENGTH * 2)
+                throw new IllegalArgumentException("Not a SHA-256 digest: " + hexDigest);
+
+            hexDigests.add(normalized.toString());
+            return this;
+        }
+
+        public Builder add(byte[] digest) {
+            if (digest.length != DIGEST_LENGTH)
+                throw new IllegalArgumentException("Not a SHA-256 digest");
+
+            hexDigests.add(toHex(digest, 0, DIGEST_LENGTH));
+            return this;
+        }
+
+        public Builder addAll(Iterable<String> hexDigests) {
+            for (String hexDigest : hexDigests) add(hexDigest);
+            return this;
+        }
+
+        public Builder addAll(CertificateDigestIndex certificateDigestIndex) {
+            return addAll(certificateDigestIndex.getDigests());
+        }
+
+        public CertificateDigestIndex build() {
+            // lower case hex sorts like the unsigned bytes it encodes
+            byte[] digests = new byte[hexDigests.size() * DIGEST_LENGTH];
+            int position = 0;
+            for (String hexDigest : hexDigests)
+                for (int i = 0; i < hexDigest.length(); i += 2)
+                    digests[position++] = (byte) Integer.parseInt(hexDigest.substring(i, i + 2), 16);
+
+            return new CertificateDigestIndex(digests);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getDigests().toString();
+    }
+}
@@ -0,0 +1,54 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Rules applied to every installed package by a {@link DetectionScan}, i.e. by the scans of
+ * MockLocationDetector
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+public enum DetectionRule {
+
+    /**
+     * Package requests android.permission.ACCESS_MOCK_LOCATION in its manifest
+     */
+    MOCK_LOCATION_PERMISSION {
+        @Override
+        boolean matches(ScannedPackage scannedPackage, BlacklistSnapshot blacklist) {
+            return scannedPackage.requestsMockLocation();
+        }
+    },
+
+    /**
+     * Package name is on the blacklist of known mock location apps, or the package is signed
+     * with a blacklisted certificate
+     */
+    KNOWN_MOCK_APP {
+        @Override
+        boolean matches(ScannedPackage scannedPackage, BlacklistSnapshot blacklist) {
+            return blacklist.contains(scannedPackage.getPackageName())
+                    || blacklist.containsCertificate(scannedPackage.getCertificateDigests());
+        }
+    };
+
+    /**
+     * @param scannedPackage ScannedPackage
+     * @param blacklist      blacklist of the scan, loaded if the scan applies KNOWN_MOCK_APP
+     * @return true if the package matches this rule
+     */
+    abstract boolean matches(ScannedPackage scannedPackage, BlacklistSnapshot blacklist);
+}
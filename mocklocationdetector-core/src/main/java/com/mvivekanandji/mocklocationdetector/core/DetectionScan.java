@@ -0,0 +1,319 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * One scan of the installed packages: applies {@link DetectionRule}s to the packages of a
+ * {@link PackageSource}, against one {@link BlacklistSnapshot} for the whole scan.
+ * <p>
+ * The blacklist is loaded first if a rule reads it, and the source is asked for signing
+ * certificates only when certificate rules exist, they make loading packages much slower.
+ * Packages are matched as the source loads them, so matches of a full rescan are found, and
+ * handed to the {@link MatchListener}, while the packages are still being enumerated, and a
+ * scan that stops at the first match stops loading packages there. Packages the source
+ * already knew are matched in memory once it is up to date.
+ * <p>
+ * Only plain package data is used, the Android detector provides the packages through its
+ * package snapshot and turns the matches into MockApps.
+ *
+ * @param <P> package type of the source
+ * @author vivekanand
+ * @version 1.0
+ */
+public final class DetectionScan<P extends ScannedPackage> {
+
+    /**
+     * Receives the matches of a scan as they are found, instead of the result
+     *
+     * @param <P> package type
+     */
+    public interface MatchListener<P> {
+
+        /**
+         * Called on the scanning thread, or on a loading thread of the source, one call at a
+         * time
+         *
+         * @param scannedPackage package that matched
+         * @param matchedRules   rules it matched
+         */
+        void onMatch(P scannedPackage, Set<DetectionRule> matchedRules);
+    }
+
+    private final Set<DetectionRule> rules;
+    private final DetectionRule[] ruleArray;
+    private final Blacklist blacklist;
+    private final BlacklistSnapshot.Loader loader;
+    private boolean stopAtFirstMatch;
+    private MatchListener<P> matchListener;
+
+    // progress of the current run, guarded by this
+    private List<Match<P>> found;
+    private int matchCount;
+    private int packagesExamined;
+    private long blacklistVersion;
+
+    /**
+     * @param rules     rules applied to every package
+     * @param blacklist Blacklist read by KNOWN_MOCK_APP
+     * @param loader    loads the blacklist if it is not loaded yet
+     */
+    public DetectionScan(Set<DetectionRule> rules, Blacklist blacklist,
+                         BlacklistSnapshot.Loader loader) {
+        if (rules.isEmpty())
+            throw new IllegalArgumentException("At least one detection rule is required");
+
+        this.rules = Collections.unmodifiableSet(EnumSet.copyOf(rules));
+        this.ruleArray = this.rules.toArray(new DetectionRule[0]);
+        this.blacklist = blacklist;
+        this.loader = loader;
+    }
+
+    /**
+     * Setter - to stop at the first package matching any of the rules, for yes/no checks
+     * @param stopAtFirstMatch boolean
+     * @return this object
+     */
+    public DetectionScan<P> setStopAtFirstMatch(boolean stopAtFirstMatch) {
+        this.stopAtFirstMatch = stopAtFirstMatch;
+        return this;
+    }
+
+    /**
+     * Setter - to hand the matches to a listener as they are found. The result then holds no
+     * matches, only the counts
+     * @param matchListener MatchListener, null to collect the matches in the result
+     * @return this object
+     */
+    public DetectionScan<P> setMatchListener(MatchListener<P> matchListener) {
+        this.matchListener = matchListener;
+        return this;
+    }
+
+    /**
+     * Refreshes the source and applies the rules to its packages
+     *
+     * @param packageSource PackageSource
+     * @param cancellation  polled between packages, a cancelled scan returns what it found so
+     *                      far, see {@link Result#isComplete()}
+     * @return Result
+     */
+    public Result<P> run(PackageSource<P> packageSource, Cancellation cancellation) {
+        boolean checkBlacklist = rules.contains(DetectionRule.KNOWN_MOCK_APP);
+        final BlacklistSnapshot snapshot =
+                checkBlacklist ? blacklist.getLoaded(loader) : blacklist.get();
+        boolean withCertificates = checkBlacklist && snapshot.hasCertificateRules();
+
+        synchronized (this) {
+            found = new ArrayList<>();
+            matchCount = 0;
+            packagesExamined = 0;
+            blacklistVersion = snapshot.getVersion();
+        }
+        PackageSource.Refresh<P> refresh = packageSource.refresh(cancellation, withCertificates,
+                new PackageSource.Listener<P>() {
+                    @Override
+                    public boolean onPackage(P scannedPackage) {
+                        return examine(scannedPackage, snapshot) && stopAtFirstMatch;
+                    }
+                });
+
+        List<P> packages = refresh.getPackages();
+        boolean cancelled = refresh.isCancelled();
+        // packages of a full rescan were examined as they were loaded
+        if (!refresh.isFullScan())
+            for (P scannedPackage : packages) {
+                if (cancellation.isCancelled()) {
+                    cancelled = true;
+                    break;
+                }
+                if (examine(scannedPackage, snapshot) && stopAtFirstMatch) break;
+            }
+
+        synchronized (this) {
+            // a match answers a check even if the package list is incomplete
+            boolean complete = !cancelled || (stopAtFirstMatch && matchCount > 0);
+            return new Result<>(rules, inSourceOrder(found, packages), packages.size(),
+                    packagesExamined, complete, snapshot.getVersion());
+        }
+    }
+
+    /**
+     * What the current run found so far, for a caller that cannot wait for it to finish.
+     * Matches are in the order they were found, and the package count is only the packages
+     * examined so far
+     *
+     * @return Result, complete only if a scan stopping at the first match found it
+     */
+    public synchronized Result<P> getPartialResult() {
+        List<Match<P>> matches =
+                found != null ? new ArrayList<>(found) : Collections.<Match<P>>emptyList();
+        long version = found != null ? blacklistVersion : blacklist.get().getVersion();
+        return new Result<>(rules, matches, packagesExamined, packagesExamined,
+                stopAtFirstMatch && matchCount > 0, version);
+    }
+
+    /**
+     * Applies the rules to a package, on the scanning thread or concurrently on the loading
+     * threads of the source
+     *
+     * @return true if the package matched
+     */
+    private boolean examine(P scannedPackage, BlacklistSnapshot snapshot) {
+        Set<DetectionRule> matchedRules = match(scannedPackage, snapshot);
+
+        synchronized (this) {
+            packagesExamined++;
+            if (matchedRules == null) return false;
+            // another loading thread got there first
+            if (stopAtFirstMatch && matchCount > 0) return true;
+
+            matchCount++;
+            if (matchListener != null) matchListener.onMatch(scannedPackage, matchedRules);
+            else found.add(new Match<>(scannedPackage, matchedRules));
+            return true;
+        }
+    }
+
+    /**
+     * @return rules the package matched, null if none
+     */
+    private Set<DetectionRule> match(P scannedPackage, BlacklistSnapshot snapshot) {
+        EnumSet<DetectionRule> matchedRules = null;
+        for (DetectionRule rule : ruleArray)
+            if (rule.matches(scannedPackage, snapshot)) {
+                if (matchedRules == null) matchedRules = EnumSet.noneOf(DetectionRule.class);
+                matchedRules.add(rule);
+            }
+        return matchedRules == null ? null : Collections.unmodifiableSet(matchedRules);
+    }
+
+    /**
+     * Packages loaded on several threads are found out of order
+     */
+    private static <P> List<Match<P>> inSourceOrder(List<Match<P>> matches, List<P> packages) {
+        if (matches.size() < 2) return matches;
+
+        Map<P, Match<P>> byPackage = new IdentityHashMap<>();
+        for (Match<P> match : matches)
+            byPackage.put(match.getPackage(), match);
+
+        List<Match<P>> ordered = new ArrayList<>(matches.size());
+        for (P scannedPackage : packages) {
+            Match<P> match = byPackage.get(scannedPackage);
+            if (match != null) ordered.add(match);
+        }
+        return ordered;
+    }
+
+    /**
+     * A package and the rules it matched
+     *
+     * @param <P> package type
+     */
+    public static final class Match<P> {
+        private final P scannedPackage;
+        private final Set<DetectionRule> matchedRules;
+
+        Match(P scannedPackage, Set<DetectionRule> matchedRules) {
+            this.scannedPackage = scannedPackage;
+            this.matchedRules = matchedRules;
+        }
+
+        public P getPackage() {
+            return scannedPackage;
+        }
+
+        public Set<DetectionRule> getMatchedRules() {
+            return matchedRules;
+        }
+    }
+
+    /**
+     * Outcome of a scan
+     *
+     * @param <P> package type
+     */
+    public static final class Result<P> {
+        private final Set<DetectionRule> rules;
+        private final List<Match<P>> matches;
+        private final int packageCount;
+        private final int packagesExamined;
+        private final boolean complete;
+        private final long blacklistVersion;
+
+        Result(Set<DetectionRule> rules, List<Match<P>> matches, int packageCount,
+               int packagesExamined, boolean complete, long blacklistVersion) {
+            this.rules = rules;
+            this.matches = Collections.unmodifiableList(matches);
+            this.packageCount = packageCount;
+            this.packagesExamined = packagesExamined;
+            this.complete = complete;
+            this.blacklistVersion = blacklistVersion;
+        }
+
+        /**
+         * @return rules that were applied
+         */
+        public Set<DetectionRule> getRules() {
+            return rules;
+        }
+
+        /**
+         * @return matching packages in the order of the source, empty if a MatchListener
+         * received them
+         */
+        public List<Match<P>> getMatches() {
+            return matches;
+        }
+
+        /**
+         * @return packages of the source, only the ones loaded until then if loading stopped
+         * at the first match
+         */
+        public int getPackageCount() {
+            return packageCount;
+        }
+
+        /**
+         * @return packages the rules were applied to
+         */
+        public int getPackagesExamined() {
+            return packagesExamined;
+        }
+
+        /**
+         * @return false if the scan was cancelled before every package was examined, unless
+         * a scan stopping at the first match found it
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        /**
+         * @return version of the blacklist snapshot the rules were applied against
+         */
+        public long getBlacklistVersion() {
+            return blacklistVersion;
+        }
+    }
+}
@@ -0,0 +1,467 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Finds coordinates reported by implausibly many devices at the same time, as left by fraud
+ * rings replaying one spoofed location on many devices, for server side analysis of uploaded
+ * fixes.
+ * <p>
+ * Records are (device, latitude cell, longitude cell, time bucket). A Bloom filter counts
+ * each device once per cell and bucket, a count-min sketch estimates how many devices reported
+ * each cell and bucket, and a small table keeps the cells with the highest estimates. Memory
+ * is fixed when the detector is created, whatever the number of records; the defaults take
+ * about 3 MB.
+ * <p>
+ * Estimates are upper bounds: the sketch may overcount, never undercount, except for the few
+ * devices the Bloom filter mistakes for repeats, see {@link #getDedupeFalsePositiveRate()}.
+ * Start a new detector per batch or time window before that rate grows too high.
+ * <p>
+ * Shards built with the same dimensions can be combined with {@link #merge}, or serialized
+ * with {@link #writeTo} and {@link #read}. Shard by device, so a device's records all reach
+ * the same shard, otherwise a device is counted once per shard. Not thread safe, use one
+ * detector per thread and merge them.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+public final class DuplicateCoordinateDetector {
+
+    public static final int DEFAULT_WIDTH = 1 << 16;
+    public static final int DEFAULT_DEPTH = 4;
+    public static final int DEFAULT_DEDUPE_BITS = 1 << 24;
+    public static final int DEFAULT_HOTSPOT_CAPACITY = 1024;
+
+    /**
+     * "MLDC", first bytes of a serialized detector
+     */
+    public static final int MAGIC = 0x4d4c4443;
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int DEDUPE_HASHES = 4;
+
+    /**
+     * Entries per set of the hotspot table, a cell only competes with the cells of its set
+     */
+    private static final int WAYS = 4;
+
+    /**
+     * Serialized size of a hotspot slot: key, latitude, longitude, bucket and estimate
+     */
+    private static final int HOTSPOT_SLOT_BYTES = 8 + 4 + 4 + 8 + 4;
+
+    private final int width;
+    private final int depth;
+    private final int dedupeBits;
+    private final int hotspotCapacity;
+
+    private final int[] counts;
+    private final long[] dedupe;
+    private long dedupeBitsSet;
+    private long records;
+
+    // hotspot table, WAYS consecutive slots per set, an estimate of 0 marks a free slot
+    private final long[] hotspotKeys;
+    private final int[] hotspotLatitudes;
+    private final int[] hotspotLongitudes;
+    private final long[] hotspotBuckets;
+    private final int[] hotspotEstimates;
+
+    /**
+     * Detector with the default dimensions
+     */
+    public DuplicateCoordinateDetector() {
+        this(DEFAULT_WIDTH, DEFAULT_DEPTH, DEFAULT_DEDUPE_BITS, DEFAULT_HOTSPOT_CAPACITY);
+    }
+
+    /**
+     * @param width           counters per row of the sketch, a power of two. The estimate of a
+     *                        cell exceeds its true count by at most e * records / width with
+     *                        probability 1 - e^-depth
+     * @param depth           rows of the sketch
+     * @param dedupeBits      bits of the Bloom filter, a power of two of at least 64. Should
+     *                        be about ten times the distinct records expected per batch
+     * @param hotspotCapacity cells kept with their estimates, a multiple of 4
+     */
+    public DuplicateCoordinateDetector(int width, int depth, int dedupeBits, int hotspotCapacity) {
+        if (width <= 0 || Integer.bitCount(width) != 1)
+            throw new IllegalArgumentException("width must be a power of two");
+        if (depth <= 0) throw new IllegalArgumentException("depth must be positive");
+        if ((long) width * depth > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("width * depth must fit in an int");
+        if (dedupeBits < 64 || Integer.bitCount(dedupeBits) != 1)
+            throw new IllegalArgumentException("dedupeBits must be a power of two of at least 64");
+        if (hotspotCapacity <= 0 || hotspotCapacity % WAYS != 0)
+            throw new IllegalArgumentException("hotspotCapacity must be a positive multiple of " + WAYS);
+
+        this.width = width;
+        this.depth = depth;
+        this.dedupeBits = dedupeBits;
+        this.hotspotCapacity = hotspotCapacity;
+
+        counts = new int[width * depth];
+        dedupe = new long[dedupeBits / 64];
+        hotspotKeys = new long[hotspotCapacity];
+        hotspotLatitudes = new int[hotspotCapacity];
+        hotspotLongitudes = new int[hotspotCapacity];
+        hotspotBuckets = new long[hotspotCapacity];
+        hotspotEstimates = new int[hotspotCapacity];
+    }
+
+    /**
+     * Quantizes a coordinate into a cell, e.g. 10000 cells per degree make cells of about 11 m
+     *
+     * @param degrees        latitude or longitude
+     * @param cellsPerDegree int
+     * @return cell index
+     */
+    public static int cellOf(double degrees, int cellsPerDegree) {
+        return (int) Math.floor(degrees * cellsPerDegree);
+    }
+
+    /**
+     * Records that a device reported a cell during a time bucket
+     *
+     * @param deviceId      hash or numeric id of the device
+     * @param latitudeCell  see {@link #cellOf}
+     * @param longitudeCell see {@link #cellOf}
+     * @param timeBucket    e.g. UTC time divided by the bucket length
+     * @return false if the device had already reported the cell during the bucket, the record
+     * is then ignored
+     */
+    public boolean add(long deviceId, int latitudeCell, int longitudeCell, long timeBucket) {
+        long key = keyOf(latitudeCell, longitudeCell, timeBucket);
+        if (!markFirstSighting(mix(key ^ mix(deviceId + 0x632be59bd9b4e019L)))) return false;
+
+        records++;
+
+        // conservative update: only the counters at the minimum can be too low
+        int estimate = estimate(key);
+        if (estimate < Integer.MAX_VALUE) estimate++;
+        int hash = (int) key;
+        int step = (int) (key >>> 32) | 1;
+        for (int row = 0; row < depth; row++) {
+            int index = row * width + ((hash + row * step) & (width - 1));
+            if (counts[index] < estimate) counts[index] = estimate;
+        }
+
+        offerHotspot(key, latitudeCell, longitudeCell, timeBucket, estimate);
+        return true;
+    }
+
+    /**
+     * @return upper bound of the number of devices that reported the cell during the bucket
+     */
+    public int estimateDevices(int latitudeCell, int longitudeCell, long timeBucket) {
+        return estimate(keyOf(latitudeCell, longitudeCell, timeBucket));
+    }
+
+    private int estimate(long key) {
+        int hash = (int) key;
+        int step = (int) (key >>> 32) | 1;
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++)
+            estimate = Math.min(estimate, counts[row * width + ((hash + row * step) & (width - 1))]);
+
+        return estimate;
+    }
+
+    private boolean markFirstSighting(long pairHash) {
+        int hash = (int) pairHash;
+        int step = (int) (pairHash >>> 32) | 1;
+        boolean firstSighting = false;
+
+        for (int i = 0; i < DEDUPE_HASHES; i++) {
+            int bit = (hash + i * step) & (dedupeBits - 1);
+            long mask = 1L << bit;
+            if ((dedupe[bit >>> 6] & mask) == 0) {
+                dedupe[bit >>> 6] |= mask;
+                dedupeBitsSet++;
+                firstSighting = true;
+            }
+        }
+        return firstSighting;
+    }
+
+    private void offerHotspot(long key, int latitudeCell, int longitudeCell, long timeBucket,
+                              int estimate) {
+        int set = (int) ((mix(key) >>> 1) % (hotspotCapacity / WAYS)) * WAYS;
+
+        int victim = set;
+        for (int slot = set; slot < set + WAYS; slot++) {
+            if (hotspotEstimates[slot] != 0 && hotspotKeys[slot] == key) {
+                hotspotEstimates[slot] = Math.max(hotspotEstimates[slot], estimate);
+                return;
+            }
+            if (hotspotEstimates[slot] < hotspotEstimates[victim]) victim = slot;
+        }
+
+        if (hotspotEstimates[victim] >= estimate) return;
+
+        hotspotKeys[victim] = key;
+        hotspotLatitudes[victim] = latitudeCell;
+        hotspotLongitudes[victim] = longitudeCell;
+        hotspotBuckets[victim] = timeBucket;
+        hotspotEstimates[victim] = estimate;
+    }
+
+    /**
+     * Cells reported by at least the given number of devices. Only cells that stayed in the
+     * hotspot table are found: a cell is only displaced by heavier cells, so with a threshold
+     * well above the typical count the table holds every cell above it
+     *
+     * @param minDevices int, at least 1
+     * @return hotspots, most devices first
+     */
+    public List<Hotspot> getHotspots(int minDevices) {
+        List<Hotspot> hotspots = new ArrayList<>();
+        for (int slot = 0; slot < hotspotCapacity; slot++) {
+            if (hotspotEstimates[slot] == 0) continue;
+
+            int devices = estimate(hotspotKeys[slot]);
+            if (devices >= Math.max(1, minDevices))
+                hotspots.add(new Hotspot(hotspotLatitudes[slot], hotspotLongitudes[slot],
+                        hotspotBuckets[slot], devices));
+        }
+
+        Collections.sort(hotspots, new Comparator<Hotspot>() {
+            @Override
+            public int compare(Hotspot first, Hotspot second) {
+                return first.devices > second.devices ? -1 : (first.devices == second.devices ? 0 : 1);
+            }
+        });
+        return hotspots;
+    }
+
+    /**
+     * Adds the records of another shard to this detector
+     *
+     * @param other detector of the same dimensions, left unchanged
+     * @throws IllegalArgumentException if the dimensions differ
+     */
+    public void merge(DuplicateCoordinateDetector other) {
+        if (other.width != width || other.depth != depth || other.dedupeBits != dedupeBits
+                || other.hotspotCapacity != hotspotCapacity)
+            throw new IllegalArgumentException("Cannot merge detectors of different dimensions");
+
+        for (int i = 0; i < counts.length; i++) {
+            long sum = (long) counts[i] + other.counts[i];
+            counts[i] = (int) Math.min(Integer.MAX_VALUE, sum);
+        }
+
+        dedupeBitsSet = 0;
+        for (int i = 0; i < dedupe.length; i++) {
+            dedupe[i] |= other.dedupe[i];
+            dedupeBitsSet += Long.bitCount(dedupe[i]);
+        }
+        records += other.records;
+
+        for (int slot = 0; slot < hotspotCapacity; slot++)
+            if (hotspotEstimates[slot] != 0) hotspotEstimates[slot] = estimate(hotspotKeys[slot]);
+
+        for (int slot = 0; slot < hotspotCapacity; slot++)
+            if (other.hotspotEstimates[slot] != 0)
+                offerHotspot(other.hotspotKeys[slot], other.hotspotLatitudes[slot],
+                        other.hotspotLongitudes[slot], other.hotspotBuckets[slot],
+                        estimate(other.hotspotKeys[slot]));
+    }
+
+    /**
+     * Getter
+     * @return number of records counted, repeats excluded
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * Getter - probability that the record of a device not seen before for a cell is taken for
+     * a repeat and ignored
+     * @return between 0 and 1
+     */
+    public double getDedupeFalsePositiveRate() {
+        return Math.pow((double) dedupeBitsSet / dedupeBits, DEDUPE_HASHES);
+    }
+
+    /**
+     * Forgets every record
+     */
+    public void clear() {
+        Arrays.fill(counts, 0);
+        Arrays.fill(dedupe, 0);
+        Arrays.fill(hotspotEstimates, 0);
+        dedupeBitsSet = 0;
+        records = 0;
+    }
+
+    private static long keyOf(int latitudeCell, int longitudeCell, long timeBucket) {
+        return mix(((long) latitudeCell << 32 | (longitudeCell & 0xffffffffL))
+                ^ mix(timeBucket + 0x9e3779b97f4a7c15L));
+    }
+
+    /**
+     * Finalizer of SplitMix64, spreads every input bit over the whole hash
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+
+    /**
+     * Writes the detector in the format read by {@link #read(ByteBuffer)}
+     *
+     * @param outputStream OutputStream, not closed
+     * @throws IOException if writing fails
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        DataOutputStream dataOutputStream =
+                new DataOutputStream(new BufferedOutputStream(outputStream, 1 << 16));
+        dataOutputStream.writeInt(MAGIC);
+        dataOutputStream.writeInt(FORMAT_VERSION);
+        dataOutputStream.writeInt(width);
+        dataOutputStream.writeInt(depth);
+        dataOutputStream.writeInt(dedupeBits);
+        dataOutputStream.writeInt(hotspotCapacity);
+        dataOutputStream.writeLong(records);
+
+        for (int count : counts) dataOutputStream.writeInt(count);
+        for (long word : dedupe) dataOutputStream.writeLong(word);
+        for (int slot = 0; slot < hotspotCapacity; slot++) {
+            dataOutputStream.writeLong(hotspotKeys[slot]);
+            dataOutputStream.writeInt(hotspotLatitudes[slot]);
+            dataOutputStream.writeInt(hotspotLongitudes[slot]);
+            dataOutputStream.writeLong(hotspotBuckets[slot]);
+            dataOutputStream.writeInt(hotspotEstimates[slot]);
+        }
+        dataOutputStream.flush();
+    }
+
+    /**
+     * Reads a detector written by {@link #writeTo}, e.g. by another shard
+     *
+     * @param buffer ByteBuffer positioned at the start of the detector
+     * @return DuplicateCoordinateDetector
+     * @throws IOException if the data is corrupt or of an unsupported format version
+     */
+    public static DuplicateCoordinateDetector read(ByteBuffer buffer) throws IOException {
+        try {
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            if (buffer.getInt() != MAGIC)
+                throw new IOException("Not a serialized duplicate coordinate detector");
+
+            int formatVersion = buffer.getInt();
+            if (formatVersion != FORMAT_VERSION)
+                throw new IOException("Unsupported duplicate coordinate detector version: " + formatVersion);
+
+            int width = buffer.getInt();
+            int depth = buffer.getInt();
+            int dedupeBits = buffer.getInt();
+            int hotspotCapacity = buffer.getInt();
+            // checked before allocating, corrupt dimensions must not overflow or exhaust memory
+            if (width <= 0 || depth <= 0 || dedupeBits <= 0 || hotspotCapacity <= 0
+                    || (long) width * depth > buffer.remaining() / 4
+                    || 8 + (long) width * depth * 4 + dedupeBits / 8
+                    + (long) hotspotCapacity * HOTSPOT_SLOT_BYTES > buffer.remaining())
+                throw new IOException("Corrupt duplicate coordinate detector dimensions");
+
+            DuplicateCoordinateDetector detector;
+            try {
+                detector = new DuplicateCoordinateDetector(width, depth, dedupeBits, hotspotCapacity);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Corrupt duplicate coordinate detector", e);
+            }
+            detector.records = buffer.getLong();
+
+            buffer.asIntBuffer().get(detector.counts);
+            buffer.position(buffer.position() + detector.counts.length * 4);
+            buffer.asLongBuffer().get(detector.dedupe);
+            buffer.position(buffer.position() + detector.dedupe.length * 8);
+            for (long word : detector.dedupe) detector.dedupeBitsSet += Long.bitCount(word);
+
+            for (int slot = 0; slot < detector.hotspotCapacity; slot++) {
+                detector.hotspotKeys[slot] = buffer.getLong();
+                detector.hotspotLatitudes[slot] = buffer.getInt();
+                detector.hotspotLongitudes[slot] = buffer.getInt();
+                detector.hotspotBuckets[slot] = buffer.getLong();
+                detector.hotspotEstimates[slot] = buffer.getInt();
+            }
+            return detector;
+
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Corrupt duplicate coordinate detector", e);
+        }
+    }
+
+    /**
+     * A cell and time bucket reported by many devices
+     */
+    public static final class Hotspot {
+        private final int latitudeCell;
+        private final int longitudeCell;
+        private final long timeBucket;
+        private final int devices;
+
+        Hotspot(int latitudeCell, int longitudeCell, long timeBucket, int devices) {
+            this.latitudeCell = latitudeCell;
+            this.longitudeCell = longitudeCell;
+            this.timeBucket = timeBucket;
+            this.devices = devices;
+        }
+
+        public int getLatitudeCell() {
+            return latitudeCell;
+        }
+
+        public int getLongitudeCell() {
+            return longitudeCell;
+        }
+
+        public long getTimeBucket() {
+            return timeBucket;
+        }
+
+        /**
+         * Getter
+         * @return upper bound of the number of devices that reported the cell
+         */
+        public int getDevices() {
+            return devices;
+        }
+
+        @Override
+        public String toString() {
+            return "Hotspot{" +
+                    "latitudeCell=" + latitudeCell +
+                    ", longitudeCell=" + longitudeCell +
+                    ", timeBucket=" + timeBucket +
+                    ", devices=" + devices +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Plain location fix, the platform independent counterpart of android.location.Location.
+ * <p>
+ * Mutable so a single instance can be reused for every fix of a stream without allocating.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+public final class Fix {
+
+    private double latitude;
+    private double longitude;
+    private double altitude;
+    private float speed;
+    private float accuracy;
+    private long time;
+    private long elapsedRealtimeNanos;
+    private boolean fromMockProvider;
+
+    /**
+     * Getter
+     * @return degrees
+     */
+    public double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * Setter
+     * @param latitude degrees
+     * @return this object
+     */
+    public Fix setLatitude(double latitude) {
+        this.latitude = latitude;
+        return this;
+    }
+
+    /**
+     * Getter
+     * @return degrees
+     */
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Setter
+     * @param longitude degrees
+     * @return this object
+     */
+    public Fix setLongitude(double longitude) {
+        this.longitude = longitude;
+        return this;
+    }
+
+    /**
+     * Getter
+     * @return meters, 0 if not reported
+     */
+    public double getAltitude() {
+        return altitude;
+    }
+
+    /**
+     * Setter
+     * @param altitude meters
+     * @return this object
+     */
+    public Fix setAltitude(double altitude) {
+        this.altitude = altitude;
+        return this;
+    }
+
+    /**
+     * Getter
+     * @return meters/second, 0 if not reported
+     */
+    public float getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Setter
+     * @param speed meters/second
+     * @return this object
+     */
+    public Fix setSpeed(float speed) {
+        this.speed = speed;
+        return this;
+    }
+
+    /**
+     * Getter
+     * @return horizontal accuracy radius in meters, 0 if not reported
+     */
+    public float getAccuracy() {
+        return accuracy;
+    }
+
+    /**
+     * Setter
+     * @param accuracy meters
+     * @return this object
+     */
+    public Fix setAccuracy(float accuracy) {
+        this.accuracy = accuracy;
+        return this;
+    }
+
+    /**
+     * Getter
+     * @return UTC time in milliseconds since epoch
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Setter
+     * @param time UTC milliseconds since epoch
+     * @return this object
+     */
+    public Fix setTime(long time) {
+        this.time = time;
+        return this;
+    }
+
+    /**
+     * Getter
+     * @return monotonic timestamp in nanoseconds, 0 if not reported
+     */
+    public long getElapsedRealtimeNanos() {
+        return elapsedRealtimeNanos;
+    }
+
+    /**
+     * Setter
+     * @param elapsedRealtimeNanos monotonic timestamp in nanoseconds
+     * @return this object
+     */
+    public Fix setElapsedRealtimeNanos(long elapsedRealtimeNanos) {
+        this.elapsedRealtimeNanos = elapsedRealtimeNanos;
+        return this;
+    }
+
+    /**
+     * Getter - monotonic timestamp, falling back to the UTC time when none was reported.
+     * <p>
+     * The fallback is per fix, so timestamps of two fixes are only comparable when both or
+     * neither report elapsedRealtimeNanos. {@link ImpossibleTravelDetector#addFix(Fix)} picks
+     * one time base for the whole track instead, and {@link FixColumns} rejects mixed tracks.
+     * @return nanoseconds
+     */
+    public long getTimestampNanos() {
+        return elapsedRealtimeNanos != 0 ? elapsedRealtimeNanos : time * 1_000_000L;
+    }
+
+    /**
+     * Getter
+     * @return boolean
+     */
+    public boolean isFromMockProvider() {
+        return fromMockProvider;
+    }
+
+    /**
+     * Setter
+     * @param fromMockProvider boolean
+     * @return this object
+     */
+    public Fix setFromMockProvider(boolean fromMockProvider) {
+        this.fromMockProvider = fromMockProvider;
+        return this;
+    }
+}
@@ -0,0 +1,135 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import java.util.Arrays;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Columnar batch of fixes, one primitive array per field.
+ * <p>
+ * Fixes of the same track (usually one device) must be contiguous and in time order. A track
+ * ends where the track id changes.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+public final class FixColumns {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private long[] trackIds;
+    private double[] latitudes;
+    private double[] longitudes;
+    private double[] altitudes;
+    private float[] speeds;
+    private float[] accuracies;
+    private long[] timestampNanos;
+    private boolean[] fromMockProvider;
+    private int size;
+    private boolean lastRealtime;
+
+    public FixColumns() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity initial number of fixes, the columns grow as needed
+     */
+    public FixColumns(int capacity) {
+        capacity = Math.max(1, capacity);
+        trackIds = new long[capacity];
+        latitudes = new double[capacity];
+        longitudes = new double[capacity];
+        altitudes = new double[capacity];
+        speeds = new float[capacity];
+        accuracies = new float[capacity];
+        timestampNanos = new long[capacity];
+        fromMockProvider = new boolean[capacity];
+    }
+
+    /**
+     * Appends a fix
+     * @return this object
+     */
+    public FixColumns add(long trackId, double latitude, double longitude, double altitude,
+                          float speed, float accuracy, long timestampNanos,
+                          boolean fromMockProvider) {
+        if (size == trackIds.length) grow();
+
+        this.trackIds[size] = trackId;
+        this.latitudes[size] = latitude;
+        this.longitudes[size] = longitude;
+        this.altitudes[size] = altitude;
+        this.speeds[size] = speed;
+        this.accuracies[size] = accuracy;
+        this.timestampNanos[size] = timestampNanos;
+        this.fromMockProvider[size] = fromMockProvider;
+        size++;
+        return this;
+    }
+
+    /**
+     * Appends a fix, timed by {@link Fix#getTimestampNanos()}
+     * @return this object
+     * @throws IllegalArgumentException if only some fixes of the track report
+     *                                  elapsedRealtimeNanos, their timestamps are not comparable
+     */
+    public FixColumns add(long trackId, Fix fix) {
+        boolean realtime = fix.getElapsedRealtimeNanos() != 0;
+        if (size > 0 && trackIds[size - 1] == trackId && realtime != lastRealtime)
+            throw new IllegalArgumentException("Track " + trackId
+                    + " mixes elapsed realtime and UTC timestamps");
+        lastRealtime = realtime;
+
+        return add(trackId, fix.getLatitude(), fix.getLongitude(), fix.getAltitude(),
+                fix.getSpeed(), fix.getAccuracy(), fix.getTimestampNanos(),
+                fix.isFromMockProvider());
+    }
+
+    /**
+     * Removes all fixes, keeping the allocated columns
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    private void grow() {
+        int capacity = trackIds.length * 2;
+        trackIds = Arrays.copyOf(trackIds, capacity);
+        latitudes = Arrays.copyOf(latitudes, capacity);
+        longitudes = Arrays.copyOf(longitudes, capacity);
+        altitudes = Arrays.copyOf(altitudes, capacity);
+        speeds = Arrays.copyOf(speeds, capacity);
+        accuracies = Arrays.copyOf(accuracies, capacity);
+        timestampNanos = Arrays.copyOf(timestampNanos, capacity);
+        fromMockProvider = Arrays.copyOf(fromMockProvider, capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    long getTrackId(int index) {
+        return trackIds[index];
+    }
+
+    /**
+     * Scores one fix with the scorer of its track
+     */
+    float score(FixScorer fixScorer, int index) {
+        return fixScorer.score(latitudes[index], longitudes[index], altitudes[index],
+                speeds[index], accuracies[index], timestampNanos[index], fromMockProvider[index]);
+    }
+}
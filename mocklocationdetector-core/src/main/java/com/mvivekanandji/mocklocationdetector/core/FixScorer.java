@@ -0,0 +1,123 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Scores the fixes of one device by combining every per-fix rule: the mock provider flag,
+ * impossible travel ({@link ImpossibleTravelDetector}) and constant sensor values
+ * ({@link LocationPlausibilityAnalyzer}).
+ * <p>
+ * Stateful and not thread safe, use one scorer per stream of fixes.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+public final class FixScorer {
+
+    public static final int MOCK_PROVIDER = 1;
+    public static final int IMPOSSIBLE_SPEED = 1 << 1;
+    public static final int IMPOSSIBLE_ACCELERATION = 1 << 2;
+    public static final int TIME_REVERSAL = 1 << 3;
+    public static final int CONSTANT_SENSORS = 1 << 4;
+
+    /**
+     * Plausibility score from which {@link #CONSTANT_SENSORS} is reported
+     */
+    public static final float DEFAULT_CONSTANT_SENSORS_THRESHOLD = 0.8f;
+
+    private final ImpossibleTravelDetector impossibleTravelDetector;
+    private final LocationPlausibilityAnalyzer plausibilityAnalyzer;
+    private final float constantSensorsThreshold;
+
+    private int lastFlags;
+
+    public FixScorer() {
+        this(new ImpossibleTravelDetector(), new LocationPlausibilityAnalyzer(),
+                DEFAULT_CONSTANT_SENSORS_THRESHOLD);
+    }
+
+    /**
+     * @param impossibleTravelDetector ImpossibleTravelDetector owned by this scorer
+     * @param plausibilityAnalyzer     LocationPlausibilityAnalyzer owned by this scorer
+     * @param constantSensorsThreshold plausibility score from which CONSTANT_SENSORS is reported
+     */
+    public FixScorer(ImpossibleTravelDetector impossibleTravelDetector,
+                     LocationPlausibilityAnalyzer plausibilityAnalyzer,
+                     float constantSensorsThreshold) {
+        this.impossibleTravelDetector = impossibleTravelDetector;
+        this.plausibilityAnalyzer = plausibilityAnalyzer;
+        this.constantSensorsThreshold = constantSensorsThreshold;
+    }
+
+    /**
+     * Scores the next fix of the stream, timed as {@link ImpossibleTravelDetector#addFix(Fix)}
+     * does
+     *
+     * @param fix Fix
+     * @return score of the fix, see {@link #score(double, double, double, float, float, long, boolean)}
+     */
+    public float score(Fix fix) {
+        return score(impossibleTravelDetector.addFix(fix), fix.getAltitude(), fix.getSpeed(),
+                fix.getAccuracy(), fix.isFromMockProvider());
+    }
+
+    /**
+     * Scores the next fix of the stream. The rules that fired are available from
+     * {@link #getLastFlags()}
+     *
+     * @return 0 (plausible) to 1 (certainly spoofed). 1 if the fix is from a mock provider or
+     * an impossible jump, the constant sensor score otherwise
+     */
+    public float score(double latitude, double longitude, double altitude, float speed,
+                       float accuracy, long timestampNanos, boolean fromMockProvider) {
+        return score(impossibleTravelDetector.addFix(latitude, longitude, timestampNanos, accuracy),
+                altitude, speed, accuracy, fromMockProvider);
+    }
+
+    private float score(int travelFlags, double altitude, float speed, float accuracy,
+                        boolean fromMockProvider) {
+        int flags = fromMockProvider ? MOCK_PROVIDER : 0;
+
+        if ((travelFlags & ImpossibleTravelDetector.SPEED_VIOLATION) != 0) flags |= IMPOSSIBLE_SPEED;
+        if ((travelFlags & ImpossibleTravelDetector.ACCELERATION_VIOLATION) != 0)
+            flags |= IMPOSSIBLE_ACCELERATION;
+        if ((travelFlags & ImpossibleTravelDetector.TIME_REVERSAL) != 0) flags |= TIME_REVERSAL;
+
+        float plausibility = plausibilityAnalyzer.addFix(altitude, speed, accuracy);
+        if (plausibility >= constantSensorsThreshold) flags |= CONSTANT_SENSORS;
+
+        lastFlags = flags;
+        return (flags & (MOCK_PROVIDER | IMPOSSIBLE_SPEED | IMPOSSIBLE_ACCELERATION)) != 0
+                ? 1f
+                : plausibility;
+    }
+
+    /**
+     * Getter
+     * @return rules that fired for the latest fix, a combination of the flag constants
+     */
+    public int getLastFlags() {
+        return lastFlags;
+    }
+
+    /**
+     * Forgets the stream, call before scoring fixes of another device
+     */
+    public void reset() {
+        impossibleTravelDetector.reset();
+        plausibilityAnalyzer.reset();
+        lastFlags = 0;
+    }
+}
@@ -0,0 +1,276 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Detects spoofed jumps: consecutive fixes whose implied speed or acceleration is physically
+ * impossible given their timestamps.
+ * <p>
+ * Distances use an equirectangular approximation. Exact haversine is only computed when the
+ * approximate speed is close to the limit or the jump is long enough for the approximation
+ * to matter. Accuracy radii of both fixes are subtracted from the distance so GPS jitter on a
+ * stationary device does not count as movement.
+ * <p>
+ * Only primitive state is kept and feeding a fix does not allocate. Recorded tracks can be
+ * scored in one call from primitive arrays with {@link #scoreTrack}. Not thread safe, feed it
+ * from one thread.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+public final class ImpossibleTravelDetector {
+
+    /**
+     * Implied speed above the configured maximum
+     */
+    public static final int SPEED_VIOLATION = 1;
+
+    /**
+     * Change of implied speed above the configured maximum acceleration
+     */
+    public static final int ACCELERATION_VIOLATION = 1 << 1;
+
+    /**
+     * Fix is older than the previous fix
+     */
+    public static final int TIME_REVERSAL = 1 << 2;
+
+    public static final double DEFAULT_MAX_SPEED = 100;          // m/s, 360 km/h
+    public static final double DEFAULT_MAX_ACCELERATION = 15;    // m/s^2
+
+    private static final double EARTH_RADIUS = 6371008.8;        // meters, mean radius
+
+    /**
+     * Relative distance to a limit within which the approximation is not trusted
+     */
+    private static final double EXACT_MARGIN = 0.1;
+
+    /**
+     * Distance beyond which the approximation is not trusted at all
+     */
+    private static final double EXACT_DISTANCE = 100_000;
+
+    private final double maxSpeed;
+    private final double maxAcceleration;
+
+    private boolean hasPrevious;
+    private double previousLatitude;
+    private double previousLongitude;
+    private double previousAccuracy;
+    private long previousNanos;
+    private long previousUtcNanos;
+    private boolean utcTimeBase;
+
+    private double lastSpeed;
+    private double lastAcceleration;
+    private boolean hasSpeed;
+    private long exactDistanceCount;
+
+    public ImpossibleTravelDetector() {
+        this(DEFAULT_MAX_SPEED, DEFAULT_MAX_ACCELERATION);
+    }
+
+    /**
+     * @param maxSpeed        meters/second
+     * @param maxAcceleration meters/second^2
+     */
+    public ImpossibleTravelDetector(double maxSpeed, double maxAcceleration) {
+        if (maxSpeed <= 0 || maxAcceleration <= 0)
+            throw new IllegalArgumentException("Limits must be positive");
+
+        this.maxSpeed = maxSpeed;
+        this.maxAcceleration = maxAcceleration;
+    }
+
+    /**
+     * Feeds a fix. The time base is chosen per track: elapsedRealtimeNanos, which unlike the
+     * UTC time is monotonic, as long as every fix of the track reports it. From the first fix
+     * without it until {@link #reset()} the UTC time of the fixes is used instead, so two
+     * fixes are never compared across time bases.
+     *
+     * @param fix Fix
+     * @return violation flags for this fix, 0 if the move is plausible
+     */
+    public int addFix(Fix fix) {
+        long utcNanos = fix.getTime() * 1_000_000L;
+        if (!utcTimeBase && fix.getElapsedRealtimeNanos() == 0) {
+            utcTimeBase = true;
+            previousNanos = previousUtcNanos;
+        }
+        return addFix(fix.getLatitude(), fix.getLongitude(),
+                utcTimeBase ? utcNanos : fix.getElapsedRealtimeNanos(), utcNanos,
+                fix.getAccuracy());
+    }
+
+    /**
+     * Feeds a fix. Every fix of a track must use the same time base
+     *
+     * @param latitudeDegrees  latitude
+     * @param longitudeDegrees longitude
+     * @param nanos            monotonic timestamp in nanoseconds
+     * @param accuracyMeters   horizontal accuracy radius, 0 if unknown
+     * @return violation flags for this fix, 0 if the move is plausible
+     */
+    public int addFix(double latitudeDegrees, double longitudeDegrees, long nanos,
+                      double accuracyMeters) {
+        return addFix(latitudeDegrees, longitudeDegrees, nanos, nanos, accuracyMeters);
+    }
+
+    /**
+     * A fix with the same timestamp as the previous one, e.g. the same position reported by
+     * two GNSS talkers, is a duplicate and leaves the trajectory as it is. It is only flagged
+     * when it is somewhere else, nothing can be in two places at once.
+     *
+     * @param utcNanos UTC time of the fix, kept in case the track falls back to it
+     */
+    private int addFix(double latitudeDegrees, double longitudeDegrees, long nanos,
+                       long utcNanos, double accuracyMeters) {
+        int flags = 0;
+
+        if (hasPrevious) {
+            long elapsed = nanos - previousNanos;
+            if (elapsed < 0) return TIME_REVERSAL;
+            if (elapsed == 0) {
+                double slack = Math.max(0, previousAccuracy) + Math.max(0, accuracyMeters);
+                return approximateDistance(previousLatitude, previousLongitude,
+                        latitudeDegrees, longitudeDegrees) > slack ? SPEED_VIOLATION : 0;
+            }
+
+            double seconds = elapsed / 1e9;
+            double speed = impliedSpeed(previousLatitude, previousLongitude, previousAccuracy,
+                    latitudeDegrees, longitudeDegrees, accuracyMeters, seconds);
+
+            if (speed > maxSpeed) flags |= SPEED_VIOLATION;
+
+            if (hasSpeed) {
+                lastAcceleration = Math.abs(speed - lastSpeed) / seconds;
+                if (lastAcceleration > maxAcceleration) flags |= ACCELERATION_VIOLATION;
+            }
+            lastSpeed = speed;
+            hasSpeed = true;
+        }
+
+        previousLatitude = latitudeDegrees;
+        previousLongitude = longitudeDegrees;
+        previousAccuracy = accuracyMeters;
+        previousNanos = nanos;
+        previousUtcNanos = utcNanos;
+        hasPrevious = true;
+
+        return flags;
+    }
+
+    private double impliedSpeed(double latitude1, double longitude1, double accuracy1,
+                                double latitude2, double longitude2, double accuracy2,
+                                double seconds) {
+        double slack = Math.max(0, accuracy1) + Math.max(0, accuracy2);
+        double distance = approximateDistance(latitude1, longitude1, latitude2, longitude2);
+        double speed = Math.max(0, distance - slack) / seconds;
+
+        if (distance > EXACT_DISTANCE || Math.abs(speed - maxSpeed) < maxSpeed * EXACT_MARGIN) {
+            exactDistanceCount++;
+            distance = haversineDistance(latitude1, longitude1, latitude2, longitude2);
+            speed = Math.max(0, distance - slack) / seconds;
+        }
+        return speed;
+    }
+
+    /**
+     * Scores a recorded track in one call
+     *
+     * @param latitudes  latitudes in degrees
+     * @param longitudes longitudes in degrees
+     * @param timeNanos  monotonic timestamps in nanoseconds
+     * @param accuracies accuracy radii in meters, null if unknown
+     * @param flagsOut   receives the violation flags of every fix, null if not needed
+     * @return number of fixes with at least one violation
+     */
+    public int scoreTrack(double[] latitudes, double[] longitudes,
+                          long[] timeNanos, float[] accuracies, int[] flagsOut) {
+        int length = latitudes.length;
+        if (longitudes.length != length || timeNanos.length != length
+                || (accuracies != null && accuracies.length != length)
+                || (flagsOut != null && flagsOut.length < length))
+            throw new IllegalArgumentException("Track arrays must have the same length");
+
+        reset();
+        int violations = 0;
+        for (int i = 0; i < length; i++) {
+            int flags = addFix(latitudes[i], longitudes[i], timeNanos[i],
+                    accuracies != null ? accuracies[i] : 0);
+            if (flags != 0) violations++;
+            if (flagsOut != null) flagsOut[i] = flags;
+        }
+        return violations;
+    }
+
+    /**
+     * Equirectangular approximation, good to well under 1% for jumps of a few kilometers
+     */
+    static double approximateDistance(double latitude1, double longitude1,
+                                      double latitude2, double longitude2) {
+        double deltaLongitude = Math.toRadians(longitude2 - longitude1);
+        if (deltaLongitude > Math.PI) deltaLongitude -= 2 * Math.PI;
+        else if (deltaLongitude < -Math.PI) deltaLongitude += 2 * Math.PI;
+
+        double x = deltaLongitude * Math.cos(Math.toRadians((latitude1 + latitude2) / 2));
+        double y = Math.toRadians(latitude2 - latitude1);
+        return EARTH_RADIUS * Math.sqrt(x * x + y * y);
+    }
+
+    static double haversineDistance(double latitude1, double longitude1,
+                                    double latitude2, double longitude2) {
+        double sinLatitude = Math.sin(Math.toRadians(latitude2 - latitude1) / 2);
+        double sinLongitude = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        double a = sinLatitude * sinLatitude + Math.cos(Math.toRadians(latitude1))
+                * Math.cos(Math.toRadians(latitude2)) * sinLongitude * sinLongitude;
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Getter
+     * @return implied speed between the last two fixes, meters/second
+     */
+    public double getLastSpeed() {
+        return lastSpeed;
+    }
+
+    /**
+     * Getter
+     * @return implied acceleration over the last three fixes, meters/second^2
+     */
+    public double getLastAcceleration() {
+        return lastAcceleration;
+    }
+
+    /**
+     * Getter
+     * @return number of times the exact haversine distance had to be computed
+     */
+    public long getExactDistanceCount() {
+        return exactDistanceCount;
+    }
+
+    /**
+     * Forgets the trajectory, e.g. when location updates restart after a long pause
+     */
+    public void reset() {
+        hasPrevious = false;
+        utcTimeBase = false;
+        lastSpeed = 0;
+        lastAcceleration = 0;
+        hasSpeed = false;
+    }
+}
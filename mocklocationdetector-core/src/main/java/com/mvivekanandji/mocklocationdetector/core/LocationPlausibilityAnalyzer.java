@@ -0,0 +1,237 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Scores how plausible a stream of location fixes is.
+ * <p>
+ * Most spoofing apps only change latitude and longitude and hold altitude, speed and accuracy at
+ * a constant value. This analyzer keeps the last {@code windowSize} values of those three in a
+ * primitive ring buffer and maintains their variance and the length of the current run of
+ * identical values in O(1) per fix. Feeding a fix does not allocate, so it can run from
+ * onLocationChanged() for hours.
+ * <p>
+ * Not thread safe, feed it from one thread (normally the location callback thread).
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+public final class LocationPlausibilityAnalyzer {
+
+    public static final int DEFAULT_WINDOW_SIZE = 30;
+
+    public static final int ALTITUDE = 0;
+    public static final int SPEED = 1;
+    public static final int ACCURACY = 2;
+    private static final int CHANNELS = 3;
+
+    /**
+     * Fixes needed before a score other than 0 is reported
+     */
+    private static final int MIN_FIXES = 5;
+
+    /**
+     * Variance below which a channel counts as held constant
+     */
+    private static final double CONSTANT_VARIANCE = 1e-9;
+
+    /**
+     * Sliding updates between exact recomputations of the statistics, bounds rounding drift
+     */
+    private static final int RECOMPUTE_INTERVAL = 1024;
+
+    private final int windowSize;
+    private final double[] window;
+    private final double[] mean = new double[CHANNELS];
+    private final double[] squaredDeviations = new double[CHANNELS];
+    private final double[] lastValue = new double[CHANNELS];
+    private final int[] runLength = new int[CHANNELS];
+
+    private int size;
+    private int head;
+    private int updatesSinceRecompute;
+    private long fixCount;
+    private float lastScore;
+
+    public LocationPlausibilityAnalyzer() {
+        this(DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param windowSize number of recent fixes the statistics cover, at least {@value #MIN_FIXES}
+     */
+    public LocationPlausibilityAnalyzer(int windowSize) {
+        if (windowSize < MIN_FIXES)
+            throw new IllegalArgumentException("windowSize must be at least " + MIN_FIXES);
+
+        this.windowSize = windowSize;
+        this.window = new double[CHANNELS * windowSize];
+    }
+
+    /**
+     * Feeds a fix
+     *
+     * @param fix Fix
+     * @return suspicion score of this fix, see {@link #addFix(double, double, double)}
+     */
+    public float addFix(Fix fix) {
+        return addFix(fix.getAltitude(), fix.getSpeed(), fix.getAccuracy());
+    }
+
+    /**
+     * Feeds a fix. Values the provider did not report should be passed as 0, which is what
+     * android.location.Location returns for them.
+     *
+     * @param altitude meters
+     * @param speed    meters/second
+     * @param accuracy meters
+     * @return suspicion score between 0 (values vary like real GPS) and 1 (all three values
+     * held constant over the whole window)
+     */
+    public float addFix(double altitude, double speed, double accuracy) {
+        push(ALTITUDE, altitude);
+        push(SPEED, speed);
+        push(ACCURACY, accuracy);
+
+        if (size < windowSize) size++;
+        head = (head + 1) % windowSize;
+        fixCount++;
+
+        if (size == windowSize && ++updatesSinceRecompute >= RECOMPUTE_INTERVAL)
+            recompute();
+
+        lastScore = score();
+        return lastScore;
+    }
+
+    private void push(int channel, double value) {
+        int slot = channel * windowSize + head;
+
+        if (size < windowSize) {
+            // window still filling: plain Welford update
+            double delta = value - mean[channel];
+            mean[channel] += delta / (size + 1);
+            squaredDeviations[channel] += delta * (value - mean[channel]);
+        } else {
+            // window full: replace the oldest value in place
+            double oldValue = window[slot];
+            double oldMean = mean[channel];
+            mean[channel] += (value - oldValue) / windowSize;
+            squaredDeviations[channel] += (value - oldValue) * (value - mean[channel] + oldValue - oldMean);
+            if (squaredDeviations[channel] < 0) squaredDeviations[channel] = 0;
+        }
+        window[slot] = value;
+
+        if (fixCount > 0 && Double.compare(value, lastValue[channel]) == 0) runLength[channel]++;
+        else runLength[channel] = 1;
+        lastValue[channel] = value;
+    }
+
+    private void recompute() {
+        updatesSinceRecompute = 0;
+
+        for (int channel = 0; channel < CHANNELS; channel++) {
+            int offset = channel * windowSize;
+            double sum = 0;
+            for (int i = 0; i < windowSize; i++) sum += window[offset + i];
+
+            double channelMean = sum / windowSize;
+            double deviations = 0;
+            for (int i = 0; i < windowSize; i++) {
+                double delta = window[offset + i] - channelMean;
+                deviations += delta * delta;
+            }
+            mean[channel] = channelMean;
+            squaredDeviations[channel] = deviations;
+        }
+    }
+
+    private float score() {
+        if (size < MIN_FIXES) return 0f;
+
+        float total = 0f;
+        for (int channel = 0; channel < CHANNELS; channel++) {
+            float constant = getVariance(channel) < CONSTANT_VARIANCE ? 1f : 0f;
+            float repeated = Math.min(1f, (runLength[channel] - 1) / (float) (windowSize - 1));
+            total += Math.max(constant, repeated);
+        }
+        return total / CHANNELS;
+    }
+
+    /**
+     * @param channel {@link #ALTITUDE}, {@link #SPEED} or {@link #ACCURACY}
+     * @return sample variance of the channel over the current window
+     */
+    public double getVariance(int channel) {
+        return size > 1 ? squaredDeviations[channel] / (size - 1) : 0;
+    }
+
+    /**
+     * @param channel {@link #ALTITUDE}, {@link #SPEED} or {@link #ACCURACY}
+     * @return mean of the channel over the current window
+     */
+    public double getMean(int channel) {
+        return mean[channel];
+    }
+
+    /**
+     * @param channel {@link #ALTITUDE}, {@link #SPEED} or {@link #ACCURACY}
+     * @return number of consecutive fixes, up to and including the latest, with the same value
+     */
+    public int getRunLength(int channel) {
+        return runLength[channel];
+    }
+
+    /**
+     * Getter
+     * @return score returned for the latest fix
+     */
+    public float getLastScore() {
+        return lastScore;
+    }
+
+    /**
+     * Getter
+     * @return number of fixes fed since creation or the last {@link #reset()}
+     */
+    public long getFixCount() {
+        return fixCount;
+    }
+
+    /**
+     * Getter
+     * @return int
+     */
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * Forgets all fixes, e.g. when location updates restart after a long pause
+     */
+    public void reset() {
+        for (int channel = 0; channel < CHANNELS; channel++) {
+            mean[channel] = 0;
+            squaredDeviations[channel] = 0;
+            lastValue[channel] = 0;
+            runLength[channel] = 0;
+        }
+        size = 0;
+        head = 0;
+        updatesSinceRecompute = 0;
+        fixCount = 0;
+        lastScore = 0f;
+    }
+}
@@ -0,0 +1,43 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Per-package detection rules that only need plain package data, shared by the Android scan
+ * and the benchmarks
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+public final class PackageRules {
+
+    public static final String ACCESS_MOCK_LOCATION = "android.permission.ACCESS_MOCK_LOCATION";
+
+    private PackageRules() {
+    }
+
+    /**
+     * @param requestedPermissions permissions requested by a package, may be null
+     * @param permission           permission to look for
+     * @return true if the permission is requested
+     */
+    public static boolean requestsPermission(String[] requestedPermissions, String permission) {
+        if (requestedPermissions != null)
+            for (String requestedPermission : requestedPermissions)
+                if (permission.equals(requestedPermission)) return true;
+
+        return false;
+    }
+}
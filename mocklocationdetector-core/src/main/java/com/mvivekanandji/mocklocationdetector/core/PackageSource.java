@@ -0,0 +1,87 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import java.util.List;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Installed packages a {@link DetectionScan} applies its rules to, e.g. a snapshot of the
+ * packages known to the PackageManager that is brought up to date before every scan
+ *
+ * @param <P> package type
+ * @author vivekanand
+ * @version 1.0
+ */
+public interface PackageSource<P extends ScannedPackage> {
+
+    /**
+     * Receives the packages of a refresh as they are loaded
+     *
+     * @param <P> package type
+     */
+    interface Listener<P> {
+
+        /**
+         * Called on the refreshing thread, or concurrently if the source loads packages on
+         * several threads
+         *
+         * @param scannedPackage package just loaded
+         * @return true to stop loading packages, see {@link Refresh#isStopped()}
+         */
+        boolean onPackage(P scannedPackage);
+    }
+
+    /**
+     * Packages of the source after a refresh
+     *
+     * @param <P> package type
+     */
+    interface Refresh<P> {
+
+        /**
+         * @return every package, only the ones loaded so far if the refresh was cancelled or
+         * stopped
+         */
+        List<P> getPackages();
+
+        /**
+         * @return true if the refresh was cancelled before every package was loaded
+         */
+        boolean isCancelled();
+
+        /**
+         * @return true if the listener stopped the refresh before every package was loaded
+         */
+        boolean isStopped();
+
+        /**
+         * @return true if every package was loaded, and handed to the listener, by this
+         * refresh. False if only changed packages were reloaded
+         */
+        boolean isFullScan();
+    }
+
+    /**
+     * Brings the packages up to date
+     *
+     * @param cancellation     polled between packages
+     * @param withCertificates true if the packages must carry their certificate digests, only
+     *                         needed when certificate rules exist
+     * @param listener         sees the packages of a full rescan as they are loaded, null for
+     *                         none
+     * @return Refresh
+     */
+    Refresh<P> refresh(Cancellation cancellation, boolean withCertificates, Listener<P> listener);
+}
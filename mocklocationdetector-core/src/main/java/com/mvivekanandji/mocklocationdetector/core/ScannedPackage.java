@@ -0,0 +1,37 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * What the {@link DetectionRule}s need to know about an installed package
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+public interface ScannedPackage {
+
+    String getPackageName();
+
+    /**
+     * @return true if the package requests android.permission.ACCESS_MOCK_LOCATION
+     */
+    boolean requestsMockLocation();
+
+    /**
+     * @return SHA-256 digests of the signing certificates, packed, do not modify. Null if the
+     * package was loaded without certificates
+     */
+    byte[] getCertificateDigests();
+}
@@ -0,0 +1,96 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BatchFixScorerTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    public void parallelScoring_matchesSequentialScoring() {
+        FixColumns fixColumns = new FixColumns(16);
+        Random random = new Random(42);
+
+        for (int track = 0; track < 50; track++)
+            for (int i = 0; i < 1000; i++)
+                fixColumns.add(track, 12.97 + i * 1e-5, 77.59, 900 + random.nextGaussian(),
+                        random.nextFloat() * 2, 5 + random.nextFloat() * 3, i * SECOND,
+                        random.nextInt(100) == 0);
+
+        float[] parallelScores = new float[fixColumns.size()];
+        int[] parallelFlags = new int[fixColumns.size()];
+        new BatchFixScorer(new ForkJoinPool(4)).score(fixColumns, parallelScores, parallelFlags);
+
+        float[] sequentialScores = new float[fixColumns.size()];
+        int[] sequentialFlags = new int[fixColumns.size()];
+        BatchFixScorer.scoreRange(fixColumns, sequentialScores, sequentialFlags, 0, fixColumns.size());
+
+        assertArrayEquals(sequentialScores, parallelScores, 0f);
+        assertArrayEquals(sequentialFlags, parallelFlags);
+    }
+
+    @Test
+    public void longTrackPastTheMiddle_isSplitBeforeIt() {
+        FixColumns fixColumns = new FixColumns();
+        for (int track = 0; track < 10; track++)
+            for (int i = 0; i < 100; i++)
+                fixColumns.add(track, 12.97, 77.59, 900, 1, 5, i * SECOND, false);
+        // one track holding most of the batch, from before the middle to the end
+        for (int i = 0; i < 20_000; i++)
+            fixColumns.add(10, 12.97 + i * 1e-5, 77.59, 900, 1, 5, i * SECOND, false);
+
+        assertEquals(1000, BatchFixScorer.splitPoint(fixColumns, 0, fixColumns.size()));
+        assertEquals(500, BatchFixScorer.splitPoint(fixColumns, 0, 1000));
+        // a single track can not be split, its fixes are scored in order by one task
+        assertEquals(1000, BatchFixScorer.splitPoint(fixColumns, 1000, fixColumns.size()));
+
+        float[] parallelScores = new float[fixColumns.size()];
+        new BatchFixScorer(new ForkJoinPool(4)).score(fixColumns, parallelScores, null);
+        float[] sequentialScores = new float[fixColumns.size()];
+        BatchFixScorer.scoreRange(fixColumns, sequentialScores, null, 0, fixColumns.size());
+        assertArrayEquals(sequentialScores, parallelScores, 0f);
+    }
+
+    @Test
+    public void teleport_isFlagged() {
+        FixColumns fixColumns = new FixColumns()
+                .add(1, 12.9700, 77.59, 900, 1, 5, 0, false)
+                .add(1, 12.9701, 77.59, 901, 1, 6, SECOND, false)
+                .add(1, 28.6100, 77.20, 902, 1, 5, 2 * SECOND, false);
+
+        float[] scores = new float[3];
+        int[] flags = new int[3];
+        new BatchFixScorer().score(fixColumns, scores, flags);
+
+        assertEquals(0, flags[1]);
+        assertTrue((flags[2] & FixScorer.IMPOSSIBLE_SPEED) != 0);
+        assertEquals(1f, scores[2], 0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void trackMixingTimeBases_isRejected() {
+        new FixColumns()
+                .add(1, new Fix().setTime(1000).setElapsedRealtimeNanos(SECOND))
+                .add(2, new Fix().setTime(1000))
+                .add(2, new Fix().setTime(2000).setElapsedRealtimeNanos(2 * SECOND));
+    }
+
+    @Test
+    public void constantSensorValues_areFlagged() {
+        FixScorer fixScorer = new FixScorer();
+        float score = 0;
+
+        for (int i = 0; i < LocationPlausibilityAnalyzer.DEFAULT_WINDOW_SIZE; i++)
+            score = fixScorer.score(12.97 + i * 1e-4, 77.59, 0, 0, 10, i * SECOND, false);
+
+        assertEquals(1f, score, 0f);
+        assertTrue((fixScorer.getLastFlags() & FixScorer.CONSTANT_SENSORS) != 0);
+    }
+}
@@ -0,0 +1,153 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BlacklistIndexTest {
+
+    private static final BlacklistIndex INDEX = new BlacklistIndex.Builder()
+            .addAll(Arrays.asList(
+                    "# comment",
+                    "",
+                    "com.lexa.fakegps",
+                    "com.incorporateapps.fakegps.fre",
+                    "com.edugorilla.*",
+                    "*.fakegps",
+                    "com.*.mocklocation",
+                    "org.mock*.*"))
+            .build();
+
+    @Test
+    public void exactRules_matchOnlyTheWholeName() {
+        assertTrue(INDEX.contains("com.lexa.fakegps"));
+        assertFalse(INDEX.contains("com.lexa.fakegps2"));
+        assertFalse(INDEX.contains("com.lexa.fake"));
+        assertFalse(INDEX.contains("com.lexa"));
+        assertFalse(INDEX.contains(null));
+    }
+
+    @Test
+    public void prefixRules_matchPackagesBelowThePrefix() {
+        assertTrue(INDEX.contains("com.edugorilla.app"));
+        assertTrue(INDEX.contains("com.edugorilla.app.testseries"));
+        assertFalse(INDEX.contains("com.edugorilla"));
+        assertFalse(INDEX.contains("com.edugorillas.app"));
+    }
+
+    @Test
+    public void wildcard_matchesExactlyOneSegment() {
+        assertTrue(INDEX.contains("lexa.fakegps"));
+        assertFalse(INDEX.contains("fakegps"));
+        assertFalse(INDEX.contains("com.lexa2.fakegps"));
+        assertFalse(INDEX.contains("lexa.fakegps.pro"));
+
+        assertTrue(INDEX.contains("com.example.mocklocation"));
+        assertFalse(INDEX.contains("com.example.sub.mocklocation"));
+        assertFalse(INDEX.contains("com.mocklocation"));
+    }
+
+    @Test
+    public void trailingWildcardSegment_matchesOneOrMoreSegments() {
+        assertTrue(INDEX.contains("org.mockgps.app"));
+        assertTrue(INDEX.contains("org.mock.app.pro"));
+        assertFalse(INDEX.contains("org.mockgps"));
+        assertFalse(INDEX.contains("org.fake.app"));
+    }
+
+    @Test
+    public void binarySearch_findsTheFirstAndLastEntries() {
+        BlacklistIndex index = new BlacklistIndex.Builder()
+                .addAll(Arrays.asList("b.one", "c.two", "d.three", "e.four", "f.five"))
+                .build();
+
+        assertTrue(index.contains("b.one"));
+        assertTrue(index.contains("f.five"));
+        assertTrue(index.contains("d.three"));
+        // before the first and after the last entry
+        assertFalse(index.contains("a.zero"));
+        assertFalse(index.contains("b"));
+        assertFalse(index.contains("g.six"));
+        assertFalse(index.contains("f.fivex"));
+        assertFalse(BlacklistIndex.EMPTY.contains("b.one"));
+    }
+
+    @Test
+    public void readOfWrittenIndex_keepsEveryRule() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        INDEX.writeTo(outputStream);
+        BlacklistIndex read = BlacklistIndex.read(ByteBuffer.wrap(outputStream.toByteArray()));
+
+        assertEquals(INDEX.getRules(), read.getRules());
+        assertEquals(6, read.size());
+        assertTrue(read.contains("com.lexa.fakegps"));
+        assertTrue(read.contains("com.edugorilla.app"));
+        assertTrue(read.contains("lexa.fakegps"));
+        assertFalse(read.contains("com.lexa"));
+    }
+
+    @Test(expected = IOException.class)
+    public void unsupportedFormatVersion_isRejected() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer.putInt(BlacklistIndex.MAGIC).putInt(BlacklistIndex.FORMAT_VERSION + 1);
+        buffer.rewind();
+
+        BlacklistIndex.read(buffer);
+    }
+
+    @Test
+    public void negativeOrHugeCounts_areRejectedBeforeAllocating() {
+        assertCorrupt(header(-1, 0, 0, 0, 0));
+        assertCorrupt(header(Integer.MAX_VALUE, 0, 0, 0, 0));
+        assertCorrupt(header(0, -1, 0, 0, 0));
+        assertCorrupt(header(0, Integer.MAX_VALUE, 0, 0, 0));
+        assertCorrupt(header(0, 0, 0, 0, -1));
+        assertCorrupt(header(0, 0, 0, 0, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void decreasingOffsets_areRejected() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new BlacklistIndex.Builder()
+                .addAll(Arrays.asList("a.one", "b.two", "c.three"))
+                .build()
+                .writeTo(outputStream);
+        ByteBuffer buffer = ByteBuffer.wrap(outputStream.toByteArray());
+
+        // second exact offset, after the seven header ints and the first offset
+        buffer.putInt(8 * 4, 100);
+        assertCorrupt(buffer);
+        buffer.putInt(8 * 4, -1);
+        assertCorrupt(buffer);
+    }
+
+    private static ByteBuffer header(int exactCount, int exactDataLength, int prefixCount,
+                                     int prefixDataLength, int wildcardCount) {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.putInt(BlacklistIndex.MAGIC).putInt(BlacklistIndex.FORMAT_VERSION)
+                .putInt(exactCount).putInt(exactDataLength)
+                .putInt(prefixCount).putInt(prefixDataLength)
+                .putInt(wildcardCount)
+                // offsets of empty sections
+                .putInt(0).putInt(0);
+        return buffer;
+    }
+
+    private static void assertCorrupt(ByteBuffer buffer) {
+        buffer.rewind();
+        try {
+            BlacklistIndex.read(buffer);
+            fail("corrupt index was read");
+        } catch (IOException expected) {
+            // rejected
+        }
+    }
+}
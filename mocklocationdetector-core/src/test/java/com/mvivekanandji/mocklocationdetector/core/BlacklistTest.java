@@ -0,0 +1,162 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Lazy loading of the {@link Blacklist} racing updates of it
+ */
+public class BlacklistTest {
+
+    private static final String BUNDLED_RULE = "com.bundled.fakegps";
+    private static final String FILE_PATH = "/sdcard/blacklist.txt";
+    private static final String FILE_RULE = "com.file.fakegps";
+
+    private final Blacklist blacklist = new Blacklist();
+
+    @Test
+    public void load_isOneVersion() {
+        CountingLoader loader = new CountingLoader();
+
+        BlacklistSnapshot loaded = blacklist.getLoaded(loader);
+
+        assertTrue(loaded.isLoaded());
+        assertEquals(BlacklistSnapshot.INITIAL.getVersion() + 1, loaded.getVersion());
+        assertTrue(loaded.contains(BUNDLED_RULE));
+        assertSame(loaded, blacklist.getLoaded(loader));
+        assertEquals(1, loader.fileLoads.get());
+        assertEquals(1, loader.certificateLoads.get());
+        assertEquals(1, loader.loads.get());
+    }
+
+    @Test
+    public void ruleAddedDuringTheLoad_isKept() {
+        CountingLoader loader = new CountingLoader() {
+            @Override
+            public BlacklistIndex loadFileIndex(String filePath) {
+                if (fileLoads.get() == 0) addRule("com.user.fakegps");
+                return super.loadFileIndex(filePath);
+            }
+        };
+
+        BlacklistSnapshot loaded = blacklist.getLoaded(loader);
+
+        assertSame(blacklist.get(), loaded);
+        assertTrue(loaded.contains("com.user.fakegps"));
+        assertTrue(loaded.contains(BUNDLED_RULE));
+        assertEquals(2, loaded.getVersion());
+        // the file path did not change, the index loaded before the retry is reused
+        assertEquals(1, loader.fileLoads.get());
+    }
+
+    @Test
+    public void filePathSetDuringTheLoad_loadsTheNewFile() {
+        CountingLoader loader = new CountingLoader() {
+            @Override
+            public BlacklistIndex loadFileIndex(String filePath) {
+                if (fileLoads.get() == 0) blacklist.setFilePath(FILE_PATH);
+                return super.loadFileIndex(filePath);
+            }
+        };
+
+        BlacklistSnapshot loaded = blacklist.getLoaded(loader);
+
+        assertEquals(FILE_PATH, loaded.getFilePath());
+        assertTrue(loaded.contains(FILE_RULE));
+        assertFalse(loaded.contains(BUNDLED_RULE));
+        assertEquals(2, loader.fileLoads.get());
+        assertEquals(1, loader.certificateLoads.get());
+    }
+
+    @Test
+    public void concurrentAdds_areNotLostToConcurrentLoads() throws Exception {
+        final int writers = 4;
+        final int rulesPerWriter = 200;
+        ExecutorService executorService = Executors.newFixedThreadPool(writers + 2);
+        final CountDownLatch start = new CountDownLatch(1);
+
+        for (int writer = 0; writer < writers; writer++) {
+            final int id = writer;
+            executorService.execute(new Runnable() {
+                @Override
+                public void run() {
+                    await(start);
+                    for (int i = 0; i < rulesPerWriter; i++) {
+                        addRule("com.writer" + id + ".app" + i);
+                        // forces another lazy load, like setBlackListAppsFilePath(null)
+                        if (i % 50 == 0) blacklist.setFilePath(null);
+                    }
+                }
+            });
+        }
+        for (int reader = 0; reader < 2; reader++) {
+            executorService.execute(new Runnable() {
+                @Override
+                public void run() {
+                    await(start);
+                    for (int i = 0; i < writers * rulesPerWriter; i++)
+                        blacklist.getLoaded(new CountingLoader());
+                }
+            });
+        }
+
+        start.countDown();
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(30, TimeUnit.SECONDS));
+
+        BlacklistSnapshot loaded = blacklist.getLoaded(new CountingLoader());
+        assertEquals(writers * rulesPerWriter, loaded.getUserIndex().size());
+        for (int writer = 0; writer < writers; writer++)
+            for (int i = 0; i < rulesPerWriter; i++)
+                assertTrue(loaded.contains("com.writer" + writer + ".app" + i));
+        assertTrue(loaded.contains(BUNDLED_RULE));
+    }
+
+    private void addRule(String rule) {
+        blacklist.addRules(Collections.singletonList(rule));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class CountingLoader implements BlacklistSnapshot.Loader {
+        final AtomicInteger fileLoads = new AtomicInteger();
+        final AtomicInteger certificateLoads = new AtomicInteger();
+        final AtomicInteger loads = new AtomicInteger();
+
+        @Override
+        public BlacklistIndex loadFileIndex(String filePath) {
+            fileLoads.incrementAndGet();
+            return new BlacklistIndex.Builder()
+                    .addAll(Collections.singletonList(filePath == null ? BUNDLED_RULE : FILE_RULE))
+                    .build();
+        }
+
+        @Override
+        public CertificateDigestIndex loadBundledCertificateIndex() {
+            certificateLoads.incrementAndGet();
+            return CertificateDigestIndex.EMPTY;
+        }
+
+        @Override
+        public void onLoaded(BlacklistSnapshot loaded, long loadTimeNanos) {
+            loads.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CertificateDigestIndexTest {
+
+    private static final byte[] MOCK_CERTIFICATE = "mock app certificate".getBytes();
+    private static final byte[] OTHER_CERTIFICATE = "other certificate".getBytes();
+
+    @Test
+    public void digestsWithColonsAndUpperCase_matchRawDigests() {
+        byte[] digest = CertificateDigestIndex.sha256(MOCK_CERTIFICATE);
+        StringBuilder apksignerStyle = new StringBuilder();
+        for (byte b : digest) {
+            if (apksignerStyle.length() > 0) apksignerStyle.append(':');
+            apksignerStyle.append(String.format("%02X", b & 0xff));
+        }
+
+        CertificateDigestIndex index = new CertificateDigestIndex.Builder()
+                .addAll(Arrays.asList("# comment", "", apksignerStyle.toString()))
+                .build();
+
+        assertEquals(1, index.size());
+        assertTrue(index.contains(digest));
+        assertFalse(index.contains(CertificateDigestIndex.sha256(OTHER_CERTIFICATE)));
+    }
+
+    @Test
+    public void containsAny_checksEveryPackedDigest() {
+        byte[] mockDigest = CertificateDigestIndex.sha256(MOCK_CERTIFICATE);
+        byte[] otherDigest = CertificateDigestIndex.sha256(OTHER_CERTIFICATE);
+        CertificateDigestIndex index = new CertificateDigestIndex.Builder().add(mockDigest).build();
+
+        byte[] packed = new byte[2 * CertificateDigestIndex.DIGEST_LENGTH];
+        System.arraycopy(otherDigest, 0, packed, 0, CertificateDigestIndex.DIGEST_LENGTH);
+        System.arraycopy(mockDigest, 0, packed, CertificateDigestIndex.DIGEST_LENGTH,
+                CertificateDigestIndex.DIGEST_LENGTH);
+
+        assertTrue(index.containsAny(packed));
+        assertFalse(index.containsAny(otherDigest));
+        assertFalse(index.containsAny(new byte[0]));
+    }
+
+    @Test
+    public void writtenIndex_readsBack() throws Exception {
+        CertificateDigestIndex.Builder builder = new CertificateDigestIndex.Builder();
+        for (int i = 0; i < 100; i++)
+            builder.add(CertificateDigestIndex.sha256(new byte[]{(byte) i}));
+        CertificateDigestIndex index = builder.build();
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        index.writeTo(outputStream);
+        CertificateDigestIndex read = CertificateDigestIndex.read(
+                ByteBuffer.wrap(outputStream.toByteArray()));
+
+        assertEquals(index.getDigests(), read.getDigests());
+        for (int i = 0; i < 100; i++)
+            assertTrue(read.contains(CertificateDigestIndex.sha256(new byte[]{(byte) i})));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedDigest_isRejected() {
+        new CertificateDigestIndex.Builder().add("ab:cd:ef");
+    }
+
+    @Test(expected = IOException.class)
+    public void countBeyondTheData_isRejectedBeforeAllocating() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(12 + CertificateDigestIndex.DIGEST_LENGTH);
+        buffer.putInt(CertificateDigestIndex.MAGIC)
+                .putInt(CertificateDigestIndex.FORMAT_VERSION)
+                .putInt(Integer.MAX_VALUE);
+        buffer.rewind();
+
+        CertificateDigestIndex.read(buffer);
+    }
+}
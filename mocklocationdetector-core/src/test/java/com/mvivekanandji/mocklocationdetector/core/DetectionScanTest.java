@@ -0,0 +1,344 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Rules applied by {@link DetectionScan} to the packages of a fake {@link PackageSource}
+ */
+public class DetectionScanTest {
+
+    private static final String KNOWN_MOCK_APP = "com.known.fakegps";
+    private static final String CERTIFICATE_DIGEST =
+            "0102030405060708091011121314151617181920212223242526272829303132";
+
+    private final Blacklist blacklist = new Blacklist();
+
+    private final FakePackage permission = new FakePackage("com.example.permission", true);
+    private final FakePackage known = new FakePackage(KNOWN_MOCK_APP, false);
+    private final FakePackage both = new FakePackage(KNOWN_MOCK_APP + ".pro", true);
+    private final FakePackage clean = new FakePackage("com.example.clean", false);
+
+    @Test
+    public void scan_appliesEveryRuleToEveryPackage() {
+        FakePackageSource source = new FakePackageSource(true, permission, known, clean, both);
+
+        DetectionScan.Result<FakePackage> result =
+                scan(EnumSet.allOf(DetectionRule.class)).run(source, Cancellation.NONE);
+
+        assertEquals(3, result.getMatches().size());
+        assertMatch(result.getMatches().get(0), permission, DetectionRule.MOCK_LOCATION_PERMISSION);
+        assertMatch(result.getMatches().get(1), known, DetectionRule.KNOWN_MOCK_APP);
+        assertMatch(result.getMatches().get(2), both,
+                DetectionRule.MOCK_LOCATION_PERMISSION, DetectionRule.KNOWN_MOCK_APP);
+        assertEquals(4, result.getPackageCount());
+        assertEquals(4, result.getPackagesExamined());
+        assertTrue(result.isComplete());
+        assertEquals(blacklist.get().getVersion(), result.getBlacklistVersion());
+    }
+
+    @Test
+    public void blacklist_isOnlyLoadedForKnownMockApp() {
+        FakePackageSource source = new FakePackageSource(true, known);
+
+        scan(EnumSet.of(DetectionRule.MOCK_LOCATION_PERMISSION)).run(source, Cancellation.NONE);
+        assertFalse(blacklist.get().isLoaded());
+
+        assertEquals(1, scan(EnumSet.of(DetectionRule.KNOWN_MOCK_APP))
+                .run(source, Cancellation.NONE).getMatches().size());
+        assertTrue(blacklist.get().isLoaded());
+    }
+
+    @Test
+    public void certificates_areOnlyRequestedWhenCertificateRulesExist() {
+        FakePackage signed = new FakePackage("com.example.signed", false, digest());
+        FakePackageSource source = new FakePackageSource(true, signed);
+
+        DetectionScan.Result<FakePackage> result =
+                scan(EnumSet.of(DetectionRule.KNOWN_MOCK_APP)).run(source, Cancellation.NONE);
+        assertFalse(source.withCertificates);
+        assertTrue(result.getMatches().isEmpty());
+
+        blacklist.addCertificateDigests(Collections.singletonList(CERTIFICATE_DIGEST));
+        result = scan(EnumSet.of(DetectionRule.KNOWN_MOCK_APP)).run(source, Cancellation.NONE);
+        assertTrue(source.withCertificates);
+        assertMatch(result.getMatches().get(0), signed, DetectionRule.KNOWN_MOCK_APP);
+    }
+
+    @Test
+    public void cancelledScan_returnsWhatItFoundSoFar() {
+        FakePackageSource source = new FakePackageSource(false, permission, clean, both);
+
+        DetectionScan.Result<FakePackage> result = scan(EnumSet.allOf(DetectionRule.class))
+                .run(source, cancelledAfter(2));
+
+        assertFalse(result.isComplete());
+        assertEquals(3, result.getPackageCount());
+        assertEquals(2, result.getPackagesExamined());
+        assertEquals(1, result.getMatches().size());
+    }
+
+    @Test
+    public void partialResult_holdsWhatTheRunningScanFoundSoFar() {
+        FakePackageSource source = new FakePackageSource(false, permission, clean, both);
+        final DetectionScan<FakePackage> detectionScan = scan(EnumSet.allOf(DetectionRule.class));
+        final List<DetectionScan.Result<FakePackage>> partialResults = new ArrayList<>();
+
+        DetectionScan.Result<FakePackage> result = detectionScan.run(source, new Cancellation() {
+            private int polls;
+
+            @Override
+            public boolean isCancelled() {
+                // before the third package
+                if (++polls == 3) partialResults.add(detectionScan.getPartialResult());
+                return false;
+            }
+        });
+
+        DetectionScan.Result<FakePackage> partialResult = partialResults.get(0);
+        assertFalse(partialResult.isComplete());
+        assertEquals(2, partialResult.getPackagesExamined());
+        assertEquals(1, partialResult.getMatches().size());
+        assertMatch(partialResult.getMatches().get(0), permission,
+                DetectionRule.MOCK_LOCATION_PERMISSION);
+        assertEquals(result.getBlacklistVersion(), partialResult.getBlacklistVersion());
+        assertTrue(result.isComplete());
+        assertEquals(2, result.getMatches().size());
+    }
+
+    @Test
+    public void matchListener_receivesTheMatchesInsteadOfTheResult() {
+        FakePackageSource source = new FakePackageSource(true, permission, clean, both);
+        final List<FakePackage> matched = new ArrayList<>();
+
+        DetectionScan.Result<FakePackage> result = scan(EnumSet.allOf(DetectionRule.class))
+                .setMatchListener(new DetectionScan.MatchListener<FakePackage>() {
+                    @Override
+                    public void onMatch(FakePackage scannedPackage,
+                                        Set<DetectionRule> matchedRules) {
+                        matched.add(scannedPackage);
+                    }
+                })
+                .run(source, Cancellation.NONE);
+
+        assertEquals(Arrays.asList(permission, both), matched);
+        assertTrue(result.getMatches().isEmpty());
+        assertEquals(3, result.getPackagesExamined());
+    }
+
+    @Test
+    public void matchListener_receivesEachMatchBeforeTheNextPackageIsLoaded() {
+        final FakePackageSource source = new FakePackageSource(true, permission, clean, both);
+        final List<Integer> loadedAtMatch = new ArrayList<>();
+
+        scan(EnumSet.allOf(DetectionRule.class))
+                .setMatchListener(new DetectionScan.MatchListener<FakePackage>() {
+                    @Override
+                    public void onMatch(FakePackage scannedPackage,
+                                        Set<DetectionRule> matchedRules) {
+                        loadedAtMatch.add(source.loaded);
+                    }
+                })
+                .run(source, Cancellation.NONE);
+
+        assertEquals(Arrays.asList(1, 3), loadedAtMatch);
+    }
+
+    @Test
+    public void findAny_stopsLoadingAtTheFirstMatch() {
+        FakePackageSource source = new FakePackageSource(true, clean, known, permission, both);
+
+        DetectionScan.Result<FakePackage> result = scan(EnumSet.of(DetectionRule.KNOWN_MOCK_APP))
+                .setStopAtFirstMatch(true)
+                .run(source, Cancellation.NONE);
+
+        assertEquals(2, source.loaded);
+        assertMatch(result.getMatches().get(0), known, DetectionRule.KNOWN_MOCK_APP);
+        assertEquals(2, result.getPackageCount());
+        assertTrue(result.isComplete());
+    }
+
+    @Test
+    public void findAny_matchesPackagesAlreadyKnownInMemory() {
+        FakePackageSource source = new FakePackageSource(false, clean, permission, known, both);
+
+        DetectionScan.Result<FakePackage> result =
+                scan(EnumSet.of(DetectionRule.MOCK_LOCATION_PERMISSION))
+                        .setStopAtFirstMatch(true)
+                        .run(source, Cancellation.NONE);
+
+        assertMatch(result.getMatches().get(0), permission,
+                DetectionRule.MOCK_LOCATION_PERMISSION);
+        assertEquals(4, result.getPackageCount());
+        assertEquals(2, result.getPackagesExamined());
+        assertTrue(result.isComplete());
+    }
+
+    @Test
+    public void findAnyWithoutMatch_isCompleteOnlyIfEveryPackageWasExamined() {
+        FakePackageSource source = new FakePackageSource(false, clean, known);
+        DetectionScan<FakePackage> detectionScan =
+                scan(EnumSet.of(DetectionRule.MOCK_LOCATION_PERMISSION)).setStopAtFirstMatch(true);
+
+        assertTrue(detectionScan.run(source, Cancellation.NONE).isComplete());
+        assertFalse(detectionScan.run(source, cancelledAfter(1)).isComplete());
+    }
+
+    private DetectionScan<FakePackage> scan(Set<DetectionRule> rules) {
+        return new DetectionScan<>(rules, blacklist, new BlacklistSnapshot.Loader() {
+            @Override
+            public BlacklistIndex loadFileIndex(String filePath) {
+                return new BlacklistIndex.Builder()
+                        .addAll(Arrays.asList(KNOWN_MOCK_APP, KNOWN_MOCK_APP + ".pro"))
+                        .build();
+            }
+
+            @Override
+            public CertificateDigestIndex loadBundledCertificateIndex() {
+                return CertificateDigestIndex.EMPTY;
+            }
+
+            @Override
+            public void onLoaded(BlacklistSnapshot loaded, long loadTimeNanos) {
+            }
+        });
+    }
+
+    private static void assertMatch(DetectionScan.Match<FakePackage> match, FakePackage expected,
+                                    DetectionRule... rules) {
+        assertEquals(expected, match.getPackage());
+        assertEquals(EnumSet.copyOf(Arrays.asList(rules)), match.getMatchedRules());
+    }
+
+    private static byte[] digest() {
+        byte[] digest = new byte[CertificateDigestIndex.DIGEST_LENGTH];
+        for (int i = 0; i < digest.length; i++)
+            digest[i] = (byte) Integer.parseInt(CERTIFICATE_DIGEST.substring(i * 2, i * 2 + 2), 16);
+        return digest;
+    }
+
+    /**
+     * @return Cancellation that is cancelled from its (calls + 1)th poll on
+     */
+    private static Cancellation cancelledAfter(final int calls) {
+        return new Cancellation() {
+            private int polls;
+
+            @Override
+            public boolean isCancelled() {
+                return polls++ >= calls;
+            }
+        };
+    }
+
+    private static final class FakePackage implements ScannedPackage {
+        private final String packageName;
+        private final boolean requestsMockLocation;
+        private final byte[] certificateDigests;
+
+        FakePackage(String packageName, boolean requestsMockLocation) {
+            this(packageName, requestsMockLocation, null);
+        }
+
+        FakePackage(String packageName, boolean requestsMockLocation, byte[] certificateDigests) {
+            this.packageName = packageName;
+            this.requestsMockLocation = requestsMockLocation;
+            this.certificateDigests = certificateDigests;
+        }
+
+        @Override
+        public String getPackageName() {
+            return packageName;
+        }
+
+        @Override
+        public boolean requestsMockLocation() {
+            return requestsMockLocation;
+        }
+
+        @Override
+        public byte[] getCertificateDigests() {
+            return certificateDigests;
+        }
+    }
+
+    /**
+     * Loads its packages one at a time on a full scan, or returns them as already known
+     */
+    private static final class FakePackageSource implements PackageSource<FakePackage> {
+        private final boolean fullScan;
+        private final List<FakePackage> packages;
+        private boolean withCertificates;
+        private int loaded;
+
+        FakePackageSource(boolean fullScan, FakePackage... packages) {
+            this.fullScan = fullScan;
+            this.packages = Arrays.asList(packages);
+        }
+
+        @Override
+        public Refresh<FakePackage> refresh(Cancellation cancellation,
+                                            boolean withCertificates,
+                                            Listener<FakePackage> listener) {
+            this.withCertificates = withCertificates;
+            if (!fullScan) return new FakeRefresh(packages, false, false, false);
+
+            List<FakePackage> loadedPackages = new ArrayList<>();
+            for (FakePackage fakePackage : packages) {
+                if (cancellation.isCancelled())
+                    return new FakeRefresh(loadedPackages, true, true, false);
+
+                loaded++;
+                loadedPackages.add(fakePackage);
+                if (listener != null && listener.onPackage(fakePackage))
+                    return new FakeRefresh(loadedPackages, true, false, true);
+            }
+            return new FakeRefresh(loadedPackages, true, false, false);
+        }
+    }
+
+    private static final class FakeRefresh implements PackageSource.Refresh<FakePackage> {
+        private final List<FakePackage> packages;
+        private final boolean fullScan;
+        private final boolean cancelled;
+        private final boolean stopped;
+
+        FakeRefresh(List<FakePackage> packages, boolean fullScan, boolean cancelled,
+                    boolean stopped) {
+            this.packages = packages;
+            this.fullScan = fullScan;
+            this.cancelled = cancelled;
+            this.stopped = stopped;
+        }
+
+        @Override
+        public List<FakePackage> getPackages() {
+            return packages;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isStopped() {
+            return stopped;
+        }
+
+        @Override
+        public boolean isFullScan() {
+            return fullScan;
+        }
+    }
+}
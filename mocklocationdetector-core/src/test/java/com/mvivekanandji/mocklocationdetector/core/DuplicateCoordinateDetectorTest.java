@@ -0,0 +1,120 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DuplicateCoordinateDetectorTest {
+
+    private static final int RING_LATITUDE = DuplicateCoordinateDetector.cellOf(28.6139, 10000);
+    private static final int RING_LONGITUDE = DuplicateCoordinateDetector.cellOf(77.2090, 10000);
+    private static final long RING_BUCKET = 1556704800000L / 60000;
+
+    @Test
+    public void repeatsOfADevice_areCountedOnce() {
+        DuplicateCoordinateDetector detector = new DuplicateCoordinateDetector();
+
+        assertTrue(detector.add(1, RING_LATITUDE, RING_LONGITUDE, RING_BUCKET));
+        assertFalse(detector.add(1, RING_LATITUDE, RING_LONGITUDE, RING_BUCKET));
+        assertTrue(detector.add(1, RING_LATITUDE, RING_LONGITUDE, RING_BUCKET + 1));
+
+        assertEquals(2, detector.getRecords());
+        assertEquals(1, detector.estimateDevices(RING_LATITUDE, RING_LONGITUDE, RING_BUCKET));
+    }
+
+    @Test
+    public void ringCoordinate_isFlaggedAmongHonestTraffic() {
+        DuplicateCoordinateDetector detector = new DuplicateCoordinateDetector();
+        addTraffic(detector, 0, 100000, new Random(42));
+
+        List<DuplicateCoordinateDetector.Hotspot> hotspots = detector.getHotspots(20);
+
+        assertEquals(1, hotspots.size());
+        assertEquals(RING_LATITUDE, hotspots.get(0).getLatitudeCell());
+        assertEquals(RING_LONGITUDE, hotspots.get(0).getLongitudeCell());
+        assertEquals(RING_BUCKET, hotspots.get(0).getTimeBucket());
+        assertTrue(hotspots.get(0).getDevices() >= 25);
+    }
+
+    @Test
+    public void mergedShards_countDevicesOfBoth() throws IOException {
+        DuplicateCoordinateDetector first = new DuplicateCoordinateDetector();
+        DuplicateCoordinateDetector second = new DuplicateCoordinateDetector();
+        Random random = new Random(7);
+        // devices 0-24 of the ring reach the first shard, 25-49 the second
+        addTraffic(first, 0, 50000, random);
+        addTraffic(second, 25, 50000, random);
+
+        assertTrue(first.getHotspots(30).isEmpty());
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        second.writeTo(outputStream);
+        first.merge(DuplicateCoordinateDetector.read(ByteBuffer.wrap(outputStream.toByteArray())));
+
+        List<DuplicateCoordinateDetector.Hotspot> hotspots = first.getHotspots(30);
+        assertEquals(1, hotspots.size());
+        assertTrue(hotspots.get(0).getDevices() >= 50);
+        assertEquals(100050, first.getRecords(), 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void merge_ofDifferentDimensions_isRejected() {
+        new DuplicateCoordinateDetector().merge(new DuplicateCoordinateDetector(1 << 10, 4, 1 << 12, 64));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void overflowingDimensions_areRejected() {
+        new DuplicateCoordinateDetector(1 << 30, 4, 1 << 12, 64);
+    }
+
+    @Test
+    public void corruptDimensions_areRejectedBeforeAllocating() {
+        assertCorrupt(header(1 << 30, 2, 1 << 12, 64));
+        assertCorrupt(header(1 << 30, 4, 1 << 12, 64));
+        assertCorrupt(header(1 << 20, 1 << 10, 1 << 12, 64));
+        assertCorrupt(header(1 << 10, 4, 1 << 30, 64));
+        assertCorrupt(header(1 << 10, 4, 1 << 12, 1 << 28));
+        assertCorrupt(header(-(1 << 10), 4, 1 << 12, 64));
+    }
+
+    private static ByteBuffer header(int width, int depth, int dedupeBits, int hotspotCapacity) {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        buffer.putInt(DuplicateCoordinateDetector.MAGIC)
+                .putInt(DuplicateCoordinateDetector.FORMAT_VERSION)
+                .putInt(width).putInt(depth).putInt(dedupeBits).putInt(hotspotCapacity);
+        buffer.rewind();
+        return buffer;
+    }
+
+    private static void assertCorrupt(ByteBuffer buffer) {
+        try {
+            DuplicateCoordinateDetector.read(buffer);
+            fail("corrupt detector was read");
+        } catch (IOException expected) {
+            // rejected
+        }
+    }
+
+    /**
+     * Honest devices at random cells around the city, plus 25 ring devices from firstRingDevice
+     * reporting the same cell in the same minute
+     */
+    private static void addTraffic(DuplicateCoordinateDetector detector, int firstRingDevice,
+                                   int honestFixes, Random random) {
+        for (int i = 0; i < honestFixes; i++)
+            detector.add(1000 + random.nextInt(5000), RING_LATITUDE + random.nextInt(2000) - 1000,
+                    RING_LONGITUDE + random.nextInt(2000) - 1000, RING_BUCKET + random.nextInt(60));
+
+        for (int device = firstRingDevice; device < firstRingDevice + 25; device++)
+            detector.add(device, RING_LATITUDE, RING_LONGITUDE, RING_BUCKET);
+    }
+}
@@ -0,0 +1,33 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+
+    @Test
+    public void percentiles_areWithinTwiceTheTrueValue() {
+        Histogram histogram = new Histogram();
+        for (long value = 1; value <= 1000; value++) histogram.record(value);
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(500.5, histogram.getMean(), 1e-9);
+
+        long p50 = histogram.getPercentile(50);
+        assertTrue(p50 >= 500 && p50 < 1000);
+        assertEquals(1000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void zeroAndNegativeValues_fallInFirstBucket() {
+        Histogram histogram = new Histogram();
+        histogram.record(0);
+        histogram.record(-5);
+
+        assertEquals(2, histogram.getBucketCount(0));
+        assertEquals(0, histogram.getPercentile(99));
+    }
+}
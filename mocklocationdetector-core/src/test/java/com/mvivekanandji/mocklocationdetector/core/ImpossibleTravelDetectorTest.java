@@ -0,0 +1,115 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ImpossibleTravelDetectorTest {
+
+    private static final long SECOND = 1_000_000_000L;
+    private static final long UTC = 1_560_000_000_000L;
+
+    /**
+     * Meters per degree of latitude
+     */
+    private static final double DEGREE = 111_195;
+
+    @Test
+    public void walking_isPlausibleWithoutExactDistances() {
+        ImpossibleTravelDetector detector = new ImpossibleTravelDetector();
+
+        for (int i = 0; i < 100; i++)
+            assertEquals(0, detector.addFix(12.97 + i * 1.5 / DEGREE, 77.59, i * SECOND, 0));
+
+        assertEquals(1.5, detector.getLastSpeed(), 0.05);
+        assertEquals(0, detector.getExactDistanceCount());
+    }
+
+    @Test
+    public void teleport_isFlaggedUsingTheExactDistance() {
+        ImpossibleTravelDetector detector = new ImpossibleTravelDetector();
+
+        assertEquals(0, detector.addFix(12.9700, 77.59, 0, 5));
+        assertEquals(0, detector.addFix(12.9701, 77.59, SECOND, 5));
+        int flags = detector.addFix(28.61, 77.20, 2 * SECOND, 5);
+
+        assertEquals(ImpossibleTravelDetector.SPEED_VIOLATION,
+                flags & ImpossibleTravelDetector.SPEED_VIOLATION);
+        assertEquals(1, detector.getExactDistanceCount());
+        double exact = ImpossibleTravelDetector.haversineDistance(12.9701, 77.59, 28.61, 77.20);
+        assertEquals(exact - 10, detector.getLastSpeed(), 1e-6);
+    }
+
+    @Test
+    public void speedCloseToTheLimit_isCheckedWithTheExactDistance() {
+        ImpossibleTravelDetector detector = new ImpossibleTravelDetector();
+
+        detector.addFix(12.97, 77.59, 0, 0);
+        assertEquals(0, detector.addFix(12.97 + 95 / DEGREE, 77.59, SECOND, 0));
+
+        assertEquals(1, detector.getExactDistanceCount());
+        assertEquals(95, detector.getLastSpeed(), 0.5);
+    }
+
+    @Test
+    public void equalTimestamp_isADuplicateNotAReversal() {
+        ImpossibleTravelDetector detector = new ImpossibleTravelDetector();
+
+        detector.addFix(12.97, 77.59, 0, 5);
+        detector.addFix(12.97 + 10 / DEGREE, 77.59, SECOND, 5);
+        // the same fix reported twice, e.g. by the GP and GN talkers of one receiver
+        assertEquals(0, detector.addFix(12.97 + 12 / DEGREE, 77.59, SECOND, 5));
+        // somewhere else at the same instant
+        assertEquals(ImpossibleTravelDetector.SPEED_VIOLATION,
+                detector.addFix(13.07, 77.59, SECOND, 5));
+
+        // the duplicates did not replace the previous fix
+        assertEquals(0, detector.addFix(12.97 + 25 / DEGREE, 77.59, 2 * SECOND, 0));
+        assertEquals(10, detector.getLastSpeed(), 0.1);
+    }
+
+    @Test
+    public void olderFix_isATimeReversal() {
+        ImpossibleTravelDetector detector = new ImpossibleTravelDetector();
+
+        detector.addFix(12.97, 77.59, 10 * SECOND, 0);
+        assertEquals(ImpossibleTravelDetector.TIME_REVERSAL,
+                detector.addFix(12.97, 77.59, 9 * SECOND, 0));
+
+        // the next fix is measured from the last fix in order
+        assertEquals(0, detector.addFix(12.97 + 10 / DEGREE, 77.59, 11 * SECOND, 0));
+        assertEquals(10, detector.getLastSpeed(), 0.1);
+    }
+
+    @Test
+    public void trackWithoutElapsedRealtime_usesUtcTimeForEveryFix() {
+        ImpossibleTravelDetector detector = new ImpossibleTravelDetector();
+
+        assertEquals(0, detector.addFix(new Fix().setLatitude(12.97).setLongitude(77.59)
+                .setTime(UTC)));
+        // a later fix reporting elapsed realtime is still timed by its UTC time
+        assertEquals(0, detector.addFix(new Fix().setLatitude(12.97 + 10 / DEGREE)
+                .setLongitude(77.59).setTime(UTC + 1000).setElapsedRealtimeNanos(5 * SECOND)));
+        assertEquals(10, detector.getLastSpeed(), 0.1);
+    }
+
+    @Test
+    public void fixWithoutElapsedRealtime_switchesTheTrackToUtcTime() {
+        ImpossibleTravelDetector detector = new ImpossibleTravelDetector();
+
+        detector.addFix(new Fix().setLatitude(12.97).setLongitude(77.59)
+                .setTime(UTC).setElapsedRealtimeNanos(5 * SECOND));
+        detector.addFix(new Fix().setLatitude(12.97 + 10 / DEGREE).setLongitude(77.59)
+                .setTime(UTC + 1000).setElapsedRealtimeNanos(6 * SECOND));
+        assertEquals(0, detector.addFix(new Fix().setLatitude(12.97 + 20 / DEGREE)
+                .setLongitude(77.59).setTime(UTC + 2000)));
+        assertEquals(10, detector.getLastSpeed(), 0.1);
+
+        detector.reset();
+        detector.addFix(new Fix().setLatitude(12.97).setLongitude(77.59)
+                .setTime(UTC).setElapsedRealtimeNanos(5 * SECOND));
+        // elapsed realtime is used again after a reset, the UTC time jumped meanwhile
+        assertEquals(0, detector.addFix(new Fix().setLatitude(12.97 + 10 / DEGREE)
+                .setLongitude(77.59).setTime(UTC - 60_000).setElapsedRealtimeNanos(6 * SECOND)));
+    }
+}
@@ -0,0 +1,101 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LocationPlausibilityAnalyzerTest {
+
+    private static final int WINDOW = 8;
+
+    @Test
+    public void statistics_matchANaiveComputationAfterTheWindowWraps() {
+        LocationPlausibilityAnalyzer analyzer = new LocationPlausibilityAnalyzer(WINDOW);
+        Random random = new Random(7);
+        double[][] values = new double[3][3000];
+
+        // long enough to wrap the ring buffer many times and pass an exact recomputation
+        for (int i = 0; i < values[0].length; i++) {
+            values[LocationPlausibilityAnalyzer.ALTITUDE][i] = 900 + 20 * random.nextGaussian();
+            values[LocationPlausibilityAnalyzer.SPEED][i] = 1e-3 * random.nextGaussian();
+            values[LocationPlausibilityAnalyzer.ACCURACY][i] = 1e6 + random.nextInt(3);
+            analyzer.addFix(values[0][i], values[1][i], values[2][i]);
+
+            int from = Math.max(0, i + 1 - WINDOW);
+            for (int channel = 0; channel < 3; channel++) {
+                double mean = naiveMean(values[channel], from, i + 1);
+                double variance = naiveVariance(values[channel], from, i + 1);
+                assertEquals(mean, analyzer.getMean(channel), 1e-9 * Math.max(1, Math.abs(mean)));
+                assertEquals(variance, analyzer.getVariance(channel), 1e-6 * Math.max(1e-6, variance));
+            }
+        }
+    }
+
+    @Test
+    public void constantStream_isFlagged() {
+        LocationPlausibilityAnalyzer analyzer = new LocationPlausibilityAnalyzer();
+
+        for (int i = 0; i < 4; i++)
+            assertEquals(0f, analyzer.addFix(120, 0.5, 10), 0f);
+        for (int i = 4; i < LocationPlausibilityAnalyzer.DEFAULT_WINDOW_SIZE; i++)
+            analyzer.addFix(120, 0.5, 10);
+
+        assertEquals(1f, analyzer.getLastScore(), 0f);
+        assertTrue(analyzer.getLastScore() >= FixScorer.DEFAULT_CONSTANT_SENSORS_THRESHOLD);
+        assertEquals(LocationPlausibilityAnalyzer.DEFAULT_WINDOW_SIZE,
+                analyzer.getRunLength(LocationPlausibilityAnalyzer.ALTITUDE));
+
+        analyzer.reset();
+        assertEquals(0f, analyzer.addFix(120, 0.5, 10), 0f);
+        assertEquals(1, analyzer.getFixCount());
+    }
+
+    @Test
+    public void noisyDeviceStream_isNotFlagged() {
+        LocationPlausibilityAnalyzer analyzer = new LocationPlausibilityAnalyzer();
+        Random random = new Random(11);
+        float maxScore = 0;
+
+        for (int i = 0; i < 3600; i++) {
+            // altitude wanders, speed is a noisy walk, accuracy is reported in whole meters
+            double altitude = 905 + 3 * Math.sin(i / 60.0) + 4 * random.nextGaussian();
+            double speed = Math.max(0, 1.4 + 0.3 * random.nextGaussian());
+            double accuracy = Math.round(6 + 2 * Math.abs(random.nextGaussian()));
+            float score = analyzer.addFix(altitude, speed, accuracy);
+            if (i >= LocationPlausibilityAnalyzer.DEFAULT_WINDOW_SIZE) maxScore = Math.max(maxScore, score);
+        }
+
+        assertTrue("max score " + maxScore,
+                maxScore < FixScorer.DEFAULT_CONSTANT_SENSORS_THRESHOLD);
+    }
+
+    @Test
+    public void stationaryDevice_isNotFlaggedForItsZeroSpeed() {
+        LocationPlausibilityAnalyzer analyzer = new LocationPlausibilityAnalyzer();
+        Random random = new Random(13);
+
+        for (int i = 0; i < 600; i++)
+            analyzer.addFix(905 + 4 * random.nextGaussian(), 0,
+                    Math.round(10 + 3 * Math.abs(random.nextGaussian())));
+
+        assertTrue(analyzer.getLastScore() < FixScorer.DEFAULT_CONSTANT_SENSORS_THRESHOLD);
+    }
+
+    private static double naiveMean(double[] values, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) sum += values[i];
+        return sum / (to - from);
+    }
+
+    private static double naiveVariance(double[] values, int from, int to) {
+        if (to - from < 2) return 0;
+
+        double mean = naiveMean(values, from, to);
+        double deviations = 0;
+        for (int i = from; i < to; i++) deviations += (values[i] - mean) * (values[i] - mean);
+        return deviations / (to - from - 1);
+    }
+}
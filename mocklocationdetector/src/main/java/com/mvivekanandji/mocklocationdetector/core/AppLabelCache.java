@@ -0,0 +1,81 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Application labels, loaded on first use and cached per package version.
+ * <p>
+ * Loading a label goes through the app's resources, so labels are only loaded when a caller
+ * asks for them. An update of the package (new version code or update time) reloads it.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+final class AppLabelCache {
+
+    private final PackageManager packageManager;
+    private final DetectorMetrics detectorMetrics;
+    private final ConcurrentMap<String, CachedLabel> labels = new ConcurrentHashMap<>();
+
+    AppLabelCache(@NonNull PackageManager packageManager) {
+        this(packageManager, new DetectorMetrics());
+    }
+
+    AppLabelCache(@NonNull PackageManager packageManager, @NonNull DetectorMetrics detectorMetrics) {
+        this.packageManager = packageManager;
+        this.detectorMetrics = detectorMetrics;
+    }
+
+    /**
+     * @param applicationInfo ApplicationInfo
+     * @param versionCode     version code of the package
+     * @param lastUpdateTime  last update time of the package
+     * @return label of the application
+     */
+    String getLabel(@NonNull ApplicationInfo applicationInfo, long versionCode, long lastUpdateTime) {
+        CachedLabel cachedLabel = labels.get(applicationInfo.packageName);
+        if (cachedLabel != null && cachedLabel.versionCode == versionCode
+                && cachedLabel.lastUpdateTime == lastUpdateTime) {
+            if (detectorMetrics.isEnabled()) detectorMetrics.recordLabelLookup(true);
+            return cachedLabel.label;
+        }
+        if (detectorMetrics.isEnabled()) detectorMetrics.recordLabelLookup(false);
+
+        // two threads may both load a missing label, which is harmless
+        String label = applicationInfo.loadLabel(packageManager).toString();
+        labels.put(applicationInfo.packageName, new CachedLabel(versionCode, lastUpdateTime, label));
+        return label;
+    }
+
+    private static final class CachedLabel {
+        private final long versionCode;
+        private final long lastUpdateTime;
+        private final String label;
+
+        CachedLabel(long versionCode, long lastUpdateTime, String label) {
+            this.versionCode = versionCode;
+            this.lastUpdateTime = lastUpdateTime;
+            this.label = label;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+
+import androidx.annotation.NonNull;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Loads the blacklists compiled at build time by the compileBlacklist and
+ * compileCertificateBlacklist Gradle tasks.
+ * <p>
+ * The asset is memory mapped when it is stored uncompressed in the APK. If the app packaging
+ * compressed it, the asset is read into a buffer in one pass instead. The noCompress setting
+ * of this library does not apply to the APK of the app, apps have to set it themselves, see
+ * {@link #isMemoryMapped}.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+final class BlacklistLoader {
+
+    static final String ASSET_NAME = "mocklocationdetector/blacklist.bin";
+    static final String CERTIFICATES_ASSET_NAME = "mocklocationdetector/certificates.bin";
+
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private BlacklistLoader() {
+    }
+
+    /**
+     * @param context Context
+     * @return BlacklistIndex bundled with the library
+     * @throws IOException if the asset is missing or corrupt
+     */
+    static BlacklistIndex loadBundled(@NonNull Context context) throws IOException {
+        return BlacklistIndex.read(openAsset(context, ASSET_NAME));
+    }
+
+    /**
+     * @param context Context
+     * @return CertificateDigestIndex bundled with the library
+     * @throws IOException if the asset is missing or corrupt
+     */
+    static CertificateDigestIndex loadBundledCertificates(@NonNull Context context)
+            throws IOException {
+        return CertificateDigestIndex.read(openAsset(context, CERTIFICATES_ASSET_NAME));
+    }
+
+    /**
+     * @param context   Context
+     * @param assetName String
+     * @return true if the asset is stored uncompressed in the APK and is memory mapped, false
+     * if it is read into memory
+     */
+    static boolean isMemoryMapped(@NonNull Context context, @NonNull String assetName) {
+        try {
+            context.getAssets().openFd(assetName).close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static ByteBuffer openAsset(Context context, String assetName) throws IOException {
+        AssetFileDescriptor assetFileDescriptor;
+        try {
+            assetFileDescriptor = context.getAssets().openFd(assetName);
+        } catch (IOException e) {
+            // compressed assets can not be opened as a file descriptor
+            try (InputStream inputStream = context.getAssets().open(assetName)) {
+                return readFully(inputStream);
+            }
+        }
+
+        try (FileInputStream fileInputStream = assetFileDescriptor.createInputStream();
+             FileChannel fileChannel = fileInputStream.getChannel()) {
+            return fileChannel.map(FileChannel.MapMode.READ_ONLY,
+                    assetFileDescriptor.getStartOffset(), assetFileDescriptor.getLength());
+        } finally {
+            assetFileDescriptor.close();
+        }
+    }
+
+    private static ByteBuffer readFully(InputStream inputStream) throws IOException {
+        byte[] bytes = new byte[Math.max(inputStream.available(), READ_BUFFER_SIZE)];
+        int length = 0;
+        int read;
+
+        while ((read = inputStream.read(bytes, length, bytes.length - length)) != -1) {
+            length += read;
+            if (length == bytes.length) {
+                byte[] grown = new byte[bytes.length * 2];
+                System.arraycopy(bytes, 0, grown, 0, length);
+                bytes = grown;
+            }
+        }
+        return ByteBuffer.wrap(bytes, 0, length);
+    }
+}
@@ -0,0 +1,444 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import android.annotation.SuppressLint;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import com.mvivekanandji.mocklocationdetector.interfaces.OnMockLocationDetectorMonitorListener;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Keeps the mock location verdicts up to date in the background, started with
+ * {@link MockLocationDetector#startMonitoring}.
+ * <p>
+ * Locations from the passive provider, and any passed to {@link #onLocationChanged}, are scored
+ * with a {@link FixScorer}. Only the newest unscored location is kept: a location arriving
+ * while the previous one waits to be scored replaces it, so a flood of locations never builds
+ * a queue. Package broadcasts are debounced, a burst of them (e.g. an app update) triggers a
+ * single incremental scan.
+ * <p>
+ * Changed verdicts are collected for the debounce interval and delivered in one call. Only one
+ * call is handed to the executor at a time, changes made while it runs are merged and
+ * delivered next, see {@link VerdictChangeBuffer}.
+ * <p>
+ * All work except the package scans runs on one HandlerThread owned by the monitor.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+public final class DetectionMonitor {
+
+    static final long DEFAULT_DEBOUNCE_MILLIS = 1000;
+
+    private static final int SUSPICIOUS_FLAGS = FixScorer.MOCK_PROVIDER
+            | FixScorer.IMPOSSIBLE_SPEED | FixScorer.IMPOSSIBLE_ACCELERATION;
+
+    /**
+     * Runs the package scans of a monitor
+     */
+    interface Scanner {
+        ScanHandle scan(@NonNull ScanDispatcher.Callback<MockAppScanResult> callback);
+
+        /**
+         * Called before a scan when the broadcast of a changed package is received
+         */
+        void packageChanged(@NonNull String packageName);
+    }
+
+    private final Context context;
+    private final Executor executor;
+    private final long debounceMillis;
+    private final OnMockLocationDetectorMonitorListener listener;
+    private final Scanner scanner;
+    private final HandlerThread handlerThread;
+    private final Handler handler;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    // written by any thread under fixLock
+    private final Object fixLock = new Object();
+    private Fix pendingFix = new Fix();
+    private boolean fixPending;
+    private boolean pendingMockProvider;
+    private long fixesReceived;
+    private long fixesConflated;
+
+    // monitor thread only
+    private final FixScorer fixScorer = new FixScorer();
+    private Fix scoringFix = new Fix();
+    private final VerdictChangeBuffer verdictChangeBuffer = new VerdictChangeBuffer();
+    private final Map<String, MockApp> mockApps = new HashMap<>();
+    private LocationManager locationManager;
+    private boolean locationDetected;
+    private boolean flushScheduled;
+    private boolean deliveryInFlight;
+    private boolean scanning;
+    private boolean rescanRequested;
+    private ScanHandle scanHandle;
+
+    // written on the monitor thread only, read by getStats()
+    private volatile long packageEvents;
+    private volatile long packageScans;
+    private volatile long changesDelivered;
+    private volatile long batchesDelivered;
+    private volatile long wakeups;
+    private volatile long cpuTimeNanos;
+
+    private final LocationListener locationListener = new LocationListener() {
+        @Override
+        public void onLocationChanged(Location location) {
+            DetectionMonitor.this.onLocationChanged(location);
+        }
+
+        @Override
+        public void onStatusChanged(String provider, int status, Bundle extras) {
+        }
+
+        @Override
+        public void onProviderEnabled(String provider) {
+        }
+
+        @Override
+        public void onProviderDisabled(String provider) {
+        }
+    };
+
+    private final BroadcastReceiver packageChangeReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, final Intent intent) {
+            new Task() {
+                @Override
+                void execute() {
+                    packageEvents++;
+                    Uri data = intent.getData();
+                    if (data != null) scanner.packageChanged(data.getSchemeSpecificPart());
+
+                    // restart the debounce interval on every event of a burst
+                    handler.removeCallbacks(scanPackages);
+                    handler.postDelayed(scanPackages, debounceMillis);
+                }
+            }.run();
+        }
+    };
+
+    private final Runnable scoreFix = new Task() {
+        @Override
+        void execute() {
+            boolean mockProvider;
+            synchronized (fixLock) {
+                Fix fix = pendingFix;
+                pendingFix = scoringFix;
+                scoringFix = fix;
+                mockProvider = pendingMockProvider;
+                pendingMockProvider = false;
+                fixPending = false;
+            }
+
+            fixScorer.score(scoringFix);
+            // a conflated fix from a mock provider still counts
+            int flags = fixScorer.getLastFlags() | (mockProvider ? FixScorer.MOCK_PROVIDER : 0);
+            boolean detected = (flags & SUSPICIOUS_FLAGS) != 0;
+            if (detected == locationDetected) return;
+
+            locationDetected = detected;
+            addChange(VerdictChange.location(detected, flags, SystemClock.elapsedRealtimeNanos()));
+        }
+    };
+
+    private final Runnable scanPackages = new Task() {
+        @Override
+        void execute() {
+            scanPackages();
+        }
+    };
+
+    private final Runnable flush = new Task() {
+        @Override
+        void execute() {
+            flushScheduled = false;
+            flush();
+        }
+    };
+
+    private final Runnable deliveryDone = new Task() {
+        @Override
+        void execute() {
+            deliveryInFlight = false;
+            // changes that arrived meanwhile already waited at least one delivery
+            flush();
+        }
+    };
+
+    /**
+     * @param executor       runs the listener callbacks, e.g. the main thread
+     * @param debounceMillis interval over which package events and verdict changes are
+     *                       collected before acting on them
+     */
+    DetectionMonitor(@NonNull Context context, @NonNull Executor executor, long debounceMillis,
+                     @NonNull OnMockLocationDetectorMonitorListener listener,
+                     @NonNull Scanner scanner) {
+        if (debounceMillis < 0) throw new IllegalArgumentException("debounceMillis must not be negative");
+
+        this.context = context;
+        this.executor = executor;
+        this.debounceMillis = debounceMillis;
+        this.listener = listener;
+        this.scanner = scanner;
+        handlerThread = new HandlerThread("MockLocationDetector-monitor");
+        handlerThread.start();
+        handler = new Handler(handlerThread.getLooper());
+    }
+
+    void start() {
+        if (!running.compareAndSet(false, true)) return;
+
+        handler.post(new Task() {
+            @Override
+            void execute() {
+                IntentFilter intentFilter = new IntentFilter();
+                intentFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+                intentFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+                intentFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+                intentFilter.addDataScheme("package");
+                context.registerReceiver(packageChangeReceiver, intentFilter, null, handler);
+
+                requestLocationUpdates();
+                scanPackages();
+            }
+        });
+    }
+
+    /**
+     * Passive updates only, the monitor never turns on GPS by itself
+     */
+    @SuppressLint("MissingPermission")
+    private void requestLocationUpdates() {
+        locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+        if (locationManager == null) return;
+
+        try {
+            locationManager.requestLocationUpdates(LocationManager.PASSIVE_PROVIDER,
+                    debounceMillis, 0, locationListener, handlerThread.getLooper());
+        } catch (SecurityException | IllegalArgumentException e) {
+            // no location permission or provider, feed locations with onLocationChanged instead
+            locationManager = null;
+            deliverError(e);
+        }
+    }
+
+    /**
+     * Feeds a location received by the app, e.g. from its own location updates. Can be called
+     * from any thread and does not block
+     *
+     * @param location Location
+     */
+    public void onLocationChanged(@NonNull Location location) {
+        if (!running.get()) return;
+
+        synchronized (fixLock) {
+            fixesReceived++;
+            LocationFixes.copy(location, pendingFix);
+            pendingMockProvider |= location.isFromMockProvider();
+
+            if (fixPending) {
+                fixesConflated++;
+                return;
+            }
+            fixPending = true;
+        }
+        handler.post(scoreFix);
+    }
+
+    /**
+     * Stops monitoring. Changes not yet delivered are dropped
+     */
+    public void stop() {
+        if (!running.compareAndSet(true, false)) return;
+
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (locationManager != null) locationManager.removeUpdates(locationListener);
+                context.unregisterReceiver(packageChangeReceiver);
+                if (scanHandle != null) scanHandle.cancel();
+                handler.removeCallbacksAndMessages(null);
+                handlerThread.quit();
+            }
+        });
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * Getter - counters since the monitor was started
+     * @return MonitorStats
+     */
+    public MonitorStats getStats() {
+        long received;
+        long conflated;
+        synchronized (fixLock) {
+            received = fixesReceived;
+            conflated = fixesConflated;
+        }
+        return new MonitorStats(received, conflated, packageEvents, packageScans,
+                changesDelivered, verdictChangeBuffer.getSuperseded(), batchesDelivered,
+                wakeups, cpuTimeNanos);
+    }
+
+    private void scanPackages() {
+        if (scanning) {
+            rescanRequested = true;
+            return;
+        }
+        scanning = true;
+        packageScans++;
+        scanHandle = scanner.scan(new ScanDispatcher.Callback<MockAppScanResult>() {
+            @Override
+            public void onComplete(final MockAppScanResult mockAppScanResult) {
+                handler.post(new Task() {
+                    @Override
+                    void execute() {
+                        onPackagesScanned(mockAppScanResult);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(final Exception exception) {
+                handler.post(new Task() {
+                    @Override
+                    void execute() {
+                        onPackagesScanned(null);
+                        deliverError(exception);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onPackagesScanned(MockAppScanResult mockAppScanResult) {
+        scanning = false;
+        scanHandle = null;
+
+        if (mockAppScanResult != null) {
+            long now = SystemClock.elapsedRealtimeNanos();
+            Set<String> found = new HashSet<>();
+            for (MockApp mockApp : mockAppScanResult.getMockApps()) {
+                found.add(mockApp.getPackageName());
+                MockApp previous = mockApps.put(mockApp.getPackageName(), mockApp);
+                if (previous == null
+                        || !previous.getMatchedRules().equals(mockApp.getMatchedRules()))
+                    addChange(VerdictChange.mockApp(mockApp, true, now));
+            }
+
+            // a partial scan says nothing about the packages it did not reach
+            if (mockAppScanResult.isComplete()) {
+                Iterator<MockApp> iterator = mockApps.values().iterator();
+                while (iterator.hasNext()) {
+                    MockApp mockApp = iterator.next();
+                    if (found.contains(mockApp.getPackageName())) continue;
+
+                    iterator.remove();
+                    addChange(VerdictChange.mockApp(mockApp, false, now));
+                }
+            }
+        }
+
+        if (rescanRequested) {
+            rescanRequested = false;
+            handler.postDelayed(scanPackages, debounceMillis);
+        }
+    }
+
+    private void addChange(VerdictChange verdictChange) {
+        if (!verdictChangeBuffer.add(verdictChange) || flushScheduled) return;
+
+        flushScheduled = true;
+        handler.postDelayed(flush, debounceMillis);
+    }
+
+    private void flush() {
+        if (deliveryInFlight || verdictChangeBuffer.isEmpty()) return;
+
+        final List<VerdictChange> verdictChanges = verdictChangeBuffer.drain();
+        deliveryInFlight = true;
+        changesDelivered += verdictChanges.size();
+        batchesDelivered++;
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (running.get()) listener.onVerdictChanges(verdictChanges);
+                } finally {
+                    handler.post(deliveryDone);
+                }
+            }
+        });
+    }
+
+    private void deliverError(final Exception exception) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (running.get()) listener.onError(exception);
+            }
+        });
+    }
+
+    /**
+     * Work on the monitor thread, counted as a wakeup together with the CPU time it took
+     */
+    private abstract class Task implements Runnable {
+
+        @Override
+        public final void run() {
+            long start = Debug.threadCpuTimeNanos();
+            try {
+                execute();
+            } finally {
+                wakeups++;
+                // -1 where per-thread CPU time is not supported
+                if (start >= 0) cpuTimeNanos += Debug.threadCpuTimeNanos() - start;
+            }
+        }
+
+        abstract void execute();
+    }
+}
@@ -0,0 +1,214 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import androidx.annotation.NonNull;
+
+import com.mvivekanandji.mocklocationdetector.interfaces.MetricsSink;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Counters and histograms of the detector, see {@link MockLocationDetector#setMetricsEnabled}.
+ * <p>
+ * Disabled by default. Callers check {@link #isEnabled()}, a single volatile read, before
+ * taking any timestamp, so disabled metrics cost next to nothing. Enabled, every record is a
+ * few atomic increments and never allocates.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+public final class DetectorMetrics {
+
+    private volatile boolean enabled;
+    private volatile MetricsSink metricsSink;
+
+    private final Histogram scanTimeNanos = new Histogram();
+    private final AtomicLong packagesExamined = new AtomicLong();
+    private final AtomicLong packageManagerCalls = new AtomicLong();
+    private final AtomicLong fullScans = new AtomicLong();
+    private final AtomicLong verdictCacheHits = new AtomicLong();
+    private final AtomicLong verdictCacheMisses = new AtomicLong();
+    private final AtomicLong labelCacheHits = new AtomicLong();
+    private final AtomicLong labelCacheMisses = new AtomicLong();
+    private final Histogram blacklistLoadTimeNanos = new Histogram();
+    private volatile int blacklistRuleCount;
+    private volatile int blacklistCertificateCount;
+
+    DetectorMetrics() {
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    void setMetricsSink(MetricsSink metricsSink) {
+        this.metricsSink = metricsSink;
+    }
+
+    void recordScan(@NonNull PackageScanner.Result result, long wallTimeNanos,
+                    boolean verdictCacheEnabled) {
+        scanTimeNanos.record(wallTimeNanos);
+        packagesExamined.addAndGet(result.getPackagesExamined());
+        packageManagerCalls.addAndGet(result.getPackageManagerCalls());
+
+        if (result.isFullScan()) {
+            fullScans.incrementAndGet();
+            if (verdictCacheEnabled) {
+                verdictCacheHits.addAndGet(result.getCachedVerdicts());
+                verdictCacheMisses.addAndGet(
+                        Math.max(0, result.getPackagesExamined() - result.getCachedVerdicts()));
+            }
+        }
+
+        MetricsSink sink = metricsSink;
+        if (sink != null)
+            sink.onScan(wallTimeNanos, result.getPackagesExamined(),
+                    result.getPackageManagerCalls(), result.getCachedVerdicts(),
+                    result.isFullScan());
+    }
+
+    void recordBlacklistLoad(int ruleCount, int certificateCount, long loadTimeNanos) {
+        blacklistRuleCount = ruleCount;
+        blacklistCertificateCount = certificateCount;
+        blacklistLoadTimeNanos.record(loadTimeNanos);
+
+        MetricsSink sink = metricsSink;
+        if (sink != null) sink.onBlacklistLoaded(ruleCount, certificateCount, loadTimeNanos);
+    }
+
+    void recordLabelLookup(boolean cacheHit) {
+        (cacheHit ? labelCacheHits : labelCacheMisses).incrementAndGet();
+    }
+
+    /**
+     * Getter - wall time of scans and checks, from the start of the scan to its result, in nanoseconds
+     * @return Histogram
+     */
+    public Histogram getScanTimeNanos() {
+        return scanTimeNanos;
+    }
+
+    /**
+     * Getter
+     * @return long, number of scans and checks
+     */
+    public long getScanCount() {
+        return scanTimeNanos.getCount();
+    }
+
+    /**
+     * Getter - scans that enumerated every package, the others only reloaded changed packages
+     * @return long
+     */
+    public long getFullScanCount() {
+        return fullScans.get();
+    }
+
+    /**
+     * Getter
+     * @return long, packages whose PackageInfo was read
+     */
+    public long getPackagesExamined() {
+        return packagesExamined.get();
+    }
+
+    /**
+     * Getter
+     * @return long, PackageManager calls made
+     */
+    public long getPackageManagerCalls() {
+        return packageManagerCalls.get();
+    }
+
+    /**
+     * Getter - share of packages of full scans whose verdict was reused from disk
+     * @return double between 0 and 1, 0 if nothing was looked up
+     */
+    public double getVerdictCacheHitRate() {
+        return rate(verdictCacheHits.get(), verdictCacheMisses.get());
+    }
+
+    /**
+     * Getter - share of app label lookups served from memory
+     * @return double between 0 and 1, 0 if nothing was looked up
+     */
+    public double getLabelCacheHitRate() {
+        return rate(labelCacheHits.get(), labelCacheMisses.get());
+    }
+
+    /**
+     * Getter
+     * @return int, package rules in the blacklist when it was last loaded
+     */
+    public int getBlacklistRuleCount() {
+        return blacklistRuleCount;
+    }
+
+    /**
+     * Getter
+     * @return int, certificate digests in the blacklist when it was last loaded
+     */
+    public int getBlacklistCertificateCount() {
+        return blacklistCertificateCount;
+    }
+
+    /**
+     * Getter - time to load the blacklist, in nanoseconds
+     * @return Histogram
+     */
+    public Histogram getBlacklistLoadTimeNanos() {
+        return blacklistLoadTimeNanos;
+    }
+
+    /**
+     * Forgets everything recorded so far
+     */
+    public void reset() {
+        scanTimeNanos.reset();
+        packagesExamined.set(0);
+        packageManagerCalls.set(0);
+        fullScans.set(0);
+        verdictCacheHits.set(0);
+        verdictCacheMisses.set(0);
+        labelCacheHits.set(0);
+        labelCacheMisses.set(0);
+        blacklistLoadTimeNanos.reset();
+    }
+
+    private static double rate(long hits, long misses) {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "DetectorMetrics{" +
+                "scanTimeNanos=" + scanTimeNanos +
+                ", fullScans=" + getFullScanCount() +
+                ", packagesExamined=" + getPackagesExamined() +
+                ", packageManagerCalls=" + getPackageManagerCalls() +
+                ", verdictCacheHitRate=" + getVerdictCacheHitRate() +
+                ", labelCacheHitRate=" + getLabelCacheHitRate() +
+                ", blacklistRuleCount=" + blacklistRuleCount +
+                ", blacklistCertificateCount=" + blacklistCertificateCount +
+                ", blacklistLoadTimeNanos=" + blacklistLoadTimeNanos +
+                '}';
+    }
+}
@@ -0,0 +1,59 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import android.location.Location;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Converts android.location.Location into the platform independent {@link Fix} used by the
+ * detection rules of the core module
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+public final class LocationFixes {
+
+    private LocationFixes() {
+    }
+
+    /**
+     * Copies the location into an existing fix, so a stream of locations can be converted
+     * without allocating
+     *
+     * @param location Location
+     * @param fix      Fix to overwrite
+     * @return fix
+     */
+    public static Fix copy(@NonNull Location location, @NonNull Fix fix) {
+        return fix.setLatitude(location.getLatitude())
+                .setLongitude(location.getLongitude())
+                .setAltitude(location.getAltitude())
+                .setSpeed(location.getSpeed())
+                .setAccuracy(location.getAccuracy())
+                .setTime(location.getTime())
+                .setElapsedRealtimeNanos(location.getElapsedRealtimeNanos())
+                .setFromMockProvider(location.isFromMockProvider());
+    }
+
+    /**
+     * @param location Location
+     * @return new Fix holding the location
+     */
+    public static Fix toFix(@NonNull Location location) {
+        return copy(location, new Fix());
+    }
+}
@@ -0,0 +1,121 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import androidx.annotation.NonNull;
+
+import com.mvivekanandji.mocklocationdetector.interfaces.OnMockLocationDetectorMatchListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Delivers matches to an {@link OnMockLocationDetectorMatchListener} while a scan is running.
+ * <p>
+ * The first match is delivered on its own so the caller can react right away, later matches
+ * are delivered in batches of up to batchSize to limit hops to the caller's executor. Nothing
+ * is delivered once the request is cancelled. Matches are not kept after delivery.
+ * <p>
+ * {@link #add} is called by one thread at a time, the scan thread or a thread loading packages
+ * for it.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+final class MatchBatcher {
+
+    private final Executor executor;
+    private final int batchSize;
+    private final OnMockLocationDetectorMatchListener listener;
+    private final ScanHandle scanHandle;
+
+    private List<MockApp> batch;
+    private int mockAppCount;
+
+    /**
+     * @param executor   runs the listener callbacks, e.g. the main thread
+     * @param batchSize  maximum number of matches per onMatches call
+     * @param listener   OnMockLocationDetectorMatchListener
+     * @param scanHandle ScanHandle of the request
+     */
+    MatchBatcher(@NonNull Executor executor, int batchSize,
+                 @NonNull OnMockLocationDetectorMatchListener listener,
+                 @NonNull ScanHandle scanHandle) {
+        if (batchSize < 1) throw new IllegalArgumentException("batchSize must be at least 1");
+
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.listener = listener;
+        this.scanHandle = scanHandle;
+    }
+
+    void add(@NonNull MockApp mockApp) {
+        if (scanHandle.isCancelled()) return;
+
+        if (batch == null) batch = new ArrayList<>(mockAppCount == 0 ? 1 : batchSize);
+        batch.add(mockApp);
+        mockAppCount++;
+
+        if (mockAppCount == 1 || batch.size() == batchSize) flush();
+    }
+
+    /**
+     * Delivers the last batch followed by onComplete
+     */
+    void complete(final int packagesExamined, final boolean complete) {
+        flush();
+        final int count = mockAppCount;
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onComplete(count, packagesExamined, complete);
+            }
+        });
+    }
+
+    void error(final Exception exception) {
+        flush();
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onError(exception);
+            }
+        });
+    }
+
+    private void flush() {
+        if (batch == null || batch.isEmpty()) return;
+
+        final List<MockApp> mockApps = Collections.unmodifiableList(batch);
+        batch = null;
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onMatches(mockApps);
+            }
+        });
+    }
+
+    private void execute(final Runnable runnable) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!scanHandle.isCancelled()) runnable.run();
+            }
+        });
+    }
+}
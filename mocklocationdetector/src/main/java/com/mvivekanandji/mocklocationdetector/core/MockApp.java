@@ -0,0 +1,92 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import android.content.pm.ApplicationInfo;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * A package matched by at least one {@link DetectionRule}
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+public final class MockApp {
+
+    private final ApplicationInfo applicationInfo;
+    private final long versionCode;
+    private final long lastUpdateTime;
+    private final Set<DetectionRule> matchedRules;
+    private final AppLabelCache appLabelCache;
+
+    MockApp(@NonNull PackageRecord packageRecord, @NonNull Set<DetectionRule> matchedRules,
+            @NonNull AppLabelCache appLabelCache) {
+        this.applicationInfo = packageRecord.getApplicationInfo();
+        this.versionCode = packageRecord.getVersionCode();
+        this.lastUpdateTime = packageRecord.getLastUpdateTime();
+        this.matchedRules = Collections.unmodifiableSet(matchedRules);
+        this.appLabelCache = appLabelCache;
+    }
+
+    /**
+     * Getter
+     * @return String
+     */
+    public String getPackageName() {
+        return applicationInfo.packageName;
+    }
+
+    /**
+     * Getter - label of the app. Loaded from the app's resources on first call and cached per
+     * package version, prefer {@link #getPackageName()} when the label is not needed
+     * @return String
+     */
+    public String getLabel() {
+        return appLabelCache.getLabel(applicationInfo, versionCode, lastUpdateTime);
+    }
+
+    /**
+     * Getter
+     * @return ApplicationInfo
+     */
+    public ApplicationInfo getApplicationInfo() {
+        return applicationInfo;
+    }
+
+    /**
+     * Getter - rules this package matched
+     * @return Set<DetectionRule>
+     */
+    public Set<DetectionRule> getMatchedRules() {
+        return matchedRules;
+    }
+
+    /**
+     * @param detectionRule DetectionRule
+     * @return true if this package matched the rule
+     */
+    public boolean matches(DetectionRule detectionRule) {
+        return matchedRules.contains(detectionRule);
+    }
+
+    @Override
+    public String toString() {
+        return getPackageName() + matchedRules;
+    }
+}
@@ -0,0 +1,134 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Result of {@link MockLocationDetector#scan}: every package that matched at least one of the
+ * enabled rules, along with the rules it matched
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+public final class MockAppScanResult {
+
+    private final Set<DetectionRule> enabledRules;
+    private final List<MockApp> mockApps;
+    private final int packageCount;
+    private final int packagesExamined;
+    private final boolean complete;
+    private final long blacklistVersion;
+    private final List<Exception> errors;
+
+    MockAppScanResult(@NonNull Set<DetectionRule> enabledRules, @NonNull List<MockApp> mockApps,
+                      int packageCount, int packagesExamined, boolean complete,
+                      long blacklistVersion, @NonNull List<Exception> errors) {
+        this.enabledRules = Collections.unmodifiableSet(enabledRules);
+        this.mockApps = Collections.unmodifiableList(mockApps);
+        this.packageCount = packageCount;
+        this.packagesExamined = packagesExamined;
+        this.complete = complete;
+        this.blacklistVersion = blacklistVersion;
+        this.errors = errors;
+    }
+
+    /**
+     * Getter
+     * @return true if any package matched any enabled rule
+     */
+    public boolean hasMockApps() {
+        return !mockApps.isEmpty();
+    }
+
+    /**
+     * Getter
+     * @return List<MockApp>
+     */
+    public List<MockApp> getMockApps() {
+        return mockApps;
+    }
+
+    /**
+     * @param detectionRule DetectionRule
+     * @return packages that matched the given rule
+     */
+    public List<MockApp> getMockApps(DetectionRule detectionRule) {
+        List<MockApp> matched = new ArrayList<>();
+        for (MockApp mockApp : mockApps)
+            if (mockApp.matches(detectionRule)) matched.add(mockApp);
+
+        return matched;
+    }
+
+    /**
+     * Getter - rules that were evaluated
+     * @return Set<DetectionRule>
+     */
+    public Set<DetectionRule> getEnabledRules() {
+        return enabledRules;
+    }
+
+    /**
+     * Getter - number of installed packages the rules were evaluated against. Only the packages
+     * loaded until then when a check stopped loading packages at its first match
+     * @return int
+     */
+    public int getPackageCount() {
+        return packageCount;
+    }
+
+    /**
+     * Getter - number of packages the rules were actually evaluated against. Lower than
+     * {@link #getPackageCount()} when a check stopped at the first match of the packages already
+     * loaded, see {@link MockLocationDetector#setScanParallelism(int)}
+     * @return int
+     */
+    public int getPackagesExamined() {
+        return packagesExamined;
+    }
+
+    /**
+     * Getter - false if the scan timed out before every package was examined. The result then
+     * only holds the mock apps found so far, see {@link #getPackagesExamined()}
+     * @return boolean
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Getter - version of the blacklist this result was computed against,
+     * see {@link MockLocationDetector#getBlackListVersion()}
+     * @return long
+     */
+    public long getBlackListVersion() {
+        return blacklistVersion;
+    }
+
+    List<Exception> getErrors() {
+        return errors;
+    }
+
+    @Override
+    public String toString() {
+        return mockApps.toString();
+    }
+}
@@ -1,4 +1,386 @@
 package com.mvivekanandji.mocklocationdetector.core;
 
+import android.location.Location;
+import android.location.LocationManager;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Scores a single location with a pipeline of weighted checks, each contributing a signal.
+ * <p>
+ * Checks run cheapest first and the pipeline stops as soon as the score reaches the threshold,
+ * so a fix from a mock provider costs one field read. The built-in checks are:
+ * <ul>
+ * <li>{@link #MOCK_PROVIDER} - the location is flagged as coming from a mock provider</li>
+ * <li>{@link #CLOCK_DRIFT} - between two consecutive fixes the UTC time and the elapsed
+ * realtime advance by different amounts, spoofing apps rarely fill both consistently</li>
+ * <li>{@link #SATELLITES} - a GPS fix reports fewer satellites than a fix needs</li>
+ * <li>{@link #REPEATED_VALUES} - altitude, speed and accuracy are held constant, as scored by
+ * {@link LocationPlausibilityAnalyzer}</li>
+ * </ul>
+ * More checks can be added with {@link Builder#addCheck}. Checks are sorted once when the
+ * pipeline is built, evaluating a fix does not allocate.
+ * <p>
+ * Stateful and not thread safe, use one instance per location stream. A {@link StatefulCheck}
+ * skipped because the threshold was already reached still observes that fix, so its state
+ * does not depend on the checks before it.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
 public final class MockLocationAssistance {
+
+    public static final int MOCK_PROVIDER = 1;
+    public static final int CLOCK_DRIFT = 1 << 1;
+    public static final int SATELLITES = 1 << 2;
+    public static final int REPEATED_VALUES = 1 << 3;
+
+    /**
+     * Relative costs of the built-in checks
+     */
+    public static final int COST_FIELD = 1;
+    public static final int COST_CLOCK = 2;
+    public static final int COST_EXTRAS = 4;
+    public static final int COST_STATE = 8;
+
+    public static final float DEFAULT_THRESHOLD = 1f;
+    public static final long DEFAULT_MAX_CLOCK_DRIFT_MILLIS = 5000;
+    public static final int DEFAULT_MIN_SATELLITES = 4;
+    public static final int DEFAULT_REPEATED_FIXES = 5;
+
+    static final String SATELLITES_EXTRA = "satellites";
+
+    /**
+     * One check of the pipeline
+     */
+    public interface Check {
+
+        /**
+         * @param location Location
+         * @return true if the signal of this check fired for the location
+         */
+        boolean isFired(@NonNull Location location);
+    }
+
+    /**
+     * A check whose result depends on the previous fixes of the stream
+     */
+    public interface StatefulCheck extends Check {
+
+        /**
+         * Updates the state with a location the check is not scored on, because the threshold
+         * was already reached
+         * @param location Location
+         */
+        void observe(@NonNull Location location);
+    }
+
+    private final float threshold;
+    private final Check[] checks;
+    private final StatefulCheck[] statefulChecks;
+    private final int[] signals;
+    private final float[] weights;
+
+    private int lastSignals;
+    private int lastChecksRun;
+
+    /**
+     * Pipeline with the built-in checks and default weights
+     */
+    public MockLocationAssistance() {
+        this(new Builder().addDefaultChecks());
+    }
+
+    private MockLocationAssistance(Builder builder) {
+        List<Entry> entries = new ArrayList<>(builder.entries);
+        // stable, checks of equal cost keep the order they were added in
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry first, Entry second) {
+                return first.cost < second.cost ? -1 : (first.cost == second.cost ? 0 : 1);
+            }
+        });
+
+        threshold = builder.threshold;
+        checks = new Check[entries.size()];
+        statefulChecks = new StatefulCheck[entries.size()];
+        signals = new int[entries.size()];
+        weights = new float[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            checks[i] = entries.get(i).check;
+            if (checks[i] instanceof StatefulCheck) statefulChecks[i] = (StatefulCheck) checks[i];
+            signals[i] = entries.get(i).signal;
+            weights[i] = entries.get(i).weight;
+        }
+    }
+
+    /**
+     * Runs the checks cheapest first until the score reaches the threshold. The signals that
+     * fired are available from {@link #getLastSignals()}
+     *
+     * @param location Location
+     * @return sum of the weights of the signals that fired, at most 1
+     */
+    public float evaluate(@NonNull Location location) {
+        float score = 0;
+        int fired = 0;
+        int i = 0;
+
+        while (i < checks.length && score < threshold) {
+            if (checks[i].isFired(location)) {
+                score += weights[i];
+                fired |= signals[i];
+            }
+            i++;
+        }
+
+        lastSignals = fired;
+        lastChecksRun = i;
+        for (; i < checks.length; i++)
+            if (statefulChecks[i] != null) statefulChecks[i].observe(location);
+        return Math.min(1f, score);
+    }
+
+    /**
+     * Getter
+     * @return signals that fired for the latest location, a combination of the signal constants
+     * and the signals of added checks
+     */
+    public int getLastSignals() {
+        return lastSignals;
+    }
+
+    /**
+     * Getter
+     * @return number of checks run for the latest location, less than all when the threshold
+     * was reached early
+     */
+    public int getLastChecksRun() {
+        return lastChecksRun;
+    }
+
+    public float getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Builds a pipeline with custom weights and checks
+     */
+    public static final class Builder {
+        private final List<Entry> entries = new ArrayList<>();
+        private float threshold = DEFAULT_THRESHOLD;
+
+        /**
+         * Setter - to set the score at which the remaining checks are skipped
+         * @param threshold float, greater than 0
+         * @return this object
+         */
+        public Builder setThreshold(float threshold) {
+            if (threshold <= 0) throw new IllegalArgumentException("threshold must be positive");
+            this.threshold = threshold;
+            return this;
+        }
+
+        /**
+         * Adds the built-in checks with their default weights and limits
+         * @return this object
+         */
+        public Builder addDefaultChecks() {
+            return addMockProviderCheck(1f)
+                    .addClockDriftCheck(0.4f, DEFAULT_MAX_CLOCK_DRIFT_MILLIS)
+                    .addSatellitesCheck(0.3f, DEFAULT_MIN_SATELLITES)
+                    .addRepeatedValuesCheck(0.3f, DEFAULT_REPEATED_FIXES);
+        }
+
+        /**
+         * @param weight float
+         * @return this object
+         */
+        public Builder addMockProviderCheck(float weight) {
+            return addCheck(MOCK_PROVIDER, weight, COST_FIELD, new MockProviderCheck());
+        }
+
+        /**
+         * @param weight          float
+         * @param maxDriftMillis  long, largest accepted difference between how far the UTC time
+         *                        and the elapsed realtime advanced since the previous fix
+         * @return this object
+         */
+        public Builder addClockDriftCheck(float weight, long maxDriftMillis) {
+            return addCheck(CLOCK_DRIFT, weight, COST_CLOCK, new ClockDriftCheck(maxDriftMillis));
+        }
+
+        /**
+         * @param weight        float
+         * @param minSatellites int, fewest satellites a GPS fix may report
+         * @return this object
+         */
+        public Builder addSatellitesCheck(float weight, int minSatellites) {
+            return addCheck(SATELLITES, weight, COST_EXTRAS, new SatellitesCheck(minSatellites));
+        }
+
+        /**
+         * @param weight        float
+         * @param repeatedFixes int, number of recent fixes the constant values are scored over,
+         *                      at least 5
+         * @return this object
+         */
+        public Builder addRepeatedValuesCheck(float weight, int repeatedFixes) {
+            return addCheck(REPEATED_VALUES, weight, COST_STATE,
+                    new RepeatedValuesCheck(repeatedFixes));
+        }
+
+        /**
+         * Adds a check to the pipeline
+         * @param signal int, bit reported by getLastSignals() when the check fires, use bits
+         *               above {@link #REPEATED_VALUES}
+         * @param weight float, added to the score when the check fires
+         * @param cost   int, relative cost, cheaper checks run first
+         * @param check  Check
+         * @return this object
+         */
+        public Builder addCheck(int signal, float weight, int cost, @NonNull Check check) {
+            if (weight < 0) throw new IllegalArgumentException("weight must not be negative");
+            entries.add(new Entry(signal, weight, cost, check));
+            return this;
+        }
+
+        public MockLocationAssistance build() {
+            return new MockLocationAssistance(this);
+        }
+    }
+
+    private static final class Entry {
+        private final int signal;
+        private final float weight;
+        private final int cost;
+        private final Check check;
+
+        Entry(int signal, float weight, int cost, Check check) {
+            this.signal = signal;
+            this.weight = weight;
+            this.cost = cost;
+            this.check = check;
+        }
+    }
+
+    //region built-in checks
+
+    private static final class MockProviderCheck implements Check {
+        @Override
+        public boolean isFired(@NonNull Location location) {
+            return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2
+                    && location.isFromMockProvider();
+        }
+    }
+
+    private static final class ClockDriftCheck implements StatefulCheck {
+        private final long maxDriftMillis;
+        private boolean hasPrevious;
+        private long previousTime;
+        private long previousRealtimeMillis;
+        private long previousClockOffset;
+
+        ClockDriftCheck(long maxDriftMillis) {
+            this.maxDriftMillis = maxDriftMillis;
+        }
+
+        @Override
+        public boolean isFired(@NonNull Location location) {
+            // elapsed realtime is only known since Jelly Bean MR1, no signal without it
+            long elapsedRealtimeNanos = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1
+                    ? location.getElapsedRealtimeNanos()
+                    : 0;
+            if (elapsedRealtimeNanos <= 0) {
+                hasPrevious = false;
+                return false;
+            }
+
+            long realtimeMillis = elapsedRealtimeNanos / 1_000_000;
+            // changes when the user or the network sets the wall clock, which shifts the UTC
+            // time of fixes from providers that stamp them with it
+            long clockOffset = System.currentTimeMillis() - SystemClock.elapsedRealtime();
+
+            boolean fired = hasPrevious
+                    && Math.abs(clockOffset - previousClockOffset) <= maxDriftMillis
+                    && Math.abs((location.getTime() - previousTime)
+                    - (realtimeMillis - previousRealtimeMillis)) > maxDriftMillis;
+
+            hasPrevious = true;
+            previousTime = location.getTime();
+            previousRealtimeMillis = realtimeMillis;
+            previousClockOffset = clockOffset;
+            return fired;
+        }
+
+        @Override
+        public void observe(@NonNull Location location) {
+            isFired(location);
+        }
+    }
+
+    private static final class SatellitesCheck implements Check {
+        private final int minSatellites;
+
+        SatellitesCheck(int minSatellites) {
+            this.minSatellites = minSatellites;
+        }
+
+        @Override
+        public boolean isFired(@NonNull Location location) {
+            // only the GPS provider reports satellites, and not on every device or release
+            if (!LocationManager.GPS_PROVIDER.equals(location.getProvider())) return false;
+
+            Bundle extras = location.getExtras();
+            return extras != null && extras.containsKey(SATELLITES_EXTRA)
+                    && extras.getInt(SATELLITES_EXTRA, 0) < minSatellites;
+        }
+    }
+
+    private static final class RepeatedValuesCheck implements StatefulCheck {
+        private final LocationPlausibilityAnalyzer plausibilityAnalyzer;
+
+        RepeatedValuesCheck(int repeatedFixes) {
+            plausibilityAnalyzer = new LocationPlausibilityAnalyzer(repeatedFixes);
+        }
+
+        @Override
+        public boolean isFired(@NonNull Location location) {
+            float plausibility = plausibilityAnalyzer.addFix(location.getAltitude(),
+                    location.getSpeed(), location.getAccuracy());
+            // a provider that reports no accuracy repeats 0 legitimately
+            return location.hasAccuracy()
+                    && plausibility >= FixScorer.DEFAULT_CONSTANT_SENSORS_THRESHOLD;
+        }
+
+        @Override
+        public void observe(@NonNull Location location) {
+            plausibilityAnalyzer.addFix(location.getAltitude(), location.getSpeed(),
+                    location.getAccuracy());
+        }
+    }
+
+    //endregion
 }
@@ -3,8 +3,6 @@ package com.mvivekanandji.mocklocationdetector.core;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageInfo;
-import android.content.pm.PackageManager;
 import android.location.Location;
 import android.location.LocationManager;
 import android.os.Build;
@@ -14,16 +12,27 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.RequiresApi;
 
+import com.mvivekanandji.mocklocationdetector.interfaces.MetricsSink;
 import com.mvivekanandji.mocklocationdetector.interfaces.OnMockLocationDetectorAppInfoListener;
 import com.mvivekanandji.mocklocationdetector.interfaces.OnMockLocationDetectorAppListener;
+import com.mvivekanandji.mocklocationdetector.interfaces.OnMockLocationDetectorMatchListener;
+import com.mvivekanandji.mocklocationdetector.interfaces.OnMockLocationDetectorMonitorListener;
+import com.mvivekanandji.mocklocationdetector.interfaces.OnMockLocationDetectorScanListener;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static android.content.Context.LOCATION_SERVICE;
 
@@ -53,14 +62,27 @@ public class MockLocationDetector {
 
     //region variables
     private static final String TAG = MockLocationDetector.class.getSimpleName();
+    private static final String SCAN = "scan";
+    private static final String FIND_ANY = "findAny";
+    private static final String STREAM = "stream";
+    private static final String MONITOR = "monitor";
 
     private final Context context;
     private boolean verbose;
     private boolean debug;
-    private static int userAddedPackageCount;
-    private static String blackListAppsFilePath;
-
-    private static Set<String> blacklistApplicationPackageSet;
+    private final ScanDispatcher scanDispatcher;
+    private final PackageSnapshot packageSnapshot;
+    private volatile EnumSet<DetectionRule> detectionRules;
+    private volatile ParallelMatcher parallelMatcher;
+    private final AtomicInteger streamCount = new AtomicInteger();
+    private final AtomicInteger monitorScanCount = new AtomicInteger();
+    private final ImpossibleTravelDetector impossibleTravelDetector;
+    private final Fix impossibleTravelFix;
+    private final MockLocationAssistance mockLocationAssistance;
+    private final AppLabelCache appLabelCache;
+    private final DetectorMetrics detectorMetrics;
+    private final BlacklistSnapshot.Loader blacklistLoader;
+    private static final Blacklist blacklist = new Blacklist();
 
     @SuppressLint("StaticFieldLeak") //application context will be used,
     private static MockLocationDetector mockLocationDetector;
@@ -74,8 +96,15 @@ public class MockLocationDetector {
         this.context = context;
         verbose = false;
         debug = false;
-        blacklistApplicationPackageSet = new HashSet<>();
-        blackListAppsFilePath = "BlackListApps.txt";
+        scanDispatcher = new ScanDispatcher();
+        packageSnapshot = new PackageSnapshot(context);
+        detectionRules = EnumSet.allOf(DetectionRule.class);
+        impossibleTravelDetector = new ImpossibleTravelDetector();
+        impossibleTravelFix = new Fix();
+        mockLocationAssistance = new MockLocationAssistance();
+        detectorMetrics = new DetectorMetrics();
+        appLabelCache = new AppLabelCache(context.getPackageManager(), detectorMetrics);
+        blacklistLoader = new AssetBlacklistLoader();
         displayInfo("Singleton Object created: " + mockLocationDetector);
     }
 
@@ -152,133 +181,297 @@ public class MockLocationDetector {
     }
 
     /**
-     * Check if device contains any app that require mock location permission
-     * @param onMockLocationDetectorAppListener OnMockLocationDetectorAppListener
+     * Check if the location is an impossible jump from the previous location passed to this
+     * method, i.e. the implied speed or acceleration is physically impossible. Pass every location
+     * received in onLocationChanged(), in order. For several independent location streams use an
+     * {@link ImpossibleTravelDetector} per stream instead
+     *
+     * @param location Pass Location object received from the OS's onLocationChanged() callback
+     * @return true if the move from the previous location is impossible
+     */
+    public boolean isImpossibleTravel(@NonNull Location location) {
+        synchronized (impossibleTravelDetector) {
+            return impossibleTravelDetector.addFix(LocationFixes.copy(location, impossibleTravelFix)) != 0;
+        }
+    }
+
+    /**
+     * Scores the location with the checks of {@link MockLocationAssistance}: mock provider flag,
+     * clock drift, satellite count and repeated sensor values. Pass every location received in
+     * onLocationChanged(), in order. For a custom pipeline build a {@link MockLocationAssistance}
+     *
+     * @param location Pass Location object received from the OS's onLocationChanged() callback
+     * @return 0 (plausible) to 1 (mocked)
      */
-    public void checkForAllowMockLocationApp(@NonNull final OnMockLocationDetectorAppListener
-                                                     onMockLocationDetectorAppListener) {
-        new Thread(new Runnable() {
+    public float getMockLocationScore(@NonNull Location location) {
+        synchronized (mockLocationAssistance) {
+            return mockLocationAssistance.evaluate(location);
+        }
+    }
+
+    /**
+     * Enumerates installed packages once and applies every enabled {@link DetectionRule} to each
+     * of them, see {@link #setDetectionRules(DetectionRule...)}
+     * @param onMockLocationDetectorScanListener OnMockLocationDetectorScanListener
+     * @return ScanHandle to cancel the scan
+     */
+    public ScanHandle scan(@NonNull OnMockLocationDetectorScanListener
+                                   onMockLocationDetectorScanListener) {
+        return scan(onMockLocationDetectorScanListener, 0);
+    }
+
+    /**
+     * Same as {@link #scan(OnMockLocationDetectorScanListener)}, but stops after the timeout and
+     * delivers what it found so far, see {@link MockAppScanResult#isComplete()}
+     * @param onMockLocationDetectorScanListener OnMockLocationDetectorScanListener
+     * @param timeoutMillis long, 0 for no timeout
+     * @return ScanHandle to cancel the scan
+     */
+    public ScanHandle scan(@NonNull final OnMockLocationDetectorScanListener
+                                   onMockLocationDetectorScanListener, long timeoutMillis) {
+        return submitScan(detectionRules, new ScanDispatcher.Callback<MockAppScanResult>() {
             @Override
-            public void run() {
-                for (ApplicationInfo applicationInfo : getAllApps()) {
-                    try {
-                        PackageInfo packageInfo = context.getPackageManager()
-                                .getPackageInfo(applicationInfo.packageName, PackageManager.GET_PERMISSIONS);
-
-                        String[] requestedPermissions = packageInfo.requestedPermissions;
-
-                        if (requestedPermissions != null)
-                            for (String requestedPermission : requestedPermissions)
-                                if (requestedPermission.equals("android.permission.ACCESS_MOCK_LOCATION")
-                                        && !applicationInfo.packageName.equals(context.getPackageName())){
-                                    onMockLocationDetectorAppListener.onResult(true);
-                                    displayInfo("Mock app detected:" +
-                                            applicationInfo.loadLabel(context.getPackageManager()).toString());
-                                    return;
-                                }
-                    } catch (PackageManager.NameNotFoundException e) {
-                        onMockLocationDetectorAppListener.onError(e);
-                        displayError(e);
-                    }
-                }
-                onMockLocationDetectorAppListener.onResult(false);
-                displayInfo("No mock app detected");
+            public void onComplete(MockAppScanResult mockAppScanResult) {
+                onMockLocationDetectorScanListener.onResult(mockAppScanResult);
+                if (verbose) displayInfo(mockAppScanResult.toString());
             }
-        }).start();
+
+            @Override
+            public void onError(Exception exception) {
+                onMockLocationDetectorScanListener.onError(exception);
+                displayError(exception);
+            }
+        }, timeoutMillis);
+    }
+
+    /**
+     * Same as {@link #scan(OnMockLocationDetectorScanListener)}, but delivers every match as soon
+     * as it is found instead of collecting them, while the installed packages are still being
+     * enumerated. The first match is delivered on its own, later ones in batches of up to
+     * batchSize. Use a single threaded executor, such as the main thread, to receive the
+     * callbacks in order
+     * @param executor Executor the listener is called on
+     * @param batchSize int, maximum number of matches per onMatches call
+     * @param onMockLocationDetectorMatchListener OnMockLocationDetectorMatchListener
+     * @return ScanHandle to cancel the scan
+     */
+    public ScanHandle streamScan(@NonNull Executor executor, int batchSize,
+                                 @NonNull OnMockLocationDetectorMatchListener
+                                         onMockLocationDetectorMatchListener) {
+        return streamScan(executor, batchSize, onMockLocationDetectorMatchListener, 0);
+    }
+
+    /**
+     * Same as {@link #streamScan(Executor, int, OnMockLocationDetectorMatchListener)}, with a
+     * timeout after which onComplete reports an incomplete scan
+     * @param executor Executor the listener is called on
+     * @param batchSize int, maximum number of matches per onMatches call
+     * @param onMockLocationDetectorMatchListener OnMockLocationDetectorMatchListener
+     * @param timeoutMillis long, 0 for no timeout
+     * @return ScanHandle to cancel the scan
+     */
+    public ScanHandle streamScan(@NonNull Executor executor, int batchSize,
+                                 @NonNull OnMockLocationDetectorMatchListener
+                                         onMockLocationDetectorMatchListener,
+                                 long timeoutMillis) {
+        ScanHandle scanHandle = new ScanHandle(ScanHandle.deadlineAfter(timeoutMillis));
+        final MatchBatcher matchBatcher = new MatchBatcher(executor, batchSize,
+                onMockLocationDetectorMatchListener, scanHandle);
+        final EnumSet<DetectionRule> scanRules = EnumSet.copyOf(detectionRules);
+
+        // streamed matches cannot be shared with another request, never coalesce
+        scanDispatcher.submit(STREAM + streamCount.incrementAndGet(),
+                new ScanDispatcher.Scan<MockAppScanResult>() {
+                    @Override
+                    public MockAppScanResult run(@NonNull Cancellation cancellation) {
+                        return runScan(newDetectionScan(scanRules).setMatchListener(
+                                new DetectionScan.MatchListener<PackageRecord>() {
+                                    @Override
+                                    public void onMatch(PackageRecord packageRecord,
+                                                        Set<DetectionRule> matchedRules) {
+                                        matchBatcher.add(new MockApp(packageRecord,
+                                                matchedRules, appLabelCache));
+                                    }
+                                }), cancellation);
+                    }
+                }, new ScanDispatcher.Callback<MockAppScanResult>() {
+                    @Override
+                    public void onComplete(MockAppScanResult mockAppScanResult) {
+                        matchBatcher.complete(mockAppScanResult.getPackagesExamined(),
+                                mockAppScanResult.isComplete());
+                    }
+
+                    @Override
+                    public void onError(Exception exception) {
+                        matchBatcher.error(exception);
+                        displayError(exception);
+                    }
+                }, scanHandle);
+        return scanHandle;
+    }
+
+    /**
+     * Starts monitoring in the background: locations received by the device are scored as they
+     * arrive and installed packages are rescanned when apps are installed, updated or removed.
+     * Verdict changes are delivered in batches, see {@link DetectionMonitor}.
+     * Location updates need the ACCESS_FINE_LOCATION permission, without it the listener gets
+     * a SecurityException and only packages are monitored, unless locations are passed to
+     * {@link DetectionMonitor#onLocationChanged(Location)}
+     * @param executor Executor the listener is called on
+     * @param onMockLocationDetectorMonitorListener OnMockLocationDetectorMonitorListener
+     * @return DetectionMonitor to stop monitoring
+     */
+    public DetectionMonitor startMonitoring(@NonNull Executor executor,
+                                            @NonNull OnMockLocationDetectorMonitorListener
+                                                    onMockLocationDetectorMonitorListener) {
+        return startMonitoring(executor, DetectionMonitor.DEFAULT_DEBOUNCE_MILLIS,
+                onMockLocationDetectorMonitorListener);
+    }
+
+    /**
+     * Same as {@link #startMonitoring(Executor, OnMockLocationDetectorMonitorListener)}, with
+     * the interval over which events are collected before they are acted on
+     * @param executor Executor the listener is called on
+     * @param debounceMillis long, defaults to {@value DetectionMonitor#DEFAULT_DEBOUNCE_MILLIS}
+     * @param onMockLocationDetectorMonitorListener OnMockLocationDetectorMonitorListener
+     * @return DetectionMonitor to stop monitoring
+     */
+    public DetectionMonitor startMonitoring(@NonNull Executor executor, long debounceMillis,
+                                            @NonNull OnMockLocationDetectorMonitorListener
+                                                    onMockLocationDetectorMonitorListener) {
+        DetectionMonitor detectionMonitor = new DetectionMonitor(context, executor,
+                debounceMillis, onMockLocationDetectorMonitorListener,
+                new DetectionMonitor.Scanner() {
+                    @Override
+                    public ScanHandle scan(@NonNull ScanDispatcher.Callback<MockAppScanResult>
+                                                   callback) {
+                        // a scan started before the package broadcast may miss the change,
+                        // never join one
+                        return submitScan(MONITOR + monitorScanCount.incrementAndGet(),
+                                detectionRules, callback, 0);
+                    }
+
+                    @Override
+                    public void packageChanged(@NonNull String packageName) {
+                        packageSnapshot.packageChanged(packageName);
+                    }
+                });
+        detectionMonitor.start();
+        displayInfo("Monitoring started");
+        return detectionMonitor;
+    }
+
+    /**
+     * Check if device contains any app that require mock location permission. Stops at the first
+     * match when parallel mode is enabled, see {@link #setScanParallelism(int)}
+     * @param onMockLocationDetectorAppListener OnMockLocationDetectorAppListener
+     * @return ScanHandle to cancel the check
+     */
+    public ScanHandle checkForAllowMockLocationApp(@NonNull OnMockLocationDetectorAppListener
+                                                           onMockLocationDetectorAppListener) {
+        return checkForAllowMockLocationApp(onMockLocationDetectorAppListener, 0);
+    }
+
+    /**
+     * Same as {@link #checkForAllowMockLocationApp(OnMockLocationDetectorAppListener)}, with a
+     * timeout. If no app was found before the timeout the listener gets a TimeoutException
+     * @param onMockLocationDetectorAppListener OnMockLocationDetectorAppListener
+     * @param timeoutMillis long, 0 for no timeout
+     * @return ScanHandle to cancel the check
+     */
+    public ScanHandle checkForAllowMockLocationApp(@NonNull OnMockLocationDetectorAppListener
+                                                           onMockLocationDetectorAppListener,
+                                                   long timeoutMillis) {
+        return submitCheck(DetectionRule.MOCK_LOCATION_PERMISSION,
+                newAppCallback(DetectionRule.MOCK_LOCATION_PERMISSION, onMockLocationDetectorAppListener),
+                timeoutMillis);
     }
 
     /**
      * Check if device contains any app that require mock location permission and returns
      * associated information using listener interface
      * @param onMockLocationDetectorAppInfoListener OnMockLocationDetectorAppInfoListener
+     * @return ScanHandle to cancel the scan
      */
-    public void getMockLocationAppsApplicationInfo(@NonNull final OnMockLocationDetectorAppInfoListener
-                                                           onMockLocationDetectorAppInfoListener) {
+    public ScanHandle getMockLocationAppsApplicationInfo(@NonNull OnMockLocationDetectorAppInfoListener
+                                                                 onMockLocationDetectorAppInfoListener) {
+        return getMockLocationAppsApplicationInfo(onMockLocationDetectorAppInfoListener, 0);
+    }
 
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                List<ApplicationInfo> mockApplicationInfoList = new ArrayList<>();
-                List<String> appNamesList = new ArrayList<>();
-                List<String> appPackageList = new ArrayList<>();
-
-                for (ApplicationInfo applicationInfo : getAllApps()) {
-                    try {
-                        PackageInfo packageInfo = context.getPackageManager()
-                                .getPackageInfo(applicationInfo.packageName, PackageManager.GET_PERMISSIONS);
-
-                        String[] requestedPermissions = packageInfo.requestedPermissions;
-
-                        if (requestedPermissions != null)
-                            for (String requestedPermission : requestedPermissions)
-                                if (requestedPermission.equals("android.permission.ACCESS_MOCK_LOCATION")
-                                        && !applicationInfo.packageName.equals(context.getPackageName())) {
-                                    mockApplicationInfoList.add(applicationInfo);
-                                    appNamesList.add((applicationInfo.loadLabel(context.getPackageManager()).toString()));
-                                    appPackageList.add(applicationInfo.packageName);
-                                }
-
-                    } catch (PackageManager.NameNotFoundException e) {
-                        onMockLocationDetectorAppInfoListener.onError(e);
-                        displayError(e);
-                    }
-                }
-                onMockLocationDetectorAppInfoListener.onResult(
-                        mockApplicationInfoList.size() > 0,
-                        mockApplicationInfoList.size(),
-                        appNamesList,
-                        appPackageList,
-                        mockApplicationInfoList
-                );
-                displayInfo(mockApplicationInfoList.toString());
-            }
-        }).start();
+    /**
+     * Same as {@link #getMockLocationAppsApplicationInfo(OnMockLocationDetectorAppInfoListener)},
+     * with a timeout. If the scan did not finish before the timeout the listener gets a
+     * TimeoutException
+     * @param onMockLocationDetectorAppInfoListener OnMockLocationDetectorAppInfoListener
+     * @param timeoutMillis long, 0 for no timeout
+     * @return ScanHandle to cancel the scan
+     */
+    public ScanHandle getMockLocationAppsApplicationInfo(@NonNull OnMockLocationDetectorAppInfoListener
+                                                                 onMockLocationDetectorAppInfoListener,
+                                                         long timeoutMillis) {
+        return submitScan(detectionRulesWith(DetectionRule.MOCK_LOCATION_PERMISSION),
+                newAppInfoCallback(DetectionRule.MOCK_LOCATION_PERMISSION, onMockLocationDetectorAppInfoListener),
+                timeoutMillis);
+    }
 
+    /**
+     * Check if device contains any known mock app. Stops at the first match when parallel mode
+     * is enabled, see {@link #setScanParallelism(int)}
+     * @param onMockLocationDetectorAppListener OnMockLocationDetectorAppListener
+     * @return ScanHandle to cancel the check
+     */
+    public ScanHandle checkForKnownMockApps(@NonNull OnMockLocationDetectorAppListener
+                                                    onMockLocationDetectorAppListener) {
+        return checkForKnownMockApps(onMockLocationDetectorAppListener, 0);
     }
 
-    public void checkForKnownMockApps(@NonNull final OnMockLocationDetectorAppListener
-                                              onMockLocationDetectorAppListener) {
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                for (ApplicationInfo applicationInfo : getAllApps())
-                    if (blacklistApplicationPackageSet.contains(applicationInfo.packageName)) {
-                        onMockLocationDetectorAppListener.onResult(true);
-                        displayInfo("Mock app detected:" +
-                                applicationInfo.loadLabel(context.getPackageManager()).toString());
-                        return;
-                    }
-                onMockLocationDetectorAppListener.onResult(false);
-                displayInfo("No mock app detected");
-            }
-        }).start();
+    /**
+     * Same as {@link #checkForKnownMockApps(OnMockLocationDetectorAppListener)}, with a timeout.
+     * If no app was found before the timeout the listener gets a TimeoutException
+     * @param onMockLocationDetectorAppListener OnMockLocationDetectorAppListener
+     * @param timeoutMillis long, 0 for no timeout
+     * @return ScanHandle to cancel the check
+     */
+    public ScanHandle checkForKnownMockApps(@NonNull OnMockLocationDetectorAppListener
+                                                    onMockLocationDetectorAppListener,
+                                            long timeoutMillis) {
+        return submitCheck(DetectionRule.KNOWN_MOCK_APP,
+                newAppCallback(DetectionRule.KNOWN_MOCK_APP, onMockLocationDetectorAppListener),
+                timeoutMillis);
     }
 
-    public void getKnownMockLocationAppsApplicationInfo(@NonNull final OnMockLocationDetectorAppInfoListener
-                                                                onMockLocationDetectorAppInfoListener) {
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                List<ApplicationInfo> mockApplicationInfoList = new ArrayList<>();
-                List<String> appNamesList = new ArrayList<>();
-                List<String> appPackageList = new ArrayList<>();
-
-                for (ApplicationInfo applicationInfo : getAllApps())
-                    if (blacklistApplicationPackageSet.contains(applicationInfo.packageName)) {
-                        mockApplicationInfoList.add(applicationInfo);
-                        appNamesList.add((applicationInfo.loadLabel(context.getPackageManager()).toString()));
-                        appPackageList.add(applicationInfo.packageName);
-                    }
-                onMockLocationDetectorAppInfoListener.onResult(
-                        mockApplicationInfoList.size() > 0,
-                        mockApplicationInfoList.size(),
-                        appNamesList,
-                        appPackageList,
-                        mockApplicationInfoList
-                );
-                displayInfo(mockApplicationInfoList.toString());
-            }
-        }).start();
+    /**
+     * @param onMockLocationDetectorAppInfoListener OnMockLocationDetectorAppInfoListener
+     * @return ScanHandle to cancel the scan
+     */
+    public ScanHandle getKnownMockLocationAppsApplicationInfo(@NonNull OnMockLocationDetectorAppInfoListener
+                                                                      onMockLocationDetectorAppInfoListener) {
+        return getKnownMockLocationAppsApplicationInfo(onMockLocationDetectorAppInfoListener, 0);
+    }
+
+    /**
+     * Same as {@link #getKnownMockLocationAppsApplicationInfo(OnMockLocationDetectorAppInfoListener)},
+     * with a timeout. If the scan did not finish before the timeout the listener gets a
+     * TimeoutException
+     * @param onMockLocationDetectorAppInfoListener OnMockLocationDetectorAppInfoListener
+     * @param timeoutMillis long, 0 for no timeout
+     * @return ScanHandle to cancel the scan
+     */
+    public ScanHandle getKnownMockLocationAppsApplicationInfo(@NonNull OnMockLocationDetectorAppInfoListener
+                                                                      onMockLocationDetectorAppInfoListener,
+                                                              long timeoutMillis) {
+        return submitScan(detectionRulesWith(DetectionRule.KNOWN_MOCK_APP),
+                newAppInfoCallback(DetectionRule.KNOWN_MOCK_APP, onMockLocationDetectorAppInfoListener),
+                timeoutMillis);
+    }
+
+    /**
+     * Drops the cached package snapshot so the next scan rescans every installed package.
+     * Not needed after installs, updates or uninstalls, which are picked up automatically
+     */
+    public void invalidate() {
+        packageSnapshot.invalidate();
+        displayInfo("Package snapshot invalidated");
     }
 
     /**
@@ -307,56 +500,277 @@ public class MockLocationDetector {
     //region getter/setter
 
     /**
-     * Setter - to add package name to check
+     * Setter - to add package name to check. Besides exact package names, prefix rules such as
+     * com.example.* and wildcard rules such as *.fakegps are accepted
      * @param packageName String
      * @return this object
      */
     public MockLocationDetector addBlackListApplicationPackage(String packageName) {
-        blacklistApplicationPackageSet.add(packageName);
+        blacklist.addRules(Collections.singletonList(packageName));
         displayInfo("Package added: " + packageName);
         return this;
     }
 
     /**
-     * Setter - to add list of package names to check
+     * Setter - to add list of package names to check. All packages are added in one update,
+     * prefer this over adding packages one at a time
      * @param packageNameList List<String>
      * @return this object
      */
     public MockLocationDetector addBlackListApplicationPackage(List<String> packageNameList) {
-        blacklistApplicationPackageSet.addAll(packageNameList);
+        blacklist.addRules(packageNameList);
         displayInfo("Packages added: " + packageNameList);
         return this;
     }
 
     /**
-     * Getter - to get list of package names of blacklist apps
+     * Getter - to get list of package names (and prefix/wildcard rules) of blacklist apps
      * @return Set<String>
      */
     public Set<String> getBlackListApps() {
-        if (blacklistApplicationPackageSet.isEmpty()
-                || blacklistApplicationPackageSet.size() == userAddedPackageCount)
-            blacklistApplicationPackageSet = readFileToSet(blackListAppsFilePath);
+        BlacklistSnapshot snapshot = blacklist.getLoaded(blacklistLoader);
+
+        Set<String> blackListApps = new HashSet<>(snapshot.getUserIndex().getRules());
+        if (snapshot.getFileIndex() != null)
+            blackListApps.addAll(snapshot.getFileIndex().getRules());
+
+        return blackListApps;
+    }
+
+    /**
+     * Setter - to add the SHA-256 digest of a signing certificate to check. Every package signed
+     * with the certificate is reported as a known mock app, whatever its package name
+     * @param certificateDigest String, hex as printed by apksigner, colons are ignored
+     * @return this object
+     */
+    public MockLocationDetector addBlackListCertificateDigest(String certificateDigest) {
+        blacklist.addCertificateDigests(Collections.singletonList(certificateDigest));
+        displayInfo("Certificate digest added: " + certificateDigest);
+        return this;
+    }
+
+    /**
+     * Setter - to add list of SHA-256 signing certificate digests to check, in one update
+     * @param certificateDigestList List<String>
+     * @return this object
+     */
+    public MockLocationDetector addBlackListCertificateDigest(List<String> certificateDigestList) {
+        blacklist.addCertificateDigests(certificateDigestList);
+        displayInfo("Certificate digests added: " + certificateDigestList);
+        return this;
+    }
+
+    /**
+     * Getter - to get the SHA-256 digests of blacklisted signing certificates, as lower case hex
+     * @return Set<String>
+     */
+    public Set<String> getBlackListCertificateDigests() {
+        BlacklistSnapshot snapshot = blacklist.getLoaded(blacklistLoader);
+
+        Set<String> certificateDigests =
+                new HashSet<>(snapshot.getUserCertificateIndex().getDigests());
+        if (snapshot.getBundledCertificateIndex() != null)
+            certificateDigests.addAll(snapshot.getBundledCertificateIndex().getDigests());
+
+        return certificateDigests;
+    }
 
-        return blacklistApplicationPackageSet;
+    /**
+     * Getter - to get the version of the blacklist, incremented on every change to it.
+     * Scan results report the version they were computed against
+     * @return long
+     */
+    public long getBlackListVersion() {
+        return blacklist.get().getVersion();
     }
 
     /**
-     * Setter - to set blacklist apps file path
-     * @param filePtah String
+     * Setter - to set blacklist apps file path, a text file with one rule per line. By default
+     * the blacklist compiled into the library is used
+     * @param filePtah String, null to go back to the bundled blacklist
      * @return this object
      */
     public MockLocationDetector setBlackListAppsFilePath(String filePtah) {
-        blackListAppsFilePath = filePtah;
+        blacklist.setFilePath(filePtah);
         displayInfo("Blacklist apps file changed to: " + filePtah);
         return this;
     }
 
     /**
      * Getter - to get blacklist apps file path
-     * @return String
+     * @return String, null if the bundled blacklist is used
      */
     public static String getBlackListAppsFilePath() {
-        return blackListAppsFilePath;
+        return blacklist.get().getFilePath();
+    }
+
+    /**
+     * Setter - to enable metrics: scan wall time, packages examined, PackageManager calls, cache
+     * hit rates and blacklist size and load time. Disabled by default, disabled metrics are
+     * not recorded at all
+     * @param metricsEnabled boolean
+     * @return this object
+     */
+    public MockLocationDetector setMetricsEnabled(boolean metricsEnabled) {
+        detectorMetrics.setEnabled(metricsEnabled);
+        displayInfo("Metrics enabled: " + metricsEnabled);
+        return this;
+    }
+
+    /**
+     * Getter
+     * @return boolean
+     */
+    public boolean isMetricsEnabled() {
+        return detectorMetrics.isEnabled();
+    }
+
+    /**
+     * Setter - to set a sink that receives metrics as they are recorded, in addition to the
+     * counters returned by {@link #getMetrics()}. Only called while metrics are enabled
+     * @param metricsSink MetricsSink, null to remove the sink
+     * @return this object
+     */
+    public MockLocationDetector setMetricsSink(MetricsSink metricsSink) {
+        detectorMetrics.setMetricsSink(metricsSink);
+        displayInfo("Metrics sink changed to: " + metricsSink);
+        return this;
+    }
+
+    /**
+     * Getter - counters and histograms recorded while metrics were enabled
+     * @return DetectorMetrics
+     */
+    public DetectorMetrics getMetrics() {
+        return detectorMetrics;
+    }
+
+    /**
+     * Setter - to set the executor all scans run on. Scans requested while an identical scan is
+     * running join that scan instead of starting a new one.
+     * Defaults to a shared executor with {@value ScanDispatcher#DEFAULT_MAX_SCAN_THREADS} threads
+     * @param executor Executor, null to restore the default executor
+     * @return this object
+     */
+    public MockLocationDetector setScanExecutor(Executor executor) {
+        scanDispatcher.setExecutor(executor);
+        displayInfo("Scan executor changed to: " + executor);
+        return this;
+    }
+
+    /**
+     * Setter - to set maximum number of threads used by the default scan executor
+     * @param maxScanThreads int
+     * @return this object
+     */
+    public MockLocationDetector setMaxScanThreads(int maxScanThreads) {
+        if (maxScanThreads < 1)
+            throw new IllegalArgumentException(TAG + ": maxScanThreads must be at least 1.");
+
+        scanDispatcher.setExecutor(ScanDispatcher.newDefaultExecutor(maxScanThreads));
+        displayInfo("Max scan threads: " + maxScanThreads);
+        return this;
+    }
+
+    /**
+     * Setter - to set the number of threads the one getPackageInfo call per package is split
+     * across when the bulk package query fails, e.g. with many apps installed. With more than 1,
+     * {@link #checkForAllowMockLocationApp} and {@link #checkForKnownMockApps} no longer share
+     * the full scan of {@link #scan}. They stop loading packages at the first match, all threads
+     * stop as soon as one of them finds it, see {@link MockAppScanResult#getPackagesExamined()}.
+     * Defaults to 1, which queries every package on the scan thread like {@link #scan}
+     * @param scanParallelism int, e.g. Runtime.getRuntime().availableProcessors()
+     * @return this object
+     */
+    public MockLocationDetector setScanParallelism(int scanParallelism) {
+        if (scanParallelism < 1)
+            throw new IllegalArgumentException(TAG + ": scanParallelism must be at least 1.");
+
+        ParallelMatcher previous;
+        synchronized (this) {
+            previous = parallelMatcher;
+            parallelMatcher = scanParallelism == 1 ? null : new ParallelMatcher(
+                    ScanDispatcher.newDefaultExecutor(scanParallelism - 1), scanParallelism);
+        }
+        // scans still using it finish their search on their own thread
+        if (previous != null) previous.shutdown();
+        displayInfo("Scan parallelism: " + scanParallelism);
+        return this;
+    }
+
+    /**
+     * Getter
+     * @return int
+     */
+    public int getScanParallelism() {
+        ParallelMatcher matcher = parallelMatcher;
+        return matcher == null ? 1 : matcher.getParallelism();
+    }
+
+    /**
+     * Setter - to set how long the cached package snapshot is trusted before all packages are
+     * rescanned. Defaults to one hour
+     * @param maxAgeMillis long, 0 to rescan on every call
+     * @return this object
+     */
+    public MockLocationDetector setSnapshotMaxAge(long maxAgeMillis) {
+        if (maxAgeMillis < 0)
+            throw new IllegalArgumentException(TAG + ": maxAgeMillis must not be negative.");
+
+        packageSnapshot.setMaxAge(maxAgeMillis);
+        displayInfo("Snapshot max age: " + maxAgeMillis);
+        return this;
+    }
+
+    /**
+     * Getter
+     * @return long
+     */
+    public long getSnapshotMaxAge() {
+        return packageSnapshot.getMaxAge();
+    }
+
+    /**
+     * Setter - to keep scan verdicts on disk, so the first scan after a cold start only
+     * examines packages installed or updated since the last process. Enabled by default
+     * @param verdictCacheEnabled boolean, false also deletes the cached verdicts
+     * @return this object
+     */
+    public MockLocationDetector setVerdictCacheEnabled(boolean verdictCacheEnabled) {
+        packageSnapshot.setVerdictCacheEnabled(verdictCacheEnabled);
+        displayInfo("Verdict cache enabled: " + verdictCacheEnabled);
+        return this;
+    }
+
+    /**
+     * Getter
+     * @return boolean
+     */
+    public boolean isVerdictCacheEnabled() {
+        return packageSnapshot.isVerdictCacheEnabled();
+    }
+
+    /**
+     * Setter - to set the rules {@link #scan} applies to each package. All rules are enabled
+     * by default
+     * @param detectionRules DetectionRule...
+     * @return this object
+     */
+    public MockLocationDetector setDetectionRules(@NonNull DetectionRule... detectionRules) {
+        if (detectionRules.length == 0)
+            throw new IllegalArgumentException(TAG + ": At least one detection rule is required.");
+
+        this.detectionRules = EnumSet.copyOf(Arrays.asList(detectionRules));
+        displayInfo("Detection rules: " + this.detectionRules);
+        return this;
+    }
+
+    /**
+     * Getter
+     * @return Set<DetectionRule>
+     */
+    public Set<DetectionRule> getDetectionRules() {
+        return Collections.unmodifiableSet(detectionRules);
     }
 
     /**
@@ -400,12 +814,240 @@ public class MockLocationDetector {
     //endregion
 
     // region private methods
-    private List<ApplicationInfo> getAllApps() {
-        final PackageManager packageManager = context.getPackageManager();
-        return packageManager.getInstalledApplications(PackageManager.GET_META_DATA);
+    /**
+     * @param withCertificates true to also query and hash signing certificates, which makes the
+     *                         package queries much larger, only when certificate rules exist
+     */
+    private PackageScanner newPackageScanner(Cancellation cancellation, boolean withCertificates) {
+        return new PackageScanner(context.getPackageManager(), context.getPackageName(),
+                cancellation, withCertificates, parallelMatcher);
+    }
+
+    /**
+     * @param packageListener sees the packages of a full rescan as they are loaded, null for none
+     */
+    private PackageScanner.Result refreshPackageSnapshot(Cancellation cancellation,
+                                                         boolean withCertificates,
+                                                         PackageSource.Listener<PackageRecord>
+                                                                 packageListener) {
+        PackageScanner.Result result = packageSnapshot.refresh(
+                newPackageScanner(cancellation, withCertificates), packageListener);
+        displayScanStatistics(result);
+        return result;
+    }
+
+    private EnumSet<DetectionRule> detectionRulesWith(DetectionRule detectionRule) {
+        EnumSet<DetectionRule> rules = EnumSet.copyOf(detectionRules);
+        rules.add(detectionRule);
+        return rules;
+    }
+
+    /**
+     * Scans with the same rule set share one scan, so the legacy methods and {@link #scan}
+     * coalesce as long as the rule they need is enabled
+     */
+    private ScanHandle submitScan(EnumSet<DetectionRule> rules,
+                                  ScanDispatcher.Callback<MockAppScanResult> callback,
+                                  long timeoutMillis) {
+        return submitScan(SCAN + rules, rules, callback, timeoutMillis);
+    }
+
+    /**
+     * @param key requests with the same key share one scan
+     */
+    private ScanHandle submitScan(String key, EnumSet<DetectionRule> rules,
+                                  ScanDispatcher.Callback<MockAppScanResult> callback,
+                                  long timeoutMillis) {
+        ScanHandle scanHandle = new ScanHandle(ScanHandle.deadlineAfter(timeoutMillis));
+        scanDispatcher.submit(key, new SnapshotScan(newDetectionScan(EnumSet.copyOf(rules))),
+                callback, scanHandle);
+        return scanHandle;
+    }
+
+    /**
+     * Runs a yes/no check for a single rule. In parallel mode it runs on its own and stops at
+     * the first match, otherwise it shares the full scan
+     */
+    private ScanHandle submitCheck(DetectionRule detectionRule,
+                                   ScanDispatcher.Callback<MockAppScanResult> callback,
+                                   long timeoutMillis) {
+        if (parallelMatcher == null)
+            return submitScan(detectionRulesWith(detectionRule), callback, timeoutMillis);
+
+        ScanHandle scanHandle = new ScanHandle(ScanHandle.deadlineAfter(timeoutMillis));
+        scanDispatcher.submit(FIND_ANY + detectionRule, new SnapshotScan(
+                newDetectionScan(EnumSet.of(detectionRule)).setStopAtFirstMatch(true)),
+                callback, scanHandle);
+        return scanHandle;
+    }
+
+    private DetectionScan<PackageRecord> newDetectionScan(Set<DetectionRule> rules) {
+        return new DetectionScan<>(rules, blacklist, blacklistLoader);
+    }
+
+    /**
+     * Runs the scan against the package snapshot and wraps its matches into MockApps
+     */
+    private MockAppScanResult runScan(DetectionScan<PackageRecord> detectionScan,
+                                      Cancellation cancellation) {
+        boolean measure = detectorMetrics.isEnabled();
+        long startNanos = measure ? System.nanoTime() : 0;
+
+        SnapshotSource snapshotSource = new SnapshotSource();
+        DetectionScan.Result<PackageRecord> result =
+                detectionScan.run(snapshotSource, cancellation);
+
+        if (verbose)
+            displayInfo("Examined " + result.getPackagesExamined() + " of "
+                    + result.getPackageCount() + " packages");
+        if (measure) detectorMetrics.recordScan(snapshotSource.result,
+                System.nanoTime() - startNanos, packageSnapshot.isVerdictCacheEnabled());
+        return toMockAppScanResult(result, snapshotSource.result.getErrors());
     }
 
-    private Set<String> readFileToSet(String filePath) {
+    private MockAppScanResult toMockAppScanResult(DetectionScan.Result<PackageRecord> result,
+                                                  List<Exception> errors) {
+        List<MockApp> mockApps = new ArrayList<>(result.getMatches().size());
+        for (DetectionScan.Match<PackageRecord> match : result.getMatches())
+            mockApps.add(new MockApp(match.getPackage(), match.getMatchedRules(), appLabelCache));
+
+        return new MockAppScanResult(result.getRules(), mockApps, result.getPackageCount(),
+                result.getPackagesExamined(), result.isComplete(), result.getBlacklistVersion(),
+                errors);
+    }
+
+    private ScanDispatcher.Callback<MockAppScanResult> newAppCallback(
+            final DetectionRule detectionRule,
+            final OnMockLocationDetectorAppListener onMockLocationDetectorAppListener) {
+        return new ScanDispatcher.Callback<MockAppScanResult>() {
+            @Override
+            public void onComplete(MockAppScanResult mockAppScanResult) {
+                if (detectionRule == DetectionRule.MOCK_LOCATION_PERMISSION)
+                    for (Exception e : mockAppScanResult.getErrors()) {
+                        onMockLocationDetectorAppListener.onError(e);
+                        displayError(e);
+                    }
+
+                List<MockApp> mockApps = mockAppScanResult.getMockApps(detectionRule);
+                if (!mockApps.isEmpty()) {
+                    onMockLocationDetectorAppListener.onResult(true);
+                    if (verbose) displayInfo("Mock app detected:" + mockApps.get(0).getLabel());
+                    return;
+                }
+                if (!mockAppScanResult.isComplete()) {
+                    onError(newTimeoutException(mockAppScanResult));
+                    return;
+                }
+                onMockLocationDetectorAppListener.onResult(false);
+                displayInfo("No mock app detected");
+            }
+
+            @Override
+            public void onError(Exception exception) {
+                onMockLocationDetectorAppListener.onError(exception);
+                displayError(exception);
+            }
+        };
+    }
+
+    private ScanDispatcher.Callback<MockAppScanResult> newAppInfoCallback(
+            final DetectionRule detectionRule,
+            final OnMockLocationDetectorAppInfoListener onMockLocationDetectorAppInfoListener) {
+        return new ScanDispatcher.Callback<MockAppScanResult>() {
+            @Override
+            public void onComplete(MockAppScanResult mockAppScanResult) {
+                if (detectionRule == DetectionRule.MOCK_LOCATION_PERMISSION)
+                    for (Exception e : mockAppScanResult.getErrors()) {
+                        onMockLocationDetectorAppInfoListener.onError(e);
+                        displayError(e);
+                    }
+
+                if (!mockAppScanResult.isComplete()) {
+                    onError(newTimeoutException(mockAppScanResult));
+                    return;
+                }
+                deliverApplicationInfo(mockAppScanResult.getMockApps(detectionRule),
+                        onMockLocationDetectorAppInfoListener);
+            }
+
+            @Override
+            public void onError(Exception exception) {
+                onMockLocationDetectorAppInfoListener.onError(exception);
+                displayError(exception);
+            }
+        };
+    }
+
+    private static TimeoutException newTimeoutException(MockAppScanResult mockAppScanResult) {
+        return new TimeoutException(TAG + ": Scan stopped after examining "
+                + mockAppScanResult.getPackagesExamined() + " of "
+                + mockAppScanResult.getPackageCount() + " packages.");
+    }
+
+    /**
+     * Labels in the names list are only loaded when the listener reads them
+     */
+    private void deliverApplicationInfo(final List<MockApp> mockApps,
+                                        OnMockLocationDetectorAppInfoListener
+                                                onMockLocationDetectorAppInfoListener) {
+        List<ApplicationInfo> mockApplicationInfoList = new ArrayList<>(mockApps.size());
+        List<String> appPackageList = new ArrayList<>(mockApps.size());
+
+        for (MockApp mockApp : mockApps) {
+            mockApplicationInfoList.add(mockApp.getApplicationInfo());
+            appPackageList.add(mockApp.getPackageName());
+        }
+        List<String> appNamesList = new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                return mockApps.get(index).getLabel();
+            }
+
+            @Override
+            public int size() {
+                return mockApps.size();
+            }
+        };
+
+        onMockLocationDetectorAppInfoListener.onResult(
+                mockApplicationInfoList.size() > 0,
+                mockApplicationInfoList.size(),
+                appNamesList,
+                appPackageList,
+                mockApplicationInfoList
+        );
+        if (verbose) displayInfo(mockApps.toString());
+    }
+
+    private BlacklistIndex loadBundledBlacklist() {
+        displayAssetLoading(BlacklistLoader.ASSET_NAME);
+        try {
+            return BlacklistLoader.loadBundled(context);
+        } catch (IOException e) {
+            displayError(e);
+            return BlacklistIndex.EMPTY;
+        }
+    }
+
+    private CertificateDigestIndex loadBundledCertificates() {
+        displayAssetLoading(BlacklistLoader.CERTIFICATES_ASSET_NAME);
+        try {
+            return BlacklistLoader.loadBundledCertificates(context);
+        } catch (IOException e) {
+            displayError(e);
+            return CertificateDigestIndex.EMPTY;
+        }
+    }
+
+    private void displayAssetLoading(String assetName) {
+        if (verbose)
+            displayInfo(BlacklistLoader.isMemoryMapped(context, assetName)
+                    ? "Memory mapping " + assetName
+                    : "Reading " + assetName + " into memory, it is compressed in the APK."
+                    + " Add noCompress 'bin' to the aaptOptions of the app to map it");
+    }
+
+    private static Set<String> readFileToSet(String filePath) {
         Set<String> stringSet = new HashSet<>();
 
         try (BufferedReader bufferedReader = new BufferedReader(new FileReader(filePath))) {
@@ -418,6 +1060,84 @@ public class MockLocationDetector {
         return stringSet;
     }
 
+    /**
+     * A scan of the package snapshot that can be shared, joined requests whose deadline passes
+     * first get what it found so far
+     */
+    private final class SnapshotScan implements ScanDispatcher.PartialScan<MockAppScanResult> {
+        private final DetectionScan<PackageRecord> detectionScan;
+
+        SnapshotScan(DetectionScan<PackageRecord> detectionScan) {
+            this.detectionScan = detectionScan;
+        }
+
+        @Override
+        public MockAppScanResult run(@NonNull Cancellation cancellation) {
+            return runScan(detectionScan, cancellation);
+        }
+
+        @Override
+        public MockAppScanResult getPartialResult() {
+            return toMockAppScanResult(detectionScan.getPartialResult(),
+                    Collections.<Exception>emptyList());
+        }
+    }
+
+    /**
+     * The package snapshot as the source of one scan, keeps the scanner result for its
+     * statistics and errors
+     */
+    private final class SnapshotSource implements PackageSource<PackageRecord> {
+        private PackageScanner.Result result;
+
+        @Override
+        public PackageSource.Refresh<PackageRecord> refresh(
+                Cancellation cancellation, boolean withCertificates,
+                PackageSource.Listener<PackageRecord> listener) {
+            result = refreshPackageSnapshot(cancellation, withCertificates, listener);
+            return result;
+        }
+    }
+
+    /**
+     * Loads the blacklist file, or the blacklist and certificate digests bundled as assets
+     */
+    private final class AssetBlacklistLoader implements BlacklistSnapshot.Loader {
+
+        @Override
+        public BlacklistIndex loadFileIndex(String filePath) {
+            return filePath == null
+                    ? loadBundledBlacklist()
+                    : new BlacklistIndex.Builder().addAll(readFileToSet(filePath)).build();
+        }
+
+        @Override
+        public CertificateDigestIndex loadBundledCertificateIndex() {
+            return loadBundledCertificates();
+        }
+
+        @Override
+        public void onLoaded(BlacklistSnapshot loaded, long loadTimeNanos) {
+            if (detectorMetrics.isEnabled())
+                detectorMetrics.recordBlacklistLoad(
+                        loaded.getUserIndex().size() + loaded.getFileIndex().size(),
+                        loaded.getUserCertificateIndex().size()
+                                + loaded.getBundledCertificateIndex().size(),
+                        loadTimeNanos);
+        }
+    }
+
+    private void displayScanStatistics(PackageScanner.Result result) {
+        if (result.getBulkQueryError() != null)
+            displayError(result.getBulkQueryError());
+
+        if (verbose)
+            displayInfo("Scanned " + result.getPackagesExamined() + " packages with "
+                    + result.getPackageManagerCalls() + " PackageManager calls ("
+                    + result.getIpcCallsSaved() + " saved, " + result.getCachedVerdicts()
+                    + " verdicts reused from disk)");
+    }
+
     private void displayError(Exception e) {
         if (debug) {
             Log.i(TAG, e.getMessage());
@@ -0,0 +1,137 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Counters of a {@link DetectionMonitor}, to measure what monitoring costs
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+public final class MonitorStats {
+
+    private final long fixesReceived;
+    private final long fixesConflated;
+    private final long packageEvents;
+    private final long packageScans;
+    private final long changesDelivered;
+    private final long changesSuperseded;
+    private final long batchesDelivered;
+    private final long wakeups;
+    private final long cpuTimeNanos;
+
+    MonitorStats(long fixesReceived, long fixesConflated, long packageEvents, long packageScans,
+                 long changesDelivered, long changesSuperseded, long batchesDelivered,
+                 long wakeups, long cpuTimeNanos) {
+        this.fixesReceived = fixesReceived;
+        this.fixesConflated = fixesConflated;
+        this.packageEvents = packageEvents;
+        this.packageScans = packageScans;
+        this.changesDelivered = changesDelivered;
+        this.changesSuperseded = changesSuperseded;
+        this.batchesDelivered = batchesDelivered;
+        this.wakeups = wakeups;
+        this.cpuTimeNanos = cpuTimeNanos;
+    }
+
+    /**
+     * Getter - locations received from the location provider or passed to
+     * {@link DetectionMonitor#onLocationChanged}
+     * @return long
+     */
+    public long getFixesReceived() {
+        return fixesReceived;
+    }
+
+    /**
+     * Getter - locations replaced by a newer one before they were scored
+     * @return long
+     */
+    public long getFixesConflated() {
+        return fixesConflated;
+    }
+
+    /**
+     * Getter - package added, replaced and removed broadcasts
+     * @return long
+     */
+    public long getPackageEvents() {
+        return packageEvents;
+    }
+
+    /**
+     * Getter - package scans run after debouncing the package events
+     * @return long
+     */
+    public long getPackageScans() {
+        return packageScans;
+    }
+
+    /**
+     * Getter
+     * @return long
+     */
+    public long getChangesDelivered() {
+        return changesDelivered;
+    }
+
+    /**
+     * Getter - changes replaced or cancelled by a later change before they were delivered
+     * @return long
+     */
+    public long getChangesSuperseded() {
+        return changesSuperseded;
+    }
+
+    /**
+     * Getter - onVerdictChanges calls
+     * @return long
+     */
+    public long getBatchesDelivered() {
+        return batchesDelivered;
+    }
+
+    /**
+     * Getter - times the monitor thread woke up to handle an event
+     * @return long
+     */
+    public long getWakeups() {
+        return wakeups;
+    }
+
+    /**
+     * Getter - CPU time spent on the monitor thread. Package scans run on the scan executor and
+     * are not included
+     * @return long
+     */
+    public long getCpuTimeNanos() {
+        return cpuTimeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "MonitorStats{" +
+                "fixesReceived=" + fixesReceived +
+                ", fixesConflated=" + fixesConflated +
+                ", packageEvents=" + packageEvents +
+                ", packageScans=" + packageScans +
+                ", changesDelivered=" + changesDelivered +
+                ", changesSuperseded=" + changesSuperseded +
+                ", batchesDelivered=" + batchesDelivered +
+                ", wakeups=" + wakeups +
+                ", cpuTimeNanos=" + cpuTimeNanos +
+                '}';
+    }
+}
@@ -0,0 +1,147 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.Signature;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Immutable facts about one installed package, as captured by the last scan of that package
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+final class PackageRecord implements ScannedPackage {
+
+    static final byte[] NO_CERTIFICATES = new byte[0];
+
+    private final String packageName;
+    private final ApplicationInfo applicationInfo;
+    private final long versionCode;
+    private final long lastUpdateTime;
+    private final boolean requestsMockLocation;
+    private final byte[] certificateDigests;
+
+    private PackageRecord(String packageName, ApplicationInfo applicationInfo, long versionCode,
+                          long lastUpdateTime, boolean requestsMockLocation,
+                          byte[] certificateDigests) {
+        this.packageName = packageName;
+        this.applicationInfo = applicationInfo;
+        this.versionCode = versionCode;
+        this.lastUpdateTime = lastUpdateTime;
+        this.requestsMockLocation = requestsMockLocation;
+        this.certificateDigests = certificateDigests;
+    }
+
+    /**
+     * @param packageInfo PackageInfo queried with {@link PackageScanner#PERMISSION_FLAGS} or
+     *                    {@link PackageScanner#CERTIFICATE_FLAGS}
+     * @return PackageRecord
+     */
+    static PackageRecord from(@NonNull PackageInfo packageInfo) {
+        return from(packageInfo,
+                PackageScanner.requestsPermission(packageInfo, PackageScanner.ACCESS_MOCK_LOCATION));
+    }
+
+    /**
+     * @param packageInfo          PackageInfo, permissions not needed
+     * @param requestsMockLocation verdict known from an earlier scan
+     * @return PackageRecord
+     */
+    static PackageRecord from(@NonNull PackageInfo packageInfo, boolean requestsMockLocation) {
+        return from(packageInfo, requestsMockLocation, certificateDigestsOf(packageInfo));
+    }
+
+    /**
+     * @param packageInfo          PackageInfo, permissions and signatures not needed
+     * @param requestsMockLocation verdict known from an earlier scan
+     * @param certificateDigests   digests known from an earlier scan, null if not hashed
+     * @return PackageRecord
+     */
+    static PackageRecord from(@NonNull PackageInfo packageInfo, boolean requestsMockLocation,
+                              @Nullable byte[] certificateDigests) {
+        return new PackageRecord(packageInfo.packageName, packageInfo.applicationInfo,
+                versionCodeOf(packageInfo), packageInfo.lastUpdateTime, requestsMockLocation,
+                certificateDigests);
+    }
+
+    /**
+     * Hashes the signing certificates of a package. On P and later the whole rotation history
+     * is included, so an app that rotated away from a blacklisted key still matches
+     *
+     * @param packageInfo PackageInfo queried with GET_SIGNING_CERTIFICATES (P and later) or
+     *                    GET_SIGNATURES
+     * @return SHA-256 digests packed one after the other, null if the signatures were not
+     * queried
+     */
+    @SuppressWarnings("deprecation")
+    static byte[] certificateDigestsOf(@NonNull PackageInfo packageInfo) {
+        Signature[] signatures = packageInfo.signatures;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P && packageInfo.signingInfo != null)
+            signatures = packageInfo.signingInfo.hasMultipleSigners()
+                    ? packageInfo.signingInfo.getApkContentsSigners()
+                    : packageInfo.signingInfo.getSigningCertificateHistory();
+
+        if (signatures == null) return null;
+        if (signatures.length == 0) return NO_CERTIFICATES;
+
+        byte[] digests = new byte[signatures.length * CertificateDigestIndex.DIGEST_LENGTH];
+        for (int i = 0; i < signatures.length; i++)
+            System.arraycopy(CertificateDigestIndex.sha256(signatures[i].toByteArray()), 0,
+                    digests, i * CertificateDigestIndex.DIGEST_LENGTH,
+                    CertificateDigestIndex.DIGEST_LENGTH);
+
+        return digests;
+    }
+
+    @SuppressWarnings("deprecation")
+    static long versionCodeOf(@NonNull PackageInfo packageInfo) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
+                ? packageInfo.getLongVersionCode()
+                : packageInfo.versionCode;
+    }
+
+    @Override
+    public String getPackageName() {
+        return packageName;
+    }
+
+    ApplicationInfo getApplicationInfo() {
+        return applicationInfo;
+    }
+
+    long getVersionCode() {
+        return versionCode;
+    }
+
+    long getLastUpdateTime() {
+        return lastUpdateTime;
+    }
+
+    @Override
+    public boolean requestsMockLocation() {
+        return requestsMockLocation;
+    }
+
+    @Override
+    public byte[] getCertificateDigests() {
+        return certificateDigests;
+    }
+}
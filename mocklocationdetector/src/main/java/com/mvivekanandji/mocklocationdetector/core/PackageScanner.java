@@ -0,0 +1,506 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Scans installed packages, the permissions they request and the certificates they are signed
+ * with.
+ * <p>
+ * Permissions of every package are fetched with a single
+ * {@link PackageManager#getInstalledPackages(int)} call and matched locally. The framework
+ * returns that list as a ParceledListSlice, which is already split into chunks that fit in a
+ * binder transaction. If the bulk query still fails (e.g. TransactionTooLargeException on
+ * old or heavily loaded devices, surfaced as a RuntimeException) the scanner falls back to
+ * the old one getPackageInfo call per package. Those calls are binder round trips, a scanner
+ * created with a {@link ParallelMatcher} splits them across its threads.
+ * <p>
+ * Signing certificates are only queried and hashed by scanners created with certificates,
+ * i.e. when certificate rules exist, they make every PackageInfo much larger.
+ * <p>
+ * A {@link PackageSource.Listener} sees every package as soon as it is loaded and can stop the
+ * scan, e.g. at the first match of a yes/no check. In the parallel fallback that stops every
+ * thread.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+final class PackageScanner {
+
+    static final String ACCESS_MOCK_LOCATION = PackageRules.ACCESS_MOCK_LOCATION;
+
+    /**
+     * Permissions only, enough for every rule but the certificate rules
+     */
+    static final int PERMISSION_FLAGS = PackageManager.GET_PERMISSIONS;
+
+    /**
+     * Permissions and signing certificates, everything a {@link PackageRecord} is built from
+     */
+    @SuppressWarnings("deprecation")
+    static final int CERTIFICATE_FLAGS = PERMISSION_FLAGS
+            | (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
+            ? PackageManager.GET_SIGNING_CERTIFICATES
+            : PackageManager.GET_SIGNATURES);
+
+    /**
+     * Above this many changed packages one bulk query is cheaper than querying each of them
+     */
+    static final int MAX_CACHE_MISSES = 16;
+
+    private final PackageManager packageManager;
+    private final String ownPackageName;
+    private final Cancellation cancellation;
+    private final boolean withCertificates;
+    private final int packageInfoFlags;
+    private final ParallelMatcher parallelMatcher;
+
+    PackageScanner(@NonNull PackageManager packageManager, @NonNull String ownPackageName) {
+        this(packageManager, ownPackageName, Cancellation.NONE, false);
+    }
+
+    /**
+     * @param cancellation     polled between packages, a cancelled scan returns the packages
+     *                         loaded so far, see {@link Result#isCancelled()}
+     * @param withCertificates true to also query and hash signing certificates, only needed
+     *                         when certificate rules exist
+     */
+    PackageScanner(@NonNull PackageManager packageManager, @NonNull String ownPackageName,
+                   @NonNull Cancellation cancellation, boolean withCertificates) {
+        this(packageManager, ownPackageName, cancellation, withCertificates, null);
+    }
+
+    /**
+     * @param parallelMatcher runs the per-package fallback queries on several threads, null to
+     *                        run them on the calling thread
+     */
+    PackageScanner(@NonNull PackageManager packageManager, @NonNull String ownPackageName,
+                   @NonNull Cancellation cancellation, boolean withCertificates,
+                   @Nullable ParallelMatcher parallelMatcher) {
+        this.packageManager = packageManager;
+        this.ownPackageName = ownPackageName;
+        this.cancellation = cancellation;
+        this.withCertificates = withCertificates;
+        this.packageInfoFlags = withCertificates ? CERTIFICATE_FLAGS : PERMISSION_FLAGS;
+        this.parallelMatcher = parallelMatcher;
+    }
+
+    /**
+     * @return true if the scan this scanner belongs to was cancelled
+     */
+    boolean isCancelled() {
+        return cancellation.isCancelled();
+    }
+
+    /**
+     * @return true if the packages loaded by this scanner carry certificate digests
+     */
+    boolean isWithCertificates() {
+        return withCertificates;
+    }
+
+    /**
+     * Loads every installed package (other than the host app), whether it requests
+     * ACCESS_MOCK_LOCATION and, with certificates, the digests of its signing certificates
+     *
+     * @return Result
+     */
+    Result scan() {
+        return scan((PackageSource.Listener<PackageRecord>) null);
+    }
+
+    /**
+     * Same as {@link #scan()}, handing every package to the listener as soon as it is loaded
+     *
+     * @param packageListener called on the scanning thread, or concurrently on the threads of
+     *                        the {@link ParallelMatcher} when the fallback runs in parallel,
+     *                        null for none
+     * @return Result
+     */
+    Result scan(@Nullable PackageSource.Listener<PackageRecord> packageListener) {
+        return scanAll(packageListener, null);
+    }
+
+    /**
+     * @param verdictCache certificate digests of unchanged packages are reused from it instead
+     *                     of hashing the certificates again, null to hash every package
+     */
+    private Result scanAll(PackageSource.Listener<PackageRecord> packageListener, VerdictCache verdictCache) {
+        Result result = new Result();
+        result.fullScan = true;
+
+        List<PackageInfo> packageInfoList;
+        try {
+            result.packageManagerCalls++;
+            packageInfoList = packageManager.getInstalledPackages(packageInfoFlags);
+        } catch (RuntimeException e) {
+            result.bulkQueryError = e;
+            return scanPerPackage(packageListener, result);
+        }
+
+        for (PackageInfo packageInfo : packageInfoList) {
+            if (cancellation.isCancelled()) {
+                result.cancelled = true;
+                break;
+            }
+            result.packagesExamined++;
+
+            if (packageInfo.applicationInfo == null || ownPackageName.equals(packageInfo.packageName))
+                continue;
+
+            byte[] certificateDigests = verdictCache == null || !withCertificates ? null
+                    : verdictCache.getCertificateDigests(packageInfo.packageName,
+                    PackageRecord.versionCodeOf(packageInfo), packageInfo.lastUpdateTime);
+            PackageRecord packageRecord = certificateDigests == null
+                    ? PackageRecord.from(packageInfo)
+                    : PackageRecord.from(packageInfo, requestsPermission(packageInfo,
+                    ACCESS_MOCK_LOCATION), certificateDigests);
+            result.packages.add(packageRecord);
+            if (stopsAt(packageListener, packageRecord, result)) break;
+        }
+        return result;
+    }
+
+    /**
+     * Loads every installed package (other than the host app), reusing the cached verdict and
+     * certificate digests of packages whose version code and update time did not change. The
+     * package list is queried without permissions and signatures, which is much smaller, and
+     * only changed packages are queried and hashed. A package cached without certificate
+     * digests counts as changed for a scanner with certificates. Falls back to
+     * {@link #scan()} when nothing is cached or too many packages changed
+     *
+     * @param verdictCache VerdictCache
+     * @return Result
+     */
+    Result scan(@NonNull VerdictCache verdictCache) {
+        return scan(verdictCache, null);
+    }
+
+    /**
+     * Same as {@link #scan(VerdictCache)}, handing every package to the listener as soon as it
+     * is loaded or taken from the cache
+     *
+     * @param verdictCache    VerdictCache
+     * @param packageListener Listener, null for none
+     * @return Result
+     */
+    Result scan(@NonNull VerdictCache verdictCache,
+                @Nullable PackageSource.Listener<PackageRecord> packageListener) {
+        if (verdictCache.isEmpty()) return scan(packageListener);
+
+        Result result = new Result();
+        result.fullScan = true;
+        List<PackageInfo> packageInfoList;
+        try {
+            result.packageManagerCalls++;
+            packageInfoList = packageManager.getInstalledPackages(0);
+        } catch (RuntimeException e) {
+            return scan(packageListener);
+        }
+
+        int misses = 0;
+        for (PackageInfo packageInfo : packageInfoList)
+            if (!isCached(verdictCache, packageInfo)) misses++;
+
+        if (misses > MAX_CACHE_MISSES) {
+            Result bulkResult = scanAll(packageListener, verdictCache);
+            bulkResult.packageManagerCalls += result.packageManagerCalls;
+            return bulkResult;
+        }
+
+        for (PackageInfo packageInfo : packageInfoList) {
+            if (cancellation.isCancelled()) {
+                result.cancelled = true;
+                break;
+            }
+
+            if (packageInfo.applicationInfo == null || ownPackageName.equals(packageInfo.packageName)) {
+                result.packagesExamined++;
+                continue;
+            }
+
+            if (isCached(verdictCache, packageInfo)) {
+                int verdict = verdictCache.get(packageInfo.packageName,
+                        PackageRecord.versionCodeOf(packageInfo), packageInfo.lastUpdateTime);
+                result.packagesExamined++;
+                result.cachedVerdicts++;
+                PackageRecord packageRecord = PackageRecord.from(packageInfo,
+                        (verdict & VerdictCache.REQUESTS_MOCK_LOCATION) != 0,
+                        verdictCache.getCertificateDigests(packageInfo.packageName,
+                                PackageRecord.versionCodeOf(packageInfo),
+                                packageInfo.lastUpdateTime));
+                result.packages.add(packageRecord);
+                if (stopsAt(packageListener, packageRecord, result)) break;
+                continue;
+            }
+
+            try {
+                PackageRecord packageRecord = load(packageInfo.packageName, result);
+                result.packages.add(packageRecord);
+                if (stopsAt(packageListener, packageRecord, result)) break;
+            } catch (PackageManager.NameNotFoundException e) {
+                // uninstalled since the list was queried
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return true if the listener stopped the scan at the package
+     */
+    private static boolean stopsAt(PackageSource.Listener<PackageRecord> packageListener, PackageRecord packageRecord,
+                                   Result result) {
+        if (packageListener == null || !packageListener.onPackage(packageRecord)) return false;
+
+        result.stopped = true;
+        return true;
+    }
+
+    private boolean isCached(VerdictCache verdictCache, PackageInfo packageInfo) {
+        long versionCode = PackageRecord.versionCodeOf(packageInfo);
+        if (verdictCache.get(packageInfo.packageName, versionCode, packageInfo.lastUpdateTime)
+                == VerdictCache.MISSING)
+            return false;
+
+        return !withCertificates || verdictCache.getCertificateDigests(packageInfo.packageName,
+                versionCode, packageInfo.lastUpdateTime) != null;
+    }
+
+    /**
+     * Loads a single package
+     *
+     * @param packageName String
+     * @param result      Result the call is counted against
+     * @return PackageRecord
+     * @throws PackageManager.NameNotFoundException if the package is not installed
+     */
+    PackageRecord load(@NonNull String packageName, @NonNull Result result)
+            throws PackageManager.NameNotFoundException {
+        result.packagesExamined++;
+        result.packageManagerCalls++;
+        PackageInfo packageInfo = packageManager.getPackageInfo(packageName, packageInfoFlags);
+        return PackageRecord.from(packageInfo);
+    }
+
+    private Result scanPerPackage(PackageSource.Listener<PackageRecord> packageListener,
+                                  Result result) {
+        result.packageManagerCalls++;
+        List<ApplicationInfo> applicationInfoList = packageManager.getInstalledApplications(0);
+        if (parallelMatcher != null)
+            return scanPerPackageInParallel(applicationInfoList, packageListener, result);
+
+        for (ApplicationInfo applicationInfo : applicationInfoList) {
+            if (cancellation.isCancelled()) {
+                result.cancelled = true;
+                break;
+            }
+
+            if (ownPackageName.equals(applicationInfo.packageName)) {
+                result.packagesExamined++;
+                continue;
+            }
+
+            try {
+                PackageRecord packageRecord = load(applicationInfo.packageName, result);
+                result.packages.add(packageRecord);
+                if (stopsAt(packageListener, packageRecord, result)) break;
+            } catch (PackageManager.NameNotFoundException e) {
+                result.errors.add(e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Same as the sequential fallback, with the getPackageInfo calls split across the threads
+     * of the ParallelMatcher. Packages are added in the order of the application list. When
+     * the listener stops the scan every thread stops after its current call
+     */
+    private Result scanPerPackageInParallel(List<ApplicationInfo> applicationInfoList,
+                                            final PackageSource.Listener<PackageRecord>
+                                                    packageListener,
+                                            Result result) {
+        final ConcurrentHashMap<String, PackageRecord> packageRecords = new ConcurrentHashMap<>();
+        final ConcurrentLinkedQueue<Exception> errors = new ConcurrentLinkedQueue<>();
+        final AtomicInteger packageManagerCalls = new AtomicInteger();
+
+        ParallelMatcher.Match<ApplicationInfo> match = parallelMatcher.findAny(applicationInfoList,
+                new ParallelMatcher.Predicate<ApplicationInfo>() {
+                    @Override
+                    public boolean matches(ApplicationInfo applicationInfo) {
+                        if (ownPackageName.equals(applicationInfo.packageName)) return false;
+
+                        try {
+                            packageManagerCalls.incrementAndGet();
+                            PackageRecord packageRecord = PackageRecord.from(packageManager
+                                    .getPackageInfo(applicationInfo.packageName, packageInfoFlags));
+                            packageRecords.put(applicationInfo.packageName, packageRecord);
+                            return packageListener != null
+                                    && packageListener.onPackage(packageRecord);
+                        } catch (PackageManager.NameNotFoundException e) {
+                            errors.add(e);
+                            return false;
+                        }
+                    }
+                }, cancellation);
+
+        for (ApplicationInfo applicationInfo : applicationInfoList) {
+            PackageRecord packageRecord = packageRecords.get(applicationInfo.packageName);
+            if (packageRecord != null) result.packages.add(packageRecord);
+        }
+        result.errors.addAll(errors);
+        result.packagesExamined += match.getExamined();
+        result.packageManagerCalls += packageManagerCalls.get();
+        if (match.getItem() != null) result.stopped = true;
+        else if (match.getExamined() < applicationInfoList.size()) result.cancelled = true;
+        return result;
+    }
+
+    static boolean requestsPermission(PackageInfo packageInfo, String permission) {
+        return PackageRules.requestsPermission(packageInfo.requestedPermissions, permission);
+    }
+
+    /**
+     * Outcome of a single scan
+     */
+    static final class Result implements PackageSource.Refresh<PackageRecord> {
+        private final List<PackageRecord> packages = new ArrayList<>();
+        private final List<Exception> errors = new ArrayList<>();
+        private RuntimeException bulkQueryError;
+        private int packagesExamined;
+        private int packageManagerCalls;
+        private int cachedVerdicts;
+        private boolean cancelled;
+        private boolean stopped;
+        private boolean fullScan;
+
+        /**
+         * @param packages packages already known, e.g. from a cached snapshot
+         * @return this object
+         */
+        Result withPackages(@NonNull Collection<PackageRecord> packages) {
+            this.packages.clear();
+            this.packages.addAll(packages);
+            return this;
+        }
+
+        /**
+         * @return every package loaded by the scan
+         */
+        @Override
+        public List<PackageRecord> getPackages() {
+            return Collections.unmodifiableList(packages);
+        }
+
+        /**
+         * @return packages that request ACCESS_MOCK_LOCATION
+         */
+        List<ApplicationInfo> getMatches() {
+            List<ApplicationInfo> matches = new ArrayList<>();
+            for (PackageRecord packageRecord : packages)
+                if (packageRecord.requestsMockLocation()) matches.add(packageRecord.getApplicationInfo());
+
+            return matches;
+        }
+
+        void addError(Exception e) {
+            errors.add(e);
+        }
+
+        /**
+         * Packages that were removed between listing and querying them (per-package fallback only)
+         * @return List<Exception>
+         */
+        List<Exception> getErrors() {
+            return Collections.unmodifiableList(errors);
+        }
+
+        /**
+         * @return the exception that made the scanner fall back to per-package queries, or null
+         */
+        RuntimeException getBulkQueryError() {
+            return bulkQueryError;
+        }
+
+        int getPackagesExamined() {
+            return packagesExamined;
+        }
+
+        int getPackageManagerCalls() {
+            return packageManagerCalls;
+        }
+
+        /**
+         * @return true if the scan was cancelled before every package was loaded
+         */
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        void setCancelled() {
+            cancelled = true;
+        }
+
+        /**
+         * @return true if a {@link PackageSource.Listener} stopped the scan before every
+         * package was loaded
+         */
+        @Override
+        public boolean isStopped() {
+            return stopped;
+        }
+
+        /**
+         * @return true if every package was enumerated, false if only changed packages were
+         * reloaded
+         */
+        @Override
+        public boolean isFullScan() {
+            return fullScan;
+        }
+
+        /**
+         * @return packages whose verdict was reused from the {@link VerdictCache}
+         */
+        int getCachedVerdicts() {
+            return cachedVerdicts;
+        }
+
+        /**
+         * PackageManager calls saved compared to one getInstalledApplications call followed by
+         * one getPackageInfo call for every package in the result
+         * @return int
+         */
+        int getIpcCallsSaved() {
+            return Math.max(0, packages.size() + 1 - packageManagerCalls);
+        }
+    }
+}
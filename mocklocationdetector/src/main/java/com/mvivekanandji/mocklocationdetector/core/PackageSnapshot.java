@@ -0,0 +1,259 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.os.Build;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * In-memory snapshot of the installed packages.
+ * <p>
+ * The first refresh does a full scan. Afterwards the snapshot listens for PACKAGE_ADDED,
+ * PACKAGE_REPLACED and PACKAGE_REMOVED broadcasts and only reloads the packages named in them.
+ * A full scan is repeated once the snapshot is older than the configured maximum age or after
+ * {@link #invalidate()}.
+ * <p>
+ * Packages are loaded with the certificates the scanner asks for. A scanner with certificates
+ * reloads packages loaded without them, or rescans if there are many.
+ * <p>
+ * Verdicts are also kept in a {@link VerdictCache} on disk, so the first full scan of a new
+ * process only queries the permissions of packages that changed since the last process.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+final class PackageSnapshot {
+
+    static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final String VERDICT_CACHE_FILE = "mocklocationdetector/verdicts.bin";
+
+    private final Context context;
+    private final Object refreshLock = new Object();
+    private final Set<String> changedPackages =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Map<String, PackageRecord> packages = new HashMap<>();
+
+    private volatile boolean valid;
+    private volatile long maxAgeMillis = DEFAULT_MAX_AGE_MILLIS;
+    private volatile boolean verdictCacheEnabled = true;
+    private VerdictCache verdictCache;
+    private long refreshedAt;
+    private boolean receiverRegistered;
+
+    private final BroadcastReceiver packageChangeReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Uri data = intent.getData();
+            if (data != null) changedPackages.add(data.getSchemeSpecificPart());
+        }
+    };
+
+    PackageSnapshot(@NonNull Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Forces a full rescan on the next refresh
+     */
+    void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * Reloads the package on the next refresh, for callers that receive the package broadcasts
+     * themselves and may see them before this snapshot does
+     *
+     * @param packageName String
+     */
+    void packageChanged(@NonNull String packageName) {
+        changedPackages.add(packageName);
+    }
+
+    /**
+     * @param maxAgeMillis age after which a full rescan is done, 0 to rescan on every refresh
+     */
+    void setMaxAge(long maxAgeMillis) {
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    long getMaxAge() {
+        return maxAgeMillis;
+    }
+
+    /**
+     * @param verdictCacheEnabled false to stop using the verdict cache and delete its file on
+     *                            the next refresh
+     */
+    void setVerdictCacheEnabled(boolean verdictCacheEnabled) {
+        this.verdictCacheEnabled = verdictCacheEnabled;
+    }
+
+    boolean isVerdictCacheEnabled() {
+        return verdictCacheEnabled;
+    }
+
+    /**
+     * Brings the snapshot up to date and returns its packages
+     *
+     * @param packageScanner PackageScanner
+     * @return Result whose statistics only cover the work done by this refresh
+     */
+    PackageScanner.Result refresh(@NonNull PackageScanner packageScanner) {
+        return refresh(packageScanner, null);
+    }
+
+    /**
+     * Same as {@link #refresh(PackageScanner)}. If the refresh rescans every package, the
+     * listener sees them as they are loaded, see {@link PackageScanner.Result#isFullScan()}.
+     * A rescan stopped by the listener keeps the previous snapshot, like a cancelled one
+     *
+     * @param packageScanner  PackageScanner
+     * @param packageListener Listener, null for none
+     * @return Result whose statistics only cover the work done by this refresh
+     */
+    PackageScanner.Result refresh(@NonNull PackageScanner packageScanner,
+                                  @Nullable PackageSource.Listener<PackageRecord>
+                                          packageListener) {
+        synchronized (refreshLock) {
+            registerReceiver();
+            VerdictCache verdictCache = getVerdictCache();
+
+            if (!valid || SystemClock.elapsedRealtime() - refreshedAt >= maxAgeMillis
+                    || (packageScanner.isWithCertificates()
+                    && queueUnhashedPackages() > PackageScanner.MAX_CACHE_MISSES))
+                return rescan(packageScanner, verdictCache, packageListener);
+
+            PackageScanner.Result result = new PackageScanner.Result();
+            if (!changedPackages.isEmpty()) {
+                List<String> changed = new ArrayList<>(changedPackages);
+                changedPackages.removeAll(changed);
+
+                for (int i = 0; i < changed.size(); i++) {
+                    if (packageScanner.isCancelled()) {
+                        // picked up by the next refresh
+                        changedPackages.addAll(changed.subList(i, changed.size()));
+                        result.setCancelled();
+                        break;
+                    }
+
+                    String packageName = changed.get(i);
+                    try {
+                        packages.put(packageName, packageScanner.load(packageName, result));
+                    } catch (PackageManager.NameNotFoundException e) {
+                        packages.remove(packageName);
+                    }
+                }
+                saveVerdicts(verdictCache);
+            }
+            return result.withPackages(packages.values());
+        }
+    }
+
+    /**
+     * Queues the packages loaded without certificate digests, e.g. before the first certificate
+     * rule was added, for reloading
+     *
+     * @return number of packages queued
+     */
+    private int queueUnhashedPackages() {
+        int queued = 0;
+        for (PackageRecord packageRecord : packages.values())
+            if (packageRecord.getCertificateDigests() == null) {
+                changedPackages.add(packageRecord.getPackageName());
+                queued++;
+            }
+        return queued;
+    }
+
+    private PackageScanner.Result rescan(PackageScanner packageScanner, VerdictCache verdictCache,
+                                         PackageSource.Listener<PackageRecord>
+                                                 packageListener) {
+        changedPackages.clear();
+        PackageScanner.Result result = verdictCache != null
+                ? packageScanner.scan(verdictCache, packageListener)
+                : packageScanner.scan(packageListener);
+        // keep the previous snapshot, a partial scan must not replace it
+        if (result.isCancelled() || result.isStopped()) return result;
+
+        packages.clear();
+        for (PackageRecord packageRecord : result.getPackages())
+            packages.put(packageRecord.getPackageName(), packageRecord);
+        saveVerdicts(verdictCache);
+
+        refreshedAt = SystemClock.elapsedRealtime();
+        valid = true;
+        return result;
+    }
+
+    /**
+     * @return VerdictCache, null if disabled
+     */
+    private VerdictCache getVerdictCache() {
+        if (verdictCache == null)
+            verdictCache = new VerdictCache(new File(context.getCacheDir(), VERDICT_CACHE_FILE),
+                    String.valueOf(Build.FINGERPRINT));
+
+        if (verdictCacheEnabled) return verdictCache;
+
+        if (verdictCache.exists()) verdictCache.delete();
+        return null;
+    }
+
+    private void saveVerdicts(VerdictCache verdictCache) {
+        if (verdictCache == null) return;
+
+        for (PackageRecord packageRecord : packages.values())
+            verdictCache.put(packageRecord);
+        verdictCache.retainAll(packages.keySet());
+
+        try {
+            verdictCache.save();
+        } catch (IOException e) {
+            verdictCache.delete();
+        }
+    }
+
+    private void registerReceiver() {
+        if (receiverRegistered) return;
+
+        IntentFilter intentFilter = new IntentFilter();
+        intentFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        intentFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        intentFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        intentFilter.addDataScheme("package");
+        context.registerReceiver(packageChangeReceiver, intentFilter);
+        receiverRegistered = true;
+    }
+}
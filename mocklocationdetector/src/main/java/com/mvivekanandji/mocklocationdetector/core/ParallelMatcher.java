@@ -0,0 +1,214 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Searches a list for any item matching a predicate on several threads, stopping every thread
+ * as soon as one of them finds a match.
+ * <p>
+ * Only worth it when the predicate blocks, like the getPackageInfo binder call of the
+ * per-package fallback of {@link PackageScanner}. Matching records already in memory is
+ * faster on one thread than the hand-off to the helpers.
+ * <p>
+ * The list is split into fixed size chunks that threads claim from a shared cursor, so a
+ * thread that is slowed down (e.g. by a slow PackageManager call) does not hold back the
+ * others. The calling thread takes part in the search, which therefore completes even if the
+ * executor is busy or never runs the helper tasks.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+final class ParallelMatcher {
+
+    static final int DEFAULT_CHUNK_SIZE = 32;
+
+    private final Executor executor;
+    private final int parallelism;
+    private final int chunkSize;
+
+    /**
+     * @param <T> item type
+     */
+    interface Predicate<T> {
+        boolean matches(T item);
+    }
+
+    /**
+     * @param executor    runs the helper threads
+     * @param parallelism number of threads searching, including the calling thread
+     */
+    ParallelMatcher(@NonNull Executor executor, int parallelism) {
+        this(executor, parallelism, DEFAULT_CHUNK_SIZE);
+    }
+
+    ParallelMatcher(@NonNull Executor executor, int parallelism, int chunkSize) {
+        if (parallelism < 1 || chunkSize < 1)
+            throw new IllegalArgumentException("parallelism and chunkSize must be at least 1");
+
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+    }
+
+    int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Shuts the executor down once its running helpers finish, only for an executor created for
+     * this matcher. Searches started afterwards run on the calling thread only
+     */
+    void shutdown() {
+        if (executor instanceof ExecutorService) ((ExecutorService) executor).shutdown();
+    }
+
+    /**
+     * Blocks until a match is found or every item has been examined
+     *
+     * @param items        List, must not change during the search
+     * @param predicate    Predicate, called concurrently
+     * @param cancellation stops the search early, without a match
+     * @return Match
+     * @throws RuntimeException thrown by the predicate, after the other threads have stopped
+     */
+    <T> Match<T> findAny(@NonNull List<T> items, @NonNull Predicate<T> predicate,
+                         @NonNull Cancellation cancellation) {
+        Search<T> search = new Search<>(items, predicate, chunkSize, cancellation);
+
+        for (int i = 1; i < parallelism && i < search.chunkCount; i++) {
+            try {
+                executor.execute(search);
+            } catch (RejectedExecutionException e) {
+                break;
+            }
+        }
+        search.run();
+        search.await();
+
+        if (search.failure.get() != null) throw search.failure.get();
+        return new Match<>(search.match.get(), search.examined.get());
+    }
+
+    /**
+     * Outcome of a search
+     * @param <T> item type
+     */
+    static final class Match<T> {
+        private final T item;
+        private final int examined;
+
+        Match(@Nullable T item, int examined) {
+            this.item = item;
+            this.examined = examined;
+        }
+
+        /**
+         * @return matching item, null if none
+         */
+        @Nullable
+        T getItem() {
+            return item;
+        }
+
+        /**
+         * @return number of items the predicate was called for
+         */
+        int getExamined() {
+            return examined;
+        }
+    }
+
+    private static final class Search<T> implements Runnable {
+        private final List<T> items;
+        private final Predicate<T> predicate;
+        private final int chunkSize;
+        private final int chunkCount;
+        private final Cancellation cancellation;
+
+        private final AtomicInteger nextChunk = new AtomicInteger();
+        private final AtomicInteger examined = new AtomicInteger();
+        private final AtomicReference<T> match = new AtomicReference<>();
+        private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        private int completedChunks;
+
+        Search(List<T> items, Predicate<T> predicate, int chunkSize, Cancellation cancellation) {
+            this.items = items;
+            this.predicate = predicate;
+            this.chunkSize = chunkSize;
+            this.chunkCount = (items.size() + chunkSize - 1) / chunkSize;
+            this.cancellation = cancellation;
+        }
+
+        private boolean isStopped() {
+            return match.get() != null || failure.get() != null || cancellation.isCancelled();
+        }
+
+        @Override
+        public void run() {
+            int chunk;
+            while (!isStopped() && (chunk = nextChunk.getAndIncrement()) < chunkCount) {
+                int start = chunk * chunkSize;
+                int end = Math.min(start + chunkSize, items.size());
+                int chunkExamined = 0;
+
+                try {
+                    for (int i = start; i < end && !isStopped(); i++) {
+                        T item = items.get(i);
+                        chunkExamined++;
+                        if (predicate.matches(item)) {
+                            match.compareAndSet(null, item);
+                            break;
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    examined.addAndGet(chunkExamined);
+                    synchronized (this) {
+                        completedChunks++;
+                        notifyAll();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Waits for the chunks other threads have claimed, which stop early once the search is
+         * stopped. The calling thread only gets here once the cursor is exhausted or the search
+         * stopped, so chunks nobody claimed are never waited for
+         */
+        synchronized void await() {
+            boolean interrupted = false;
+            while (completedChunks < Math.min(nextChunk.get(), chunkCount)) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import android.os.Process;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Runs detector scans on a shared background executor.
+ * <p>
+ * Scans are identified by a key. A request for a key whose scan is already queued or running
+ * joins that scan and receives its result, instead of starting a duplicate scan.
+ * <p>
+ * Every request has a {@link ScanHandle}. A scan is cancelled once every request sharing it
+ * has been cancelled, and stops at the latest deadline of those requests. A request whose own
+ * deadline passes while the scan keeps running for later deadlines is completed at the first
+ * poll of the scan after its deadline, with what the scan found so far if it is a
+ * {@link PartialScan}, otherwise with a TimeoutException.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+final class ScanDispatcher {
+
+    static final int DEFAULT_MAX_SCAN_THREADS = 2;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final Object lock = new Object();
+    private final Map<String, PendingScan<?>> pendingScans = new HashMap<>();
+    private Executor executor;
+
+    /**
+     * Callback for the result of a dispatched scan
+     * @param <T> result type
+     */
+    interface Callback<T> {
+        void onComplete(T result);
+
+        void onError(Exception exception);
+    }
+
+    /**
+     * A scan that polls its {@link Cancellation} between packages
+     * @param <T> result type
+     */
+    interface Scan<T> {
+        T run(@NonNull Cancellation cancellation) throws Exception;
+    }
+
+    /**
+     * A scan that can report what it found so far, to requests whose deadline passes before
+     * the scan finishes
+     * @param <T> result type
+     */
+    interface PartialScan<T> extends Scan<T> {
+
+        /**
+         * Called while run is in progress, on a thread polling the Cancellation
+         * @return result so far
+         */
+        T getPartialResult();
+    }
+
+    /**
+     * Replaces the executor used for scans started after this call
+     * @param executor Executor, null to go back to the default executor
+     */
+    void setExecutor(Executor executor) {
+        synchronized (lock) {
+            this.executor = executor;
+        }
+    }
+
+    /**
+     * Runs the scan, or joins the pending scan with the same key
+     *
+     * @param key        identifies scans that produce the same result
+     * @param scan       Scan
+     * @param callback   receives the result on the scan thread, unless the request is cancelled
+     * @param scanHandle ScanHandle of this request
+     * @return true if a new scan was started, false if the request joined a pending scan
+     */
+    <T> boolean submit(@NonNull String key, @NonNull Scan<T> scan, @NonNull Callback<T> callback,
+                       @NonNull ScanHandle scanHandle) {
+        PendingScan<T> pendingScan;
+
+        synchronized (lock) {
+            @SuppressWarnings("unchecked")
+            PendingScan<T> existing = (PendingScan<T>) pendingScans.get(key);
+            if (existing != null && !existing.cancelled) {
+                existing.join(new Request<>(callback, scanHandle));
+                return false;
+            }
+
+            pendingScan = new PendingScan<>(key, scan);
+            pendingScans.put(key, pendingScan);
+            pendingScan.join(new Request<>(callback, scanHandle));
+
+            if (executor == null)
+                executor = newDefaultExecutor(DEFAULT_MAX_SCAN_THREADS);
+        }
+
+        try {
+            executor.execute(pendingScan);
+        } catch (RejectedExecutionException e) {
+            pendingScan.finish(null, e);
+        }
+        return true;
+    }
+
+    /**
+     * @param maxThreads maximum number of concurrent scan threads
+     * @return bounded executor whose idle threads time out
+     */
+    static ThreadPoolExecutor newDefaultExecutor(int maxThreads) {
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(maxThreads, maxThreads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ScanThreadFactory());
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        return threadPoolExecutor;
+    }
+
+    private static final class Request<T> {
+        private final Callback<T> callback;
+        private final ScanHandle scanHandle;
+
+        Request(Callback<T> callback, ScanHandle scanHandle) {
+            this.callback = callback;
+            this.scanHandle = scanHandle;
+        }
+    }
+
+    private final class PendingScan<T> implements Runnable, Cancellation {
+        private final String key;
+        private final Scan<T> scan;
+        private final List<Request<T>> requests = new ArrayList<>();
+        private volatile boolean cancelled;
+        private volatile long deadlineNanos;
+        private volatile long earliestDeadlineNanos;
+
+        PendingScan(String key, Scan<T> scan) {
+            this.key = key;
+            this.scan = scan;
+        }
+
+        /**
+         * Called with the dispatcher lock held
+         */
+        private void join(final Request<T> request) {
+            requests.add(request);
+            updateDeadlines();
+            request.scanHandle.setOnCancel(new Runnable() {
+                @Override
+                public void run() {
+                    leave(request);
+                }
+            });
+        }
+
+        private void leave(Request<T> request) {
+            synchronized (lock) {
+                if (!requests.remove(request)) return;
+
+                if (requests.isEmpty()) {
+                    cancelled = true;
+                    // later requests start a fresh scan instead of joining this one
+                    if (pendingScans.get(key) == this) pendingScans.remove(key);
+                } else updateDeadlines();
+            }
+        }
+
+        /**
+         * Called with the dispatcher lock held
+         */
+        private void updateDeadlines() {
+            long earliest = Long.MAX_VALUE;
+            long latest = Long.MIN_VALUE;
+            for (Request<T> request : requests) {
+                earliest = Math.min(earliest, request.scanHandle.getDeadlineNanos());
+                latest = Math.max(latest, request.scanHandle.getDeadlineNanos());
+            }
+
+            earliestDeadlineNanos = earliest;
+            deadlineNanos = latest;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            if (cancelled) return true;
+
+            long now = System.nanoTime();
+            // every request has expired, finish delivers what the scan found to all of them
+            long deadline = deadlineNanos;
+            if (deadline != Long.MAX_VALUE && now - deadline > 0) return true;
+
+            long earliestDeadline = earliestDeadlineNanos;
+            if (earliestDeadline != Long.MAX_VALUE && now - earliestDeadline > 0)
+                expireRequests(now);
+            return false;
+        }
+
+        /**
+         * Completes the requests whose deadline passed, the scan keeps running for the others
+         */
+        private void expireRequests(long now) {
+            List<Request<T>> expired = new ArrayList<>();
+            synchronized (lock) {
+                for (Iterator<Request<T>> iterator = requests.iterator(); iterator.hasNext(); ) {
+                    Request<T> request = iterator.next();
+                    long deadline = request.scanHandle.getDeadlineNanos();
+                    if (deadline != Long.MAX_VALUE && now - deadline > 0) {
+                        expired.add(request);
+                        iterator.remove();
+                    }
+                }
+                // the latest deadline passed meanwhile, the scan stops at the next poll
+                if (requests.isEmpty()) {
+                    requests.addAll(expired);
+                    return;
+                }
+                updateDeadlines();
+            }
+            if (expired.isEmpty()) return;
+
+            T partialResult = scan instanceof PartialScan
+                    ? ((PartialScan<T>) scan).getPartialResult()
+                    : null;
+            for (Request<T> request : expired) {
+                if (!request.scanHandle.complete()) continue;
+
+                if (partialResult != null) request.callback.onComplete(partialResult);
+                else request.callback.onError(new TimeoutException(
+                        "Scan did not finish before the deadline of the request"));
+            }
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                finish(null, null);
+                return;
+            }
+
+            T result = null;
+            Exception error = null;
+            try {
+                result = scan.run(this);
+            } catch (Exception e) {
+                error = e;
+            }
+            finish(result, error);
+        }
+
+        private void finish(T result, Exception error) {
+            List<Request<T>> joined;
+            synchronized (lock) {
+                if (pendingScans.get(key) == this) pendingScans.remove(key);
+                joined = new ArrayList<>(requests);
+                requests.clear();
+            }
+
+            for (Request<T> request : joined) {
+                if (!request.scanHandle.complete()) continue;
+
+                if (error == null) request.callback.onComplete(result);
+                else request.callback.onError(error);
+            }
+        }
+    }
+
+    private static final class ScanThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull final Runnable runnable) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, "MockLocationDetector-scan-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
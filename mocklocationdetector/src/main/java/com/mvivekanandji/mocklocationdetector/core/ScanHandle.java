@@ -0,0 +1,108 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Handle of a scan requested from {@link MockLocationDetector}, e.g. to cancel it when the
+ * screen that requested it goes away. Once cancelled the listener is never called.
+ * <p>
+ * Requests for the same scan share it, the shared scan only stops once every request
+ * sharing it has been cancelled.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+public final class ScanHandle {
+
+    private static final int PENDING = 0;
+    private static final int DONE = 1;
+    private static final int CANCELLED = 2;
+
+    private final AtomicInteger state = new AtomicInteger(PENDING);
+    private final long deadlineNanos;
+    private volatile Runnable onCancel;
+
+    /**
+     * @param deadlineNanos System.nanoTime() after which the scan should stop,
+     *                      Long.MAX_VALUE for no deadline
+     */
+    ScanHandle(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * Cancels the request. Does nothing if the listener has already been called
+     * @return true if the request was cancelled by this call
+     */
+    public boolean cancel() {
+        if (!state.compareAndSet(PENDING, CANCELLED)) return false;
+
+        Runnable runnable = onCancel;
+        if (runnable != null) runnable.run();
+        return true;
+    }
+
+    /**
+     * Getter
+     * @return true if the request was cancelled before its listener was called
+     */
+    public boolean isCancelled() {
+        return state.get() == CANCELLED;
+    }
+
+    /**
+     * Getter
+     * @return true once the listener has been called or the request was cancelled
+     */
+    public boolean isDone() {
+        return state.get() != PENDING;
+    }
+
+    long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+
+    /**
+     * @param onCancel run when the request is cancelled
+     */
+    void setOnCancel(Runnable onCancel) {
+        this.onCancel = onCancel;
+        // cancelled before the dispatcher registered the request
+        if (isCancelled()) onCancel.run();
+    }
+
+    /**
+     * Claims the right to call the listener, at most once
+     * @return false if the request was cancelled or already completed
+     */
+    boolean complete() {
+        return state.compareAndSet(PENDING, DONE);
+    }
+
+    /**
+     * @param timeoutMillis timeout, 0 for none
+     * @return deadline for the given timeout, see {@link #ScanHandle(long)}
+     */
+    static long deadlineAfter(long timeoutMillis) {
+        if (timeoutMillis < 0)
+            throw new IllegalArgumentException("timeoutMillis must not be negative");
+
+        return timeoutMillis == 0 ? Long.MAX_VALUE
+                : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+}
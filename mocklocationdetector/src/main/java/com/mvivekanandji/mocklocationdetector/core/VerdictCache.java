@@ -0,0 +1,348 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Per-package scan verdicts and signing certificate digests kept on disk across processes,
+ * keyed by package name, version code and last update time.
+ * <p>
+ * The file is a header followed by append-only records, each with its own CRC32. Later records
+ * for a package replace earlier ones. Reading stops at the first truncated or corrupt record,
+ * so a write interrupted by the process dying loses only that record. Once the file holds
+ * mostly replaced or stale records it is compacted into a temporary file, which is synced and
+ * renamed over the old one.
+ * <p>
+ * The cache is dropped when the OS build changes. Not thread safe, {@link PackageSnapshot}
+ * only uses it under its refresh lock.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+final class VerdictCache {
+
+    static final int MISSING = -1;
+    static final int REQUESTS_MOCK_LOCATION = 1;
+    /**
+     * The certificates of the package were hashed, as opposed to hashed to nothing
+     */
+    static final int CERTIFICATES_HASHED = 1 << 1;
+
+    private static final int MAGIC = 0x4d4c5643;   // "MLVC"
+    private static final int FORMAT_VERSION = 2;
+    private static final int MIN_RECORDS_TO_COMPACT = 64;
+
+    private final File file;
+    private final String buildFingerprint;
+    private final Map<String, Verdict> verdicts = new HashMap<>();
+    private final List<String> unsaved = new ArrayList<>();
+
+    private boolean loaded;
+    private int staleRecords;
+    private boolean corrupt;
+
+    /**
+     * @param file             cache file, created on the first save
+     * @param buildFingerprint fingerprint of the OS build, the cache is dropped when it changes
+     */
+    VerdictCache(@NonNull File file, @NonNull String buildFingerprint) {
+        this.file = file;
+        this.buildFingerprint = buildFingerprint;
+    }
+
+    /**
+     * @return true if no verdict is cached, e.g. on the first run
+     */
+    boolean isEmpty() {
+        load();
+        return verdicts.isEmpty();
+    }
+
+    /**
+     * @return verdict flags of the package, or {@link #MISSING} if the package changed since
+     * it was cached or was never cached
+     */
+    int get(@NonNull String packageName, long versionCode, long lastUpdateTime) {
+        load();
+        Verdict verdict = verdicts.get(packageName);
+        if (verdict == null || verdict.versionCode != versionCode
+                || verdict.lastUpdateTime != lastUpdateTime)
+            return MISSING;
+
+        return verdict.flags;
+    }
+
+    /**
+     * @return SHA-256 digests of the signing certificates of the package, packed, or null if
+     * the package changed since it was cached, was never cached or was cached without them
+     */
+    byte[] getCertificateDigests(@NonNull String packageName, long versionCode,
+                                 long lastUpdateTime) {
+        load();
+        Verdict verdict = verdicts.get(packageName);
+        if (verdict == null || verdict.versionCode != versionCode
+                || verdict.lastUpdateTime != lastUpdateTime)
+            return null;
+
+        return verdict.certificateDigests;
+    }
+
+    /**
+     * Caches the verdict of a scanned package, written on the next {@link #save()}
+     *
+     * @param packageRecord PackageRecord
+     */
+    void put(@NonNull PackageRecord packageRecord) {
+        load();
+        Verdict verdict = new Verdict(packageRecord.getVersionCode(),
+                packageRecord.getLastUpdateTime(),
+                (packageRecord.requestsMockLocation() ? REQUESTS_MOCK_LOCATION : 0)
+                        | (packageRecord.getCertificateDigests() != null ? CERTIFICATES_HASHED : 0),
+                packageRecord.getCertificateDigests());
+
+        Verdict previous = verdicts.put(packageRecord.getPackageName(), verdict);
+        if (!verdict.equals(previous)) {
+            unsaved.add(packageRecord.getPackageName());
+            if (previous != null) staleRecords++;
+        }
+    }
+
+    /**
+     * Forgets packages that are no longer installed
+     *
+     * @param packageNames every installed package
+     */
+    void retainAll(@NonNull Collection<String> packageNames) {
+        load();
+        Iterator<String> iterator = verdicts.keySet().iterator();
+        while (iterator.hasNext())
+            if (!packageNames.contains(iterator.next())) {
+                iterator.remove();
+                staleRecords++;
+            }
+    }
+
+    /**
+     * Appends the verdicts changed since the last save, or rewrites the file if it is corrupt
+     * or holds more replaced and removed records than live ones
+     *
+     * @throws IOException if writing fails, the cache should then be deleted
+     */
+    void save() throws IOException {
+        if (unsaved.isEmpty() && !corrupt) return;
+
+        if (corrupt || !file.exists()
+                || staleRecords > Math.max(MIN_RECORDS_TO_COMPACT, verdicts.size()))
+            compact();
+        else
+            append();
+
+        unsaved.clear();
+    }
+
+    /**
+     * Forgets every verdict and deletes the file
+     */
+    void delete() {
+        verdicts.clear();
+        unsaved.clear();
+        staleRecords = 0;
+        corrupt = false;
+        loaded = true;
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    boolean exists() {
+        return file.exists();
+    }
+
+    //region file
+
+    private void load() {
+        if (loaded) return;
+        loaded = true;
+        if (!file.exists()) return;
+
+        try (DataInputStream inputStream = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+
+            if (inputStream.readInt() != MAGIC || inputStream.readInt() != FORMAT_VERSION
+                    || !buildFingerprint.equals(inputStream.readUTF())) {
+                delete();
+                return;
+            }
+
+            CRC32 crc32 = new CRC32();
+            while (true) {
+                inputStream.mark(1);
+                if (inputStream.read() < 0) break;
+                inputStream.reset();
+
+                String packageName = inputStream.readUTF();
+                long versionCode = inputStream.readLong();
+                long lastUpdateTime = inputStream.readLong();
+                int flags = inputStream.readByte();
+                byte[] certificateDigests = new byte[inputStream.readUnsignedShort()];
+                inputStream.readFully(certificateDigests);
+                int checksum = inputStream.readInt();
+
+                Verdict verdict = new Verdict(versionCode, lastUpdateTime, flags,
+                        (flags & CERTIFICATES_HASHED) == 0
+                                ? null
+                                : certificateDigests.length == 0
+                                ? PackageRecord.NO_CERTIFICATES
+                                : certificateDigests);
+                crc32.reset();
+                crc32.update(encode(packageName, verdict));
+                if ((int) crc32.getValue() != checksum) {
+                    corrupt = true;
+                    break;
+                }
+
+                if (verdicts.put(packageName, verdict) != null)
+                    staleRecords++;
+            }
+
+        } catch (EOFException e) {
+            // torn last record, appending after it would hide every later record
+            corrupt = true;
+        } catch (IOException e) {
+            delete();
+        }
+    }
+
+    private void append() throws IOException {
+        try (FileOutputStream fileOutputStream = new FileOutputStream(file, true)) {
+            DataOutputStream outputStream = new DataOutputStream(
+                    new BufferedOutputStream(fileOutputStream));
+            for (String packageName : unsaved)
+                writeRecord(outputStream, packageName, verdicts.get(packageName));
+
+            outputStream.flush();
+            fileOutputStream.getFD().sync();
+        }
+    }
+
+    private void compact() throws IOException {
+        File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Cannot create " + directory);
+
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fileOutputStream = new FileOutputStream(temporaryFile)) {
+            DataOutputStream outputStream = new DataOutputStream(
+                    new BufferedOutputStream(fileOutputStream));
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(FORMAT_VERSION);
+            outputStream.writeUTF(buildFingerprint);
+            for (Map.Entry<String, Verdict> entry : verdicts.entrySet())
+                writeRecord(outputStream, entry.getKey(), entry.getValue());
+
+            outputStream.flush();
+            fileOutputStream.getFD().sync();
+        }
+
+        if (!temporaryFile.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            temporaryFile.delete();
+            throw new IOException("Cannot replace " + file);
+        }
+        staleRecords = 0;
+        corrupt = false;
+    }
+
+    private static void writeRecord(DataOutputStream outputStream, String packageName,
+                                    Verdict verdict) throws IOException {
+        byte[] record = encode(packageName, verdict);
+        CRC32 crc32 = new CRC32();
+        crc32.update(record);
+
+        outputStream.write(record);
+        outputStream.writeInt((int) crc32.getValue());
+    }
+
+    private static byte[] encode(String packageName, Verdict verdict) throws IOException {
+        byte[] certificateDigests = verdict.certificateDigests != null
+                ? verdict.certificateDigests
+                : PackageRecord.NO_CERTIFICATES;
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(
+                64 + certificateDigests.length);
+        DataOutputStream outputStream = new DataOutputStream(byteArrayOutputStream);
+        outputStream.writeUTF(packageName);
+        outputStream.writeLong(verdict.versionCode);
+        outputStream.writeLong(verdict.lastUpdateTime);
+        outputStream.writeByte(verdict.flags);
+        outputStream.writeShort(certificateDigests.length);
+        outputStream.write(certificateDigests);
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    //endregion
+
+    private static final class Verdict {
+        private final long versionCode;
+        private final long lastUpdateTime;
+        private final int flags;
+        private final byte[] certificateDigests;
+
+        Verdict(long versionCode, long lastUpdateTime, int flags, byte[] certificateDigests) {
+            this.versionCode = versionCode;
+            this.lastUpdateTime = lastUpdateTime;
+            this.flags = flags;
+            this.certificateDigests = certificateDigests;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Verdict)) return false;
+
+            Verdict verdict = (Verdict) o;
+            return versionCode == verdict.versionCode
+                    && lastUpdateTime == verdict.lastUpdateTime
+                    && flags == verdict.flags
+                    && Arrays.equals(certificateDigests, verdict.certificateDigests);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = (int) (versionCode ^ (versionCode >>> 32));
+            result = 31 * result + (int) (lastUpdateTime ^ (lastUpdateTime >>> 32));
+            result = 31 * result + flags;
+            return 31 * result + Arrays.hashCode(certificateDigests);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * A verdict reported by a {@link DetectionMonitor} that changed since it was last reported
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+public final class VerdictChange {
+
+    public enum Kind {
+        /**
+         * The latest location is, or stopped being, mocked or an impossible jump
+         */
+        LOCATION,
+
+        /**
+         * A mock app was installed, removed or updated
+         */
+        MOCK_APP
+    }
+
+    private static final String LOCATION_KEY = "location";
+
+    private final Kind kind;
+    private final boolean detected;
+    private final int fixFlags;
+    private final MockApp mockApp;
+    private final long elapsedRealtimeNanos;
+
+    private VerdictChange(Kind kind, boolean detected, int fixFlags, MockApp mockApp,
+                          long elapsedRealtimeNanos) {
+        this.kind = kind;
+        this.detected = detected;
+        this.fixFlags = fixFlags;
+        this.mockApp = mockApp;
+        this.elapsedRealtimeNanos = elapsedRealtimeNanos;
+    }
+
+    static VerdictChange location(boolean detected, int fixFlags, long elapsedRealtimeNanos) {
+        return new VerdictChange(Kind.LOCATION, detected, fixFlags, null, elapsedRealtimeNanos);
+    }
+
+    static VerdictChange mockApp(@NonNull MockApp mockApp, boolean detected,
+                                 long elapsedRealtimeNanos) {
+        return new VerdictChange(Kind.MOCK_APP, detected, 0, mockApp, elapsedRealtimeNanos);
+    }
+
+    /**
+     * Getter
+     * @return Kind
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Getter - true if the location is suspicious or the mock app is installed, false if the
+     * location became plausible again or the app was removed
+     * @return boolean
+     */
+    public boolean isDetected() {
+        return detected;
+    }
+
+    /**
+     * Getter - rules that fired for the location, a combination of the FixScorer flag
+     * constants. 0 for MOCK_APP changes
+     * @return int
+     */
+    public int getFixFlags() {
+        return fixFlags;
+    }
+
+    /**
+     * Getter - the app for MOCK_APP changes. For a removed app this is the app as it was
+     * last detected
+     * @return MockApp, null for LOCATION changes
+     */
+    @Nullable
+    public MockApp getMockApp() {
+        return mockApp;
+    }
+
+    /**
+     * Getter - SystemClock.elapsedRealtimeNanos() when the change was detected
+     * @return long
+     */
+    public long getElapsedRealtimeNanos() {
+        return elapsedRealtimeNanos;
+    }
+
+    /**
+     * @return identity of the verdict, later changes with the same key replace earlier ones
+     */
+    String getKey() {
+        return kind == Kind.LOCATION ? LOCATION_KEY : mockApp.getPackageName();
+    }
+
+    /**
+     * @return true if both changes report the same verdict, so the later one is not news
+     */
+    boolean isSameVerdict(@NonNull VerdictChange verdictChange) {
+        if (detected != verdictChange.detected) return false;
+        return kind == Kind.LOCATION || !detected
+                || mockApp.getMatchedRules().equals(verdictChange.mockApp.getMatchedRules());
+    }
+
+    @Override
+    public String toString() {
+        return "VerdictChange{" +
+                "kind=" + kind +
+                ", detected=" + detected +
+                (kind == Kind.LOCATION
+                        ? ", fixFlags=" + fixFlags
+                        : ", packageName=" + mockApp.getPackageName()) +
+                '}';
+    }
+}
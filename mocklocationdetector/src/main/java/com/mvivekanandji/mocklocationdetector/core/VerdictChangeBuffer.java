@@ -0,0 +1,84 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Verdict changes waiting to be delivered by a {@link DetectionMonitor}.
+ * <p>
+ * Holds at most one change per verdict, a later change replaces the pending one. A change that
+ * restores the last delivered verdict cancels the pending one instead, so a verdict flapping
+ * between deliveries is not reported at all. Memory is bounded by the number of distinct
+ * verdicts, however fast changes arrive. Not thread safe.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+final class VerdictChangeBuffer {
+
+    private final Map<String, VerdictChange> pending = new LinkedHashMap<>();
+    private final Map<String, VerdictChange> delivered = new HashMap<>();
+    private volatile long superseded;   // read by DetectionMonitor.getStats()
+
+    /**
+     * @param verdictChange VerdictChange
+     * @return true if the change is pending delivery
+     */
+    boolean add(@NonNull VerdictChange verdictChange) {
+        String key = verdictChange.getKey();
+        if (pending.remove(key) != null) superseded++;
+
+        VerdictChange last = delivered.get(key);
+        boolean news = last == null
+                ? verdictChange.isDetected()
+                : !last.isSameVerdict(verdictChange);
+        if (news) pending.put(key, verdictChange);
+
+        return news;
+    }
+
+    boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    /**
+     * @return pending changes in the order they were first added, which are then considered
+     * delivered
+     */
+    List<VerdictChange> drain() {
+        List<VerdictChange> verdictChanges = new ArrayList<>(pending.values());
+        pending.clear();
+
+        for (VerdictChange verdictChange : verdictChanges)
+            if (verdictChange.isDetected()) delivered.put(verdictChange.getKey(), verdictChange);
+            else delivered.remove(verdictChange.getKey());
+
+        return verdictChanges;
+    }
+
+    /**
+     * @return changes replaced or cancelled before they were delivered
+     */
+    long getSuperseded() {
+        return superseded;
+    }
+}
@@ -0,0 +1,29 @@
+package com.mvivekanandji.mocklocationdetector.interfaces;
+
+/**
+ * Receives detector metrics as they are recorded, e.g. to forward them to an analytics
+ * backend. Called synchronously on the thread that did the work, keep it cheap
+ */
+public interface MetricsSink {
+
+    /**
+     * Called after every scan and check
+     *
+     * @param wallTimeNanos       long, time from the start of the scan to its result
+     * @param packagesExamined    int, packages whose PackageInfo was read
+     * @param packageManagerCalls int, PackageManager calls made
+     * @param cachedVerdicts      int, packages whose verdict was reused from disk
+     * @param fullScan            boolean, false if only changed packages were reloaded
+     */
+    void onScan(long wallTimeNanos, int packagesExamined, int packageManagerCalls,
+                int cachedVerdicts, boolean fullScan);
+
+    /**
+     * Called when the blacklist is loaded, i.e. on first use and after the blacklist file changed
+     *
+     * @param ruleCount              int, package rules including the ones added at runtime
+     * @param certificateDigestCount int, signing certificate digests
+     * @param loadTimeNanos          long
+     */
+    void onBlacklistLoaded(int ruleCount, int certificateDigestCount, long loadTimeNanos);
+}
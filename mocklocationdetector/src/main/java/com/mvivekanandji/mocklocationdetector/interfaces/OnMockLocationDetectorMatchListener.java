@@ -0,0 +1,30 @@
+package com.mvivekanandji.mocklocationdetector.interfaces;
+
+import com.mvivekanandji.mocklocationdetector.core.MockApp;
+
+import java.util.List;
+
+public interface OnMockLocationDetectorMatchListener {
+
+    /**
+     * Called as soon as matching packages are found, possibly several times per scan
+     *
+     * @param mockApps List<MockApp>, never empty
+     */
+    void onMatches(List<MockApp> mockApps);
+
+    /**
+     * Called once after the last onMatches
+     *
+     * @param mockAppCount     int, total number of matches delivered
+     * @param packagesExamined int
+     * @param complete         boolean, false if the scan timed out
+     */
+    void onComplete(int mockAppCount, int packagesExamined, boolean complete);
+
+    /**
+     *
+     * @param exception Exception
+     */
+    void onError(Exception exception);
+}
@@ -0,0 +1,22 @@
+package com.mvivekanandji.mocklocationdetector.interfaces;
+
+import com.mvivekanandji.mocklocationdetector.core.VerdictChange;
+
+import java.util.List;
+
+public interface OnMockLocationDetectorMonitorListener {
+
+    /**
+     * Called with the verdicts that changed since the previous call. At most one call is in
+     * progress at a time, changes made meanwhile are merged into the next call
+     *
+     * @param verdictChanges List<VerdictChange>, never empty
+     */
+    void onVerdictChanges(List<VerdictChange> verdictChanges);
+
+    /**
+     *
+     * @param exception Exception
+     */
+    void onError(Exception exception);
+}
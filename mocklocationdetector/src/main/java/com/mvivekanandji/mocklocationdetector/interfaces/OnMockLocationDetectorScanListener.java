@@ -0,0 +1,18 @@
+package com.mvivekanandji.mocklocationdetector.interfaces;
+
+import com.mvivekanandji.mocklocationdetector.core.MockAppScanResult;
+
+public interface OnMockLocationDetectorScanListener {
+
+    /**
+     *
+     * @param mockAppScanResult MockAppScanResult
+     */
+    void onResult(MockAppScanResult mockAppScanResult);
+
+    /**
+     *
+     * @param exception Exception
+     */
+    void onError(Exception exception);
+}
@@ -0,0 +1,112 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.EnumSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Lazy loading and caching of application labels by {@link AppLabelCache}
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.P)
+public class AppLabelCacheTest {
+
+    private static final String PACKAGE_NAME = "com.example.fakegps";
+
+    private DetectorMetrics detectorMetrics;
+    private AppLabelCache appLabelCache;
+
+    @Before
+    public void setUp() {
+        detectorMetrics = new DetectorMetrics();
+        detectorMetrics.setEnabled(true);
+        appLabelCache = new AppLabelCache(mock(PackageManager.class), detectorMetrics);
+    }
+
+    @Test
+    public void label_isOnlyLoadedWhenAskedFor() {
+        LabelledApplicationInfo applicationInfo = new LabelledApplicationInfo("Fake GPS");
+
+        MockApp mockApp = mockApp(applicationInfo, 1, 100);
+        assertEquals(PACKAGE_NAME, mockApp.getPackageName());
+        assertEquals(0, applicationInfo.loads);
+
+        assertEquals("Fake GPS", mockApp.getLabel());
+        assertEquals(1, applicationInfo.loads);
+    }
+
+    @Test
+    public void label_isCachedPerPackageVersion() {
+        LabelledApplicationInfo applicationInfo = new LabelledApplicationInfo("Fake GPS");
+
+        assertEquals("Fake GPS", mockApp(applicationInfo, 1, 100).getLabel());
+        // a later scan of the same version
+        assertEquals("Fake GPS", mockApp(applicationInfo, 1, 100).getLabel());
+        assertEquals(1, applicationInfo.loads);
+        assertEquals(0.5, detectorMetrics.getLabelCacheHitRate(), 0);
+
+        applicationInfo.label = "Fake GPS Pro";
+        assertEquals("Fake GPS Pro", mockApp(applicationInfo, 2, 200).getLabel());
+        assertEquals(2, applicationInfo.loads);
+        // reinstalled with the same version code
+        assertEquals("Fake GPS Pro", mockApp(applicationInfo, 2, 300).getLabel());
+        assertEquals(3, applicationInfo.loads);
+    }
+
+    @Test
+    public void packageRemovedBeforeTheLabelIsLoaded_fallsBackToThePackageName() {
+        LabelledApplicationInfo applicationInfo = new LabelledApplicationInfo("Fake GPS");
+        MockApp mockApp = mockApp(applicationInfo, 1, 100);
+
+        // the framework returns the package name once the app's resources are gone
+        applicationInfo.label = null;
+        assertEquals(PACKAGE_NAME, mockApp.getLabel());
+
+        // installed again, the new install is loaded instead of the cached fallback
+        applicationInfo.label = "Fake GPS";
+        assertEquals("Fake GPS", mockApp(applicationInfo, 1, 200).getLabel());
+        assertEquals(2, applicationInfo.loads);
+    }
+
+    private MockApp mockApp(ApplicationInfo applicationInfo, int versionCode, long lastUpdateTime) {
+        PackageInfo packageInfo = new PackageInfo();
+        packageInfo.packageName = PACKAGE_NAME;
+        packageInfo.applicationInfo = applicationInfo;
+        packageInfo.versionCode = versionCode;
+        packageInfo.lastUpdateTime = lastUpdateTime;
+
+        return new MockApp(PackageRecord.from(packageInfo, true, null),
+                EnumSet.of(DetectionRule.KNOWN_MOCK_APP), appLabelCache);
+    }
+
+    /**
+     * Label loaded from stand-in resources, null once the package has been removed
+     */
+    private static final class LabelledApplicationInfo extends ApplicationInfo {
+        private String label;
+        private int loads;
+
+        LabelledApplicationInfo(String label) {
+            this.label = label;
+            this.packageName = PACKAGE_NAME;
+        }
+
+        @Override
+        public CharSequence loadLabel(PackageManager packageManager) {
+            loads++;
+            return label != null ? label : packageName;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Pins the compileBlacklist Gradle task, which duplicates the writer in build.gradle, to
+ * {@link BlacklistIndex#writeTo}. Unit tests run after preBuild, so the compiled asset exists
+ */
+public class CompiledBlacklistFormatTest {
+
+    private static final File SOURCE = new File("src/main/blacklist/BlackListApps.txt");
+    private static final File COMPILED =
+            new File("build/generated/blacklist/assets/" + BlacklistLoader.ASSET_NAME);
+
+    @Test
+    public void gradleTaskOutput_matchesWriteToByteForByte() throws IOException {
+        assertTrue("Run the compileBlacklist task first: " + COMPILED.getAbsolutePath(),
+                COMPILED.isFile());
+
+        BlacklistIndex expected = new BlacklistIndex.Builder().addAll(readLines(SOURCE)).build();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        expected.writeTo(outputStream);
+
+        byte[] compiled = readFully(COMPILED);
+        assertArrayEquals(outputStream.toByteArray(), compiled);
+        assertEquals(expected.getRules(), BlacklistIndex.read(ByteBuffer.wrap(compiled)).getRules());
+    }
+
+    private static List<String> readLines(File file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (Scanner scanner = new Scanner(file, Charset.forName("US-ASCII").name())) {
+            while (scanner.hasNextLine()) lines.add(scanner.nextLine());
+        }
+        return lines;
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            byte[] bytes = new byte[(int) randomAccessFile.length()];
+            randomAccessFile.readFully(bytes);
+            return bytes;
+        }
+    }
+}
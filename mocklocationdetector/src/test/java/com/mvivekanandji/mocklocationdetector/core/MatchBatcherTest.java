@@ -0,0 +1,109 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+
+import com.mvivekanandji.mocklocationdetector.interfaces.OnMockLocationDetectorMatchListener;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Batching and cancellation of streamed matches
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.P)
+public class MatchBatcherTest {
+
+    private final Executor directExecutor = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    private AppLabelCache appLabelCache;
+    private RecordingListener listener;
+
+    @Before
+    public void setUp() {
+        appLabelCache = new AppLabelCache(mock(PackageManager.class));
+        listener = new RecordingListener();
+    }
+
+    @Test
+    public void firstMatchAlone_thenFullBatches() {
+        MatchBatcher matchBatcher = new MatchBatcher(directExecutor, 4, listener,
+                new ScanHandle(Long.MAX_VALUE));
+
+        for (int i = 0; i < 10; i++) matchBatcher.add(mockApp("com.example.mock" + i));
+        matchBatcher.complete(300, true);
+
+        List<Integer> expected = new ArrayList<>();
+        expected.add(1);
+        expected.add(4);
+        expected.add(4);
+        expected.add(1);
+        assertEquals(expected, listener.batchSizes);
+        assertEquals(10, listener.completedCount);
+    }
+
+    @Test
+    public void cancelledRequest_deliversNothing() {
+        ScanHandle scanHandle = new ScanHandle(Long.MAX_VALUE);
+        MatchBatcher matchBatcher = new MatchBatcher(directExecutor, 4, listener, scanHandle);
+
+        matchBatcher.add(mockApp("com.example.mock"));
+        scanHandle.cancel();
+        matchBatcher.add(mockApp("com.example.other"));
+        matchBatcher.complete(300, true);
+
+        assertEquals(1, listener.batchSizes.size());
+        assertTrue(listener.completedCount < 0);
+    }
+
+    private MockApp mockApp(String packageName) {
+        PackageInfo packageInfo = new PackageInfo();
+        packageInfo.packageName = packageName;
+        packageInfo.applicationInfo = new ApplicationInfo();
+        packageInfo.applicationInfo.packageName = packageName;
+        return new MockApp(PackageRecord.from(packageInfo, true),
+                EnumSet.of(DetectionRule.MOCK_LOCATION_PERMISSION), appLabelCache);
+    }
+
+    private static final class RecordingListener implements OnMockLocationDetectorMatchListener {
+        private final List<Integer> batchSizes = new ArrayList<>();
+        private int completedCount = -1;
+
+        @Override
+        public void onMatches(List<MockApp> mockApps) {
+            batchSizes.add(mockApps.size());
+        }
+
+        @Override
+        public void onComplete(int mockAppCount, int packagesExamined, boolean complete) {
+            completedCount = mockAppCount;
+        }
+
+        @Override
+        public void onError(Exception exception) {
+            throw new AssertionError(exception);
+        }
+    }
+}
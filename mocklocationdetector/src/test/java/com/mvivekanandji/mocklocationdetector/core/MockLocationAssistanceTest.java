@@ -0,0 +1,184 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import android.location.Location;
+import android.location.LocationManager;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Ordering and short-circuiting of the {@link MockLocationAssistance} pipeline and false
+ * positives of its built-in checks
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.P)
+public class MockLocationAssistanceTest {
+
+    private static final int EXPENSIVE = 1 << 8;
+    private static final int CHEAP = 1 << 9;
+
+    @Test
+    public void consistentGpsFix_firesNothing() {
+        MockLocationAssistance mockLocationAssistance = new MockLocationAssistance();
+
+        assertEquals(0f, mockLocationAssistance.evaluate(gpsFix(12, 3.5f)), 0f);
+        assertEquals(0, mockLocationAssistance.getLastSignals());
+        assertEquals(4, mockLocationAssistance.getLastChecksRun());
+    }
+
+    @Test
+    public void fixWithoutSatellitesAndFrozenValues_addsUpWeights() {
+        MockLocationAssistance mockLocationAssistance = new MockLocationAssistance();
+
+        float score = 0;
+        for (int i = 0; i < MockLocationAssistance.DEFAULT_REPEATED_FIXES; i++)
+            score = mockLocationAssistance.evaluate(gpsFix(0, 5f));
+
+        assertEquals(0.6f, score, 1e-6f);
+        assertEquals(MockLocationAssistance.SATELLITES | MockLocationAssistance.REPEATED_VALUES,
+                mockLocationAssistance.getLastSignals());
+    }
+
+    @Test
+    public void reachedThreshold_skipsExpensiveChecks() {
+        final int[] expensiveRuns = new int[1];
+        MockLocationAssistance mockLocationAssistance = new MockLocationAssistance.Builder()
+                .setThreshold(0.5f)
+                .addCheck(EXPENSIVE, 1f, 100, new MockLocationAssistance.Check() {
+                    @Override
+                    public boolean isFired(@NonNull Location location) {
+                        expensiveRuns[0]++;
+                        return true;
+                    }
+                })
+                .addSatellitesCheck(0.5f, MockLocationAssistance.DEFAULT_MIN_SATELLITES)
+                .build();
+
+        assertEquals(0.5f, mockLocationAssistance.evaluate(gpsFix(0, 3.5f)), 0f);
+        assertEquals(MockLocationAssistance.SATELLITES, mockLocationAssistance.getLastSignals());
+        assertEquals(1, mockLocationAssistance.getLastChecksRun());
+        assertEquals(0, expensiveRuns[0]);
+
+        assertEquals(1f, mockLocationAssistance.evaluate(gpsFix(12, 3.5f)), 0f);
+        assertTrue((mockLocationAssistance.getLastSignals() & EXPENSIVE) != 0);
+    }
+
+    @Test
+    public void skippedStatefulChecks_stillObserveEveryFix() {
+        final boolean[] cheapFires = {true};
+        MockLocationAssistance mockLocationAssistance = new MockLocationAssistance.Builder()
+                .addCheck(CHEAP, 1f, MockLocationAssistance.COST_FIELD,
+                        new MockLocationAssistance.Check() {
+                            @Override
+                            public boolean isFired(@NonNull Location location) {
+                                return cheapFires[0];
+                            }
+                        })
+                .addRepeatedValuesCheck(0.5f, MockLocationAssistance.DEFAULT_REPEATED_FIXES)
+                .build();
+
+        for (int i = 1; i < MockLocationAssistance.DEFAULT_REPEATED_FIXES; i++) {
+            assertEquals(1f, mockLocationAssistance.evaluate(gpsFix(12, 5f)), 0f);
+            assertEquals(1, mockLocationAssistance.getLastChecksRun());
+        }
+
+        cheapFires[0] = false;
+        assertEquals(0.5f, mockLocationAssistance.evaluate(gpsFix(12, 5f)), 0f);
+        assertEquals(MockLocationAssistance.REPEATED_VALUES, mockLocationAssistance.getLastSignals());
+    }
+
+    @Test
+    public void wallClockOffTheGnssTime_isNotClockDrift() {
+        MockLocationAssistance mockLocationAssistance = new MockLocationAssistance.Builder()
+                .addClockDriftCheck(1f, MockLocationAssistance.DEFAULT_MAX_CLOCK_DRIFT_MILLIS)
+                .build();
+        // the user set the wall clock an hour ahead, GPS fixes keep carrying the GNSS time
+        long gnssTime = System.currentTimeMillis() - 3_600_000;
+        long realtimeNanos = SystemClock.elapsedRealtimeNanos();
+
+        for (int i = 0; i < 10; i++) {
+            Location location = gpsFix(12, 3.5f);
+            location.setTime(gnssTime + i * 1000);
+            location.setElapsedRealtimeNanos(realtimeNanos + i * 1_000_000_000L);
+            assertEquals(0f, mockLocationAssistance.evaluate(location), 0f);
+        }
+    }
+
+    @Test
+    public void timeAdvancingFasterThanRealtime_isClockDrift() {
+        MockLocationAssistance mockLocationAssistance = new MockLocationAssistance.Builder()
+                .addClockDriftCheck(1f, MockLocationAssistance.DEFAULT_MAX_CLOCK_DRIFT_MILLIS)
+                .build();
+        // a recorded track replayed with its original timestamps, ten times faster
+        long time = System.currentTimeMillis();
+        long realtimeNanos = SystemClock.elapsedRealtimeNanos();
+
+        Location first = gpsFix(12, 3.5f);
+        first.setTime(time);
+        first.setElapsedRealtimeNanos(realtimeNanos);
+        assertEquals(0f, mockLocationAssistance.evaluate(first), 0f);
+
+        Location second = gpsFix(12, 3.5f);
+        second.setTime(time + 10_000);
+        second.setElapsedRealtimeNanos(realtimeNanos + 1_000_000_000L);
+        assertEquals(1f, mockLocationAssistance.evaluate(second), 0f);
+        assertEquals(MockLocationAssistance.CLOCK_DRIFT, mockLocationAssistance.getLastSignals());
+    }
+
+    @Test
+    public void fixWithoutElapsedRealtime_isNotClockDrift() {
+        MockLocationAssistance mockLocationAssistance = new MockLocationAssistance.Builder()
+                .addClockDriftCheck(1f, MockLocationAssistance.DEFAULT_MAX_CLOCK_DRIFT_MILLIS)
+                .build();
+
+        for (int i = 0; i < 3; i++) {
+            Location location = gpsFix(12, 3.5f);
+            location.setElapsedRealtimeNanos(0);
+            location.setTime(location.getTime() - i * 60_000);
+            assertEquals(0f, mockLocationAssistance.evaluate(location), 0f);
+        }
+    }
+
+    @Test
+    public void missingSatellitesExtra_isUnknown() {
+        MockLocationAssistance mockLocationAssistance = new MockLocationAssistance.Builder()
+                .addSatellitesCheck(1f, MockLocationAssistance.DEFAULT_MIN_SATELLITES)
+                .build();
+
+        Location withoutExtras = gpsFix(12, 3.5f);
+        withoutExtras.setExtras(null);
+        assertEquals(0f, mockLocationAssistance.evaluate(withoutExtras), 0f);
+
+        Location withoutSatellites = gpsFix(12, 3.5f);
+        withoutSatellites.setExtras(new Bundle());
+        assertEquals(0f, mockLocationAssistance.evaluate(withoutSatellites), 0f);
+
+        assertEquals(1f, mockLocationAssistance.evaluate(gpsFix(2, 3.5f)), 0f);
+    }
+
+    private static Location gpsFix(int satellites, float accuracy) {
+        Location location = new Location(LocationManager.GPS_PROVIDER);
+        location.setLatitude(12.97);
+        location.setLongitude(77.59);
+        location.setAltitude(900);
+        location.setSpeed(1.5f);
+        location.setAccuracy(accuracy);
+        location.setTime(System.currentTimeMillis());
+        location.setElapsedRealtimeNanos(SystemClock.elapsedRealtimeNanos());
+
+        Bundle extras = new Bundle();
+        extras.putInt(MockLocationAssistance.SATELLITES_EXTRA, satellites);
+        location.setExtras(extras);
+        return location;
+    }
+}
@@ -0,0 +1,278 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Counts PackageManager calls made by {@link PackageScanner}
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.P)
+public class PackageScannerTest {
+
+    private static final int PACKAGE_COUNT = 300;
+    private static final String OWN_PACKAGE = "com.example.host";
+    private static final int CHUNK_SIZE = 8;
+    private static final long BLOCKED_CALL_MILLIS = 500;
+
+    private static final PackageSource.Listener<PackageRecord> STOP_AT_FIRST_MATCH =
+            new PackageSource.Listener<PackageRecord>() {
+                @Override
+                public boolean onPackage(PackageRecord packageRecord) {
+                    return packageRecord.requestsMockLocation();
+                }
+            };
+
+    private PackageManager packageManager;
+    private List<PackageInfo> packageInfoList;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        packageManager = mock(PackageManager.class);
+        packageInfoList = new ArrayList<>();
+        List<ApplicationInfo> applicationInfoList = new ArrayList<>();
+
+        for (int i = 0; i < PACKAGE_COUNT; i++) {
+            String[] permissions = i % 100 == 7
+                    ? new String[]{"android.permission.INTERNET", PackageScanner.ACCESS_MOCK_LOCATION}
+                    : new String[]{"android.permission.INTERNET"};
+            PackageInfo packageInfo = packageInfo("com.example.app" + i, permissions);
+            packageInfoList.add(packageInfo);
+            applicationInfoList.add(packageInfo.applicationInfo);
+            when(packageManager.getPackageInfo(packageInfo.packageName, PackageScanner.PERMISSION_FLAGS))
+                    .thenReturn(packageInfo);
+        }
+
+        PackageInfo host = packageInfo(OWN_PACKAGE, new String[]{PackageScanner.ACCESS_MOCK_LOCATION});
+        packageInfoList.add(host);
+        applicationInfoList.add(host.applicationInfo);
+        when(packageManager.getPackageInfo(OWN_PACKAGE, PackageScanner.PERMISSION_FLAGS)).thenReturn(host);
+
+        when(packageManager.getInstalledApplications(anyInt())).thenReturn(applicationInfoList);
+    }
+
+    @Test
+    public void bulkScan_usesSinglePackageManagerCall() throws Exception {
+        when(packageManager.getInstalledPackages(PackageScanner.PERMISSION_FLAGS)).thenReturn(packageInfoList);
+
+        PackageScanner.Result result = new PackageScanner(packageManager, OWN_PACKAGE)
+                .scan();
+
+        verify(packageManager, times(1)).getInstalledPackages(PackageScanner.PERMISSION_FLAGS);
+        verify(packageManager, never()).getInstalledApplications(anyInt());
+        verify(packageManager, never()).getPackageInfo(anyString(), anyInt());
+
+        assertEquals(3, result.getMatches().size());
+        assertEquals(PACKAGE_COUNT + 1, result.getPackagesExamined());
+        assertEquals(1, result.getPackageManagerCalls());
+        assertEquals(PACKAGE_COUNT, result.getIpcCallsSaved());
+    }
+
+    @Test
+    public void failedBulkScan_fallsBackToPerPackageCalls() throws Exception {
+        when(packageManager.getInstalledPackages(PackageScanner.PERMISSION_FLAGS))
+                .thenThrow(new RuntimeException("Package manager has died"));
+
+        PackageScanner.Result result = new PackageScanner(packageManager, OWN_PACKAGE)
+                .scan();
+
+        verify(packageManager, times(PACKAGE_COUNT))
+                .getPackageInfo(anyString(), eq(PackageScanner.PERMISSION_FLAGS));
+        verify(packageManager, never()).getPackageInfo(eq(OWN_PACKAGE), anyInt());
+
+        assertEquals(3, result.getMatches().size());
+        assertEquals(PACKAGE_COUNT + 2, result.getPackageManagerCalls());
+        assertEquals(0, result.getIpcCallsSaved());
+    }
+
+    @Test
+    public void failedBulkScan_splitsPerPackageCallsAcrossThreads() throws Exception {
+        when(packageManager.getInstalledPackages(PackageScanner.PERMISSION_FLAGS))
+                .thenThrow(new RuntimeException("Package manager has died"));
+        ExecutorService executorService = Executors.newFixedThreadPool(3);
+        ParallelMatcher parallelMatcher = new ParallelMatcher(executorService, 4, CHUNK_SIZE);
+
+        try {
+            PackageScanner.Result result = new PackageScanner(packageManager, OWN_PACKAGE,
+                    Cancellation.NONE, false, parallelMatcher).scan();
+
+            verify(packageManager, times(PACKAGE_COUNT))
+                    .getPackageInfo(anyString(), eq(PackageScanner.PERMISSION_FLAGS));
+            verify(packageManager, never()).getPackageInfo(eq(OWN_PACKAGE), anyInt());
+            assertEquals(PACKAGE_COUNT, result.getPackages().size());
+            for (int i = 0; i < PACKAGE_COUNT; i++)
+                assertEquals("com.example.app" + i, result.getPackages().get(i).getPackageName());
+            assertEquals(3, result.getMatches().size());
+            assertEquals(PACKAGE_COUNT + 2, result.getPackageManagerCalls());
+            assertEquals(PACKAGE_COUNT + 1, result.getPackagesExamined());
+            assertFalse(result.isCancelled());
+        } finally {
+            parallelMatcher.shutdown();
+        }
+        assertTrue(executorService.isShutdown());
+    }
+
+    @Test
+    public void stopAtFirstMatch_examinesPackagesUpToFirstMatch() {
+        when(packageManager.getInstalledPackages(PackageScanner.PERMISSION_FLAGS)).thenReturn(packageInfoList);
+
+        PackageScanner.Result result = new PackageScanner(packageManager, OWN_PACKAGE)
+                .scan(STOP_AT_FIRST_MATCH);
+
+        assertTrue(result.isStopped());
+        assertEquals(1, result.getMatches().size());
+        assertEquals(8, result.getPackagesExamined());
+        assertEquals(8, result.getPackages().size());
+    }
+
+    @Test
+    public void stopAtFirstMatch_stopsEveryThreadOfTheParallelFallback() throws Exception {
+        when(packageManager.getInstalledPackages(PackageScanner.PERMISSION_FLAGS))
+                .thenThrow(new RuntimeException("Package manager has died"));
+        final AtomicInteger calls = new AtomicInteger();
+        // packages past the first chunk block until well after the match, so every other
+        // thread is busy. Releasing them from the listener would race the match being recorded
+        when(packageManager.getPackageInfo(anyString(), eq(PackageScanner.PERMISSION_FLAGS)))
+                .thenAnswer(new Answer<PackageInfo>() {
+                    @Override
+                    public PackageInfo answer(InvocationOnMock invocation) throws Throwable {
+                        calls.incrementAndGet();
+                        int index = packageInfoList.indexOf(packageInfoNamed(
+                                invocation.<String>getArgument(0)));
+                        if (index >= CHUNK_SIZE) Thread.sleep(BLOCKED_CALL_MILLIS);
+                        return packageInfoList.get(index);
+                    }
+                });
+        ExecutorService executorService = Executors.newFixedThreadPool(3);
+        ParallelMatcher parallelMatcher = new ParallelMatcher(executorService, 4, CHUNK_SIZE);
+
+        try {
+            PackageScanner.Result result = new PackageScanner(packageManager, OWN_PACKAGE,
+                    Cancellation.NONE, false, parallelMatcher).scan(STOP_AT_FIRST_MATCH);
+
+            assertTrue(result.isStopped());
+            assertFalse(result.isCancelled());
+            assertEquals("com.example.app7", result.getMatches().get(0).packageName);
+            // the first chunk, plus the one call each other thread was blocked in
+            assertTrue("calls " + calls.get(), calls.get() <= CHUNK_SIZE + 3);
+        } finally {
+            parallelMatcher.shutdown();
+        }
+    }
+
+    @Test
+    public void verdictCache_queriesOnlyChangedPackages() throws Exception {
+        VerdictCache verdictCache = new VerdictCache(
+                new File(temporaryFolder.getRoot(), "verdicts.bin"), "test");
+        for (PackageInfo packageInfo : packageInfoList)
+            verdictCache.put(PackageRecord.from(packageInfo));
+
+        packageInfoList.get(3).lastUpdateTime = 1;
+        packageInfoList.get(5).lastUpdateTime = 1;
+        when(packageManager.getInstalledPackages(0)).thenReturn(packageInfoList);
+
+        PackageScanner.Result result = new PackageScanner(packageManager, OWN_PACKAGE)
+                .scan(verdictCache);
+
+        assertEquals(PACKAGE_COUNT, result.getPackages().size());
+        assertEquals(PACKAGE_COUNT - 2, result.getCachedVerdicts());
+        assertEquals(PACKAGE_COUNT / 100, result.getMatches().size());
+        verify(packageManager, never()).getInstalledPackages(PackageScanner.PERMISSION_FLAGS);
+        verify(packageManager, times(2)).getPackageInfo(anyString(), anyInt());
+    }
+
+    @Test
+    public void noCertificateRules_queryPermissionsOnly() throws Exception {
+        when(packageManager.getInstalledPackages(anyInt())).thenReturn(packageInfoList);
+
+        PackageScanner.Result result = new PackageScanner(packageManager, OWN_PACKAGE)
+                .scan();
+
+        verify(packageManager).getInstalledPackages(PackageManager.GET_PERMISSIONS);
+        verify(packageManager, never()).getInstalledPackages(PackageScanner.CERTIFICATE_FLAGS);
+        for (PackageRecord packageRecord : result.getPackages())
+            assertNull(packageRecord.getCertificateDigests());
+
+        new PackageScanner(packageManager, OWN_PACKAGE).load("com.example.app1", result);
+        verify(packageManager).getPackageInfo("com.example.app1", PackageManager.GET_PERMISSIONS);
+    }
+
+    @Test
+    public void certificateRules_querySigningCertificates() throws Exception {
+        when(packageManager.getInstalledPackages(anyInt())).thenReturn(packageInfoList);
+
+        new PackageScanner(packageManager, OWN_PACKAGE, Cancellation.NONE, true).scan();
+
+        verify(packageManager).getInstalledPackages(PackageScanner.CERTIFICATE_FLAGS);
+        verify(packageManager, never()).getInstalledPackages(PackageScanner.PERMISSION_FLAGS);
+    }
+
+    @Test
+    public void verdictsCachedWithoutCertificates_areReloadedWithThem() throws Exception {
+        VerdictCache verdictCache = new VerdictCache(
+                new File(temporaryFolder.getRoot(), "verdicts.bin"), "test");
+        for (PackageInfo packageInfo : packageInfoList)
+            verdictCache.put(PackageRecord.from(packageInfo));
+        when(packageManager.getInstalledPackages(anyInt())).thenReturn(packageInfoList);
+
+        PackageScanner.Result result = new PackageScanner(packageManager, OWN_PACKAGE,
+                Cancellation.NONE, true).scan(verdictCache);
+
+        assertEquals(0, result.getCachedVerdicts());
+        verify(packageManager).getInstalledPackages(PackageScanner.CERTIFICATE_FLAGS);
+    }
+
+    private PackageInfo packageInfoNamed(String packageName) {
+        for (PackageInfo packageInfo : packageInfoList)
+            if (packageInfo.packageName.equals(packageName)) return packageInfo;
+
+        return null;
+    }
+
+    private static PackageInfo packageInfo(String packageName, String[] permissions) {
+        ApplicationInfo applicationInfo = new ApplicationInfo();
+        applicationInfo.packageName = packageName;
+
+        PackageInfo packageInfo = new PackageInfo();
+        packageInfo.versionCode = 1;
+        packageInfo.packageName = packageName;
+        packageInfo.applicationInfo = applicationInfo;
+        packageInfo.requestedPermissions = permissions;
+        return packageInfo;
+    }
+}
@@ -0,0 +1,228 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.os.Build;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Incremental refreshes of {@link PackageSnapshot} driven by package broadcasts
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.P)
+public class PackageSnapshotTest {
+
+    private static final int PACKAGE_COUNT = 50;
+    private static final String OWN_PACKAGE = "com.example.host";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final Map<String, PackageInfo> installed = new LinkedHashMap<>();
+    private Context context;
+    private PackageManager packageManager;
+    private PackageSnapshot packageSnapshot;
+
+    @Before
+    public void setUp() throws Exception {
+        for (int i = 0; i < PACKAGE_COUNT; i++) install("com.example.app" + i, false);
+
+        packageManager = mock(PackageManager.class);
+        when(packageManager.getInstalledPackages(anyInt())).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                return new ArrayList<>(installed.values());
+            }
+        });
+        when(packageManager.getPackageInfo(anyString(), anyInt())).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                PackageInfo packageInfo = installed.get(invocation.<String>getArgument(0));
+                if (packageInfo == null) throw new PackageManager.NameNotFoundException();
+                return packageInfo;
+            }
+        });
+
+        context = mock(Context.class);
+        when(context.getCacheDir()).thenReturn(temporaryFolder.getRoot());
+        packageSnapshot = new PackageSnapshot(context);
+        packageSnapshot.setVerdictCacheEnabled(false);
+    }
+
+    @Test
+    public void packageBroadcasts_reloadOnlyTheNamedPackages() throws Exception {
+        assertEquals(PACKAGE_COUNT, packageSnapshot.refresh(scanner(Cancellation.NONE)).getPackages().size());
+
+        install("com.example.new", false);
+        broadcast(Intent.ACTION_PACKAGE_ADDED, "com.example.new");
+        install("com.example.app1", true);
+        broadcast(Intent.ACTION_PACKAGE_REPLACED, "com.example.app1");
+        installed.remove("com.example.app2");
+        broadcast(Intent.ACTION_PACKAGE_REMOVED, "com.example.app2");
+
+        PackageScanner.Result result = packageSnapshot.refresh(scanner(Cancellation.NONE));
+
+        assertFalse(result.isFullScan());
+        assertEquals(3, result.getPackageManagerCalls());
+        assertEquals(PACKAGE_COUNT, result.getPackages().size());
+        assertEquals(1, result.getMatches().size());
+        assertEquals("com.example.app1", result.getMatches().get(0).packageName);
+        assertFalse(packageNames(result).contains("com.example.app2"));
+        assertTrue(packageNames(result).contains("com.example.new"));
+
+        verify(packageManager, times(1)).getInstalledPackages(anyInt());
+        verify(packageManager, times(3)).getPackageInfo(anyString(), anyInt());
+
+        // nothing changed since
+        assertEquals(0, packageSnapshot.refresh(scanner(Cancellation.NONE)).getPackageManagerCalls());
+    }
+
+    @Test
+    public void maxAgeAndInvalidate_triggerFullRescans() {
+        packageSnapshot.refresh(scanner(Cancellation.NONE));
+        packageSnapshot.refresh(scanner(Cancellation.NONE));
+        verify(packageManager, times(1)).getInstalledPackages(anyInt());
+
+        packageSnapshot.setMaxAge(0);
+        assertTrue(packageSnapshot.refresh(scanner(Cancellation.NONE)).isFullScan());
+        verify(packageManager, times(2)).getInstalledPackages(anyInt());
+
+        packageSnapshot.setMaxAge(PackageSnapshot.DEFAULT_MAX_AGE_MILLIS);
+        assertFalse(packageSnapshot.refresh(scanner(Cancellation.NONE)).isFullScan());
+        verify(packageManager, times(2)).getInstalledPackages(anyInt());
+
+        packageSnapshot.invalidate();
+        assertTrue(packageSnapshot.refresh(scanner(Cancellation.NONE)).isFullScan());
+        verify(packageManager, times(3)).getInstalledPackages(anyInt());
+    }
+
+    @Test
+    public void cancelledRescan_keepsThePreviousSnapshot() {
+        packageSnapshot.refresh(scanner(Cancellation.NONE));
+
+        packageSnapshot.setMaxAge(0);
+        PackageScanner.Result cancelled = packageSnapshot.refresh(scanner(cancelledAfter(10)));
+        assertTrue(cancelled.isCancelled());
+        assertTrue(cancelled.getPackages().size() < PACKAGE_COUNT);
+
+        packageSnapshot.setMaxAge(PackageSnapshot.DEFAULT_MAX_AGE_MILLIS);
+        PackageScanner.Result result = packageSnapshot.refresh(scanner(Cancellation.NONE));
+        assertFalse(result.isFullScan());
+        assertEquals(PACKAGE_COUNT, result.getPackages().size());
+    }
+
+    @Test
+    public void rescanStoppedByTheListener_isNotKept() {
+        PackageScanner.Result stopped = packageSnapshot.refresh(scanner(Cancellation.NONE),
+                new PackageSource.Listener<PackageRecord>() {
+                    @Override
+                    public boolean onPackage(PackageRecord packageRecord) {
+                        return packageRecord.getPackageName().equals("com.example.app10");
+                    }
+                });
+        assertTrue(stopped.isStopped());
+        assertEquals(11, stopped.getPackages().size());
+
+        PackageScanner.Result result = packageSnapshot.refresh(scanner(Cancellation.NONE));
+        assertTrue(result.isFullScan());
+        assertEquals(PACKAGE_COUNT, result.getPackages().size());
+    }
+
+    @Test
+    public void changedPackagesOfACancelledRefresh_areRequeued() throws Exception {
+        packageSnapshot.refresh(scanner(Cancellation.NONE));
+        for (int i = 0; i < 3; i++) {
+            install("com.example.app" + i, true);
+            broadcast(Intent.ACTION_PACKAGE_REPLACED, "com.example.app" + i);
+        }
+
+        PackageScanner.Result cancelled = packageSnapshot.refresh(scanner(cancelledAfter(1)));
+        assertTrue(cancelled.isCancelled());
+        assertEquals(1, cancelled.getPackageManagerCalls());
+
+        PackageScanner.Result result = packageSnapshot.refresh(scanner(Cancellation.NONE));
+        assertFalse(result.isCancelled());
+        assertEquals(2, result.getPackageManagerCalls());
+        assertEquals(3, result.getMatches().size());
+        for (int i = 0; i < 3; i++)
+            verify(packageManager, times(1)).getPackageInfo("com.example.app" + i,
+                    PackageScanner.PERMISSION_FLAGS);
+    }
+
+    private PackageScanner scanner(Cancellation cancellation) {
+        return new PackageScanner(packageManager, OWN_PACKAGE, cancellation, false);
+    }
+
+    /**
+     * @return Cancellation that is cancelled from its (calls + 1)th poll on
+     */
+    private static Cancellation cancelledAfter(final int calls) {
+        return new Cancellation() {
+            private int polls;
+
+            @Override
+            public boolean isCancelled() {
+                return polls++ >= calls;
+            }
+        };
+    }
+
+    private void broadcast(String action, String packageName) {
+        ArgumentCaptor<BroadcastReceiver> receiver = ArgumentCaptor.forClass(BroadcastReceiver.class);
+        verify(context).registerReceiver(receiver.capture(), any(IntentFilter.class));
+        receiver.getValue().onReceive(context,
+                new Intent(action, Uri.fromParts("package", packageName, null)));
+    }
+
+    private void install(String packageName, boolean requestsMockLocation) {
+        ApplicationInfo applicationInfo = new ApplicationInfo();
+        applicationInfo.packageName = packageName;
+
+        PackageInfo packageInfo = new PackageInfo();
+        packageInfo.versionCode = installed.containsKey(packageName) ? 2 : 1;
+        packageInfo.packageName = packageName;
+        packageInfo.applicationInfo = applicationInfo;
+        packageInfo.requestedPermissions = requestsMockLocation
+                ? new String[]{PackageScanner.ACCESS_MOCK_LOCATION}
+                : new String[0];
+        installed.put(packageName, packageInfo);
+    }
+
+    private static ArrayList<String> packageNames(PackageScanner.Result result) {
+        ArrayList<String> packageNames = new ArrayList<>();
+        for (PackageRecord packageRecord : result.getPackages())
+            packageNames.add(packageRecord.getPackageName());
+        return packageNames;
+    }
+}
@@ -0,0 +1,87 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Early exit and accounting of {@link ParallelMatcher}
+ */
+public class ParallelMatcherTest {
+
+    private static final int ITEM_COUNT = 10_000;
+
+    private ExecutorService executorService;
+    private List<Integer> items;
+
+    @Before
+    public void setUp() {
+        executorService = Executors.newFixedThreadPool(3);
+        items = new ArrayList<>();
+        for (int i = 0; i < ITEM_COUNT; i++) items.add(i);
+    }
+
+    @After
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void noMatch_examinesEveryItem() {
+        ParallelMatcher.Match<Integer> match = new ParallelMatcher(executorService, 4)
+                .findAny(items, equalTo(-1), Cancellation.NONE);
+
+        assertNull(match.getItem());
+        assertEquals(ITEM_COUNT, match.getExamined());
+    }
+
+    @Test
+    public void earlyMatch_stopsEveryThread() {
+        final AtomicInteger calls = new AtomicInteger();
+        ParallelMatcher.Match<Integer> match = new ParallelMatcher(executorService, 4)
+                .findAny(items, new ParallelMatcher.Predicate<Integer>() {
+                    @Override
+                    public boolean matches(Integer item) {
+                        calls.incrementAndGet();
+                        return item == 3;
+                    }
+                }, Cancellation.NONE);
+
+        assertEquals(Integer.valueOf(3), match.getItem());
+        assertTrue(match.getExamined() < ITEM_COUNT / 10);
+        assertEquals(calls.get(), match.getExamined());
+    }
+
+    @Test
+    public void busyExecutor_callerFinishesAlone() {
+        ParallelMatcher.Match<Integer> match = new ParallelMatcher(new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                // never runs the helpers
+            }
+        }, 4).findAny(items, equalTo(ITEM_COUNT - 1), Cancellation.NONE);
+
+        assertEquals(Integer.valueOf(ITEM_COUNT - 1), match.getItem());
+        assertEquals(ITEM_COUNT, match.getExamined());
+    }
+
+    private static ParallelMatcher.Predicate<Integer> equalTo(final int value) {
+        return new ParallelMatcher.Predicate<Integer>() {
+            @Override
+            public boolean matches(Integer item) {
+                return item == value;
+            }
+        };
+    }
+}
@@ -0,0 +1,231 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Coalescing and cancellation of {@link ScanDispatcher} requests
+ */
+public class ScanDispatcherTest {
+
+    private static final String KEY = "scan";
+
+    private final List<Runnable> queued = new ArrayList<>();
+    private ScanDispatcher scanDispatcher;
+    private int scanRuns;
+    private boolean cancelledDuringScan;
+
+    @Before
+    public void setUp() {
+        scanDispatcher = new ScanDispatcher();
+        scanDispatcher.setExecutor(new Executor() {
+            @Override
+            public void execute(@NonNull Runnable runnable) {
+                queued.add(runnable);
+            }
+        });
+    }
+
+    @Test
+    public void requestsForTheSameKey_shareOneScan() {
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        RecordingCallback third = new RecordingCallback();
+
+        assertTrue(scanDispatcher.submit(KEY, scan(), first, new ScanHandle(Long.MAX_VALUE)));
+        assertFalse(scanDispatcher.submit(KEY, scan(), second, new ScanHandle(Long.MAX_VALUE)));
+        assertFalse(scanDispatcher.submit(KEY, scan(), third, new ScanHandle(Long.MAX_VALUE)));
+        assertEquals(1, queued.size());
+        runQueued();
+
+        assertEquals(1, scanRuns);
+        assertEquals(1, first.results);
+        assertEquals(1, second.results);
+        assertEquals(1, third.results);
+        assertEquals(Integer.valueOf(1), third.lastResult);
+
+        // the finished scan is not joined
+        assertTrue(scanDispatcher.submit(KEY, scan(), first, new ScanHandle(Long.MAX_VALUE)));
+        runQueued();
+        assertEquals(2, scanRuns);
+        assertEquals(Integer.valueOf(2), first.lastResult);
+    }
+
+    @Test
+    public void requestsForDifferentKeys_runSeparateScans() {
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+
+        assertTrue(scanDispatcher.submit(KEY, scan(), first, new ScanHandle(Long.MAX_VALUE)));
+        assertTrue(scanDispatcher.submit("other", scan(), second, new ScanHandle(Long.MAX_VALUE)));
+        runQueued();
+
+        assertEquals(2, scanRuns);
+        assertEquals(Integer.valueOf(1), first.lastResult);
+        assertEquals(Integer.valueOf(2), second.lastResult);
+    }
+
+    @Test
+    public void cancelledRequest_isNotCalledBack() {
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        ScanHandle firstHandle = new ScanHandle(Long.MAX_VALUE);
+        ScanHandle secondHandle = new ScanHandle(Long.MAX_VALUE);
+
+        assertTrue(scanDispatcher.submit(KEY, scan(), first, firstHandle));
+        assertFalse(scanDispatcher.submit(KEY, scan(), second, secondHandle));
+        assertTrue(firstHandle.cancel());
+        runQueued();
+
+        assertEquals(1, scanRuns);
+        assertFalse(cancelledDuringScan);
+        assertEquals(0, first.results);
+        assertEquals(1, second.results);
+        assertTrue(firstHandle.isCancelled());
+        assertFalse(secondHandle.cancel());
+    }
+
+    @Test
+    public void allRequestsCancelled_cancelsSharedScan() {
+        RecordingCallback callback = new RecordingCallback();
+        ScanHandle firstHandle = new ScanHandle(Long.MAX_VALUE);
+        ScanHandle secondHandle = new ScanHandle(Long.MAX_VALUE);
+
+        scanDispatcher.submit(KEY, scan(), callback, firstHandle);
+        scanDispatcher.submit(KEY, scan(), callback, secondHandle);
+        firstHandle.cancel();
+        secondHandle.cancel();
+
+        // a new request does not join the cancelled scan
+        assertTrue(scanDispatcher.submit(KEY, scan(), callback, new ScanHandle(Long.MAX_VALUE)));
+        runQueued();
+
+        assertEquals(1, scanRuns);
+        assertEquals(1, callback.results);
+    }
+
+    @Test
+    public void passedDeadline_stopsScan() {
+        RecordingCallback callback = new RecordingCallback();
+        scanDispatcher.submit(KEY, scan(), callback, new ScanHandle(System.nanoTime() - 1));
+        runQueued();
+
+        assertTrue(cancelledDuringScan);
+        assertEquals(1, callback.results);
+    }
+
+    @Test
+    public void joinedRequestWithLaterDeadline_keepsScanRunning() {
+        RecordingCallback expired = new RecordingCallback();
+        RecordingCallback later = new RecordingCallback();
+        ScanHandle laterHandle = new ScanHandle(Long.MAX_VALUE);
+
+        scanDispatcher.submit(KEY, scan(), expired, new ScanHandle(System.nanoTime() - 1));
+        scanDispatcher.submit(KEY, scan(), later, laterHandle);
+        runQueued();
+
+        assertFalse(cancelledDuringScan);
+        // completed at its own deadline, the scan had nothing to report yet
+        assertEquals(0, expired.results);
+        assertTrue(expired.lastError instanceof TimeoutException);
+        assertEquals(1, later.results);
+    }
+
+    @Test
+    public void joinedRequestWithEarlierDeadline_getsThePartialResult() {
+        RecordingCallback expired = new RecordingCallback();
+        RecordingCallback later = new RecordingCallback();
+
+        scanDispatcher.submit(KEY, new ScanDispatcher.PartialScan<Integer>() {
+            private int found;
+
+            @Override
+            public Integer run(@NonNull Cancellation cancellation) {
+                found = 1;
+                cancelledDuringScan = cancellation.isCancelled();
+                found = 2;
+                return found;
+            }
+
+            @Override
+            public Integer getPartialResult() {
+                return found;
+            }
+        }, expired, new ScanHandle(System.nanoTime() - 1));
+        scanDispatcher.submit(KEY, scan(), later, new ScanHandle(Long.MAX_VALUE));
+        runQueued();
+
+        assertFalse(cancelledDuringScan);
+        assertEquals(1, expired.results);
+        assertEquals(Integer.valueOf(1), expired.lastResult);
+        assertEquals(1, later.results);
+        assertEquals(Integer.valueOf(2), later.lastResult);
+    }
+
+    @Test
+    public void cancelledRequestWithLatestDeadline_givesBackTheEarlierDeadline() {
+        RecordingCallback callback = new RecordingCallback();
+        final ScanHandle laterHandle = new ScanHandle(Long.MAX_VALUE);
+
+        scanDispatcher.submit(KEY, new ScanDispatcher.Scan<Integer>() {
+            @Override
+            public Integer run(@NonNull Cancellation cancellation) {
+                laterHandle.cancel();
+                cancelledDuringScan = cancellation.isCancelled();
+                return 0;
+            }
+        }, callback, new ScanHandle(System.nanoTime() - 1));
+        // the scan of a joining request is not run
+        scanDispatcher.submit(KEY, scan(), callback, laterHandle);
+        runQueued();
+
+        assertTrue(cancelledDuringScan);
+        assertEquals(0, scanRuns);
+        // only the request that was not cancelled is called back
+        assertEquals(1, callback.results);
+    }
+
+    private ScanDispatcher.Scan<Integer> scan() {
+        return new ScanDispatcher.Scan<Integer>() {
+            @Override
+            public Integer run(@NonNull Cancellation cancellation) {
+                scanRuns++;
+                cancelledDuringScan = cancellation.isCancelled();
+                return scanRuns;
+            }
+        };
+    }
+
+    private void runQueued() {
+        for (Runnable runnable : new ArrayList<>(queued)) runnable.run();
+        queued.clear();
+    }
+
+    private static final class RecordingCallback implements ScanDispatcher.Callback<Integer> {
+        private int results;
+        private Integer lastResult;
+        private Exception lastError;
+
+        @Override
+        public void onComplete(Integer result) {
+            results++;
+            lastResult = result;
+        }
+
+        @Override
+        public void onError(Exception exception) {
+            lastError = exception;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.Signature;
+import android.os.Build;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Persistence and recovery of {@link VerdictCache}
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.P)
+public class VerdictCacheTest {
+
+    private static final String FINGERPRINT = "test/build:10/1";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp() {
+        file = new File(temporaryFolder.getRoot(), "verdicts.bin");
+    }
+
+    @Test
+    public void savedVerdicts_areReadByNextProcess() throws Exception {
+        VerdictCache verdictCache = new VerdictCache(file, FINGERPRINT);
+        verdictCache.put(packageRecord("com.example.mock", 100, true));
+        verdictCache.put(packageRecord("com.example.app", 200, false));
+        verdictCache.save();
+
+        VerdictCache reloaded = new VerdictCache(file, FINGERPRINT);
+        assertEquals(VerdictCache.REQUESTS_MOCK_LOCATION, reloaded.get("com.example.mock", 0, 100));
+        assertEquals(0, reloaded.get("com.example.app", 0, 200));
+        assertEquals(VerdictCache.MISSING, reloaded.get("com.example.app", 0, 201));
+    }
+
+    @Test
+    public void tornRecord_keepsEarlierRecords() throws Exception {
+        VerdictCache verdictCache = new VerdictCache(file, FINGERPRINT);
+        verdictCache.put(packageRecord("com.example.app", 100, false));
+        verdictCache.save();
+        verdictCache.put(packageRecord("com.example.mock", 100, true));
+        verdictCache.save();
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(randomAccessFile.length() - 3);
+        }
+
+        VerdictCache reloaded = new VerdictCache(file, FINGERPRINT);
+        assertEquals(0, reloaded.get("com.example.app", 0, 100));
+        assertEquals(VerdictCache.MISSING, reloaded.get("com.example.mock", 0, 100));
+
+        // the rewrite drops the torn record, so later appends stay readable
+        reloaded.put(packageRecord("com.example.mock", 100, true));
+        reloaded.save();
+        reloaded.put(packageRecord("com.example.other", 100, false));
+        reloaded.save();
+
+        VerdictCache recovered = new VerdictCache(file, FINGERPRINT);
+        assertEquals(VerdictCache.REQUESTS_MOCK_LOCATION, recovered.get("com.example.mock", 0, 100));
+        assertEquals(0, recovered.get("com.example.other", 0, 100));
+    }
+
+    @Test
+    public void certificateDigests_areReadByNextProcess() throws Exception {
+        PackageInfo packageInfo = packageInfo("com.example.renamed", 100);
+        packageInfo.signatures = new Signature[]{new Signature(new byte[]{1, 2, 3})};
+        PackageRecord packageRecord = PackageRecord.from(packageInfo);
+
+        VerdictCache verdictCache = new VerdictCache(file, FINGERPRINT);
+        verdictCache.put(packageRecord);
+        verdictCache.save();
+
+        VerdictCache reloaded = new VerdictCache(file, FINGERPRINT);
+        assertArrayEquals(CertificateDigestIndex.sha256(new byte[]{1, 2, 3}),
+                reloaded.getCertificateDigests("com.example.renamed", 0, 100));
+        assertNull(reloaded.getCertificateDigests("com.example.renamed", 0, 101));
+    }
+
+    @Test
+    public void newBuild_dropsCache() throws Exception {
+        VerdictCache verdictCache = new VerdictCache(file, FINGERPRINT);
+        verdictCache.put(packageRecord("com.example.app", 100, false));
+        verdictCache.retainAll(Collections.singleton("com.example.app"));
+        verdictCache.save();
+
+        assertTrue(new VerdictCache(file, "test/build:11/1").isEmpty());
+    }
+
+    private static PackageRecord packageRecord(String packageName, long lastUpdateTime,
+                                               boolean requestsMockLocation) {
+        return PackageRecord.from(packageInfo(packageName, lastUpdateTime), requestsMockLocation);
+    }
+
+    private static PackageInfo packageInfo(String packageName, long lastUpdateTime) {
+        PackageInfo packageInfo = new PackageInfo();
+        packageInfo.packageName = packageName;
+        packageInfo.lastUpdateTime = lastUpdateTime;
+        packageInfo.applicationInfo = new ApplicationInfo();
+        packageInfo.applicationInfo.packageName = packageName;
+        return packageInfo;
+    }
+}
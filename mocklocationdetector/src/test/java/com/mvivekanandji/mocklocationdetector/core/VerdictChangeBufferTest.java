@@ -0,0 +1,86 @@
+package com.mvivekanandji.mocklocationdetector.core;
+
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Merging of verdict changes between deliveries of a {@link DetectionMonitor}
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.P)
+public class VerdictChangeBufferTest {
+
+    private VerdictChangeBuffer verdictChangeBuffer;
+    private AppLabelCache appLabelCache;
+
+    @Before
+    public void setUp() {
+        verdictChangeBuffer = new VerdictChangeBuffer();
+        appLabelCache = new AppLabelCache(mock(PackageManager.class));
+    }
+
+    @Test
+    public void floodOfFixes_keepsOnlyLatestLocationVerdict() {
+        for (int i = 0; i < 1000; i++)
+            verdictChangeBuffer.add(VerdictChange.location(true, FixScorer.MOCK_PROVIDER, i));
+
+        List<VerdictChange> verdictChanges = verdictChangeBuffer.drain();
+        assertEquals(1, verdictChanges.size());
+        assertEquals(999, verdictChanges.get(0).getElapsedRealtimeNanos());
+        assertEquals(999, verdictChangeBuffer.getSuperseded());
+    }
+
+    @Test
+    public void verdictFlappingBetweenDeliveries_isNotReported() {
+        verdictChangeBuffer.add(VerdictChange.location(true, FixScorer.IMPOSSIBLE_SPEED, 1));
+        verdictChangeBuffer.drain();
+
+        verdictChangeBuffer.add(VerdictChange.location(false, 0, 2));
+        assertFalse(verdictChangeBuffer.add(VerdictChange.location(true, FixScorer.MOCK_PROVIDER, 3)));
+        assertTrue(verdictChangeBuffer.isEmpty());
+
+        // never reported as installed, so its removal is no news either
+        MockApp mockApp = mockApp("com.example.mock");
+        verdictChangeBuffer.add(VerdictChange.mockApp(mockApp, true, 4));
+        assertFalse(verdictChangeBuffer.add(VerdictChange.mockApp(mockApp, false, 5)));
+        assertTrue(verdictChangeBuffer.isEmpty());
+    }
+
+    @Test
+    public void removedApp_isReportedAfterItsInstall() {
+        MockApp mockApp = mockApp("com.example.mock");
+        verdictChangeBuffer.add(VerdictChange.mockApp(mockApp, true, 1));
+        verdictChangeBuffer.add(VerdictChange.location(true, FixScorer.MOCK_PROVIDER, 2));
+        assertEquals(2, verdictChangeBuffer.drain().size());
+
+        assertTrue(verdictChangeBuffer.add(VerdictChange.mockApp(mockApp, false, 3)));
+        List<VerdictChange> verdictChanges = verdictChangeBuffer.drain();
+        assertEquals(VerdictChange.Kind.MOCK_APP, verdictChanges.get(0).getKind());
+        assertFalse(verdictChanges.get(0).isDetected());
+    }
+
+    private MockApp mockApp(String packageName) {
+        PackageInfo packageInfo = new PackageInfo();
+        packageInfo.packageName = packageName;
+        packageInfo.applicationInfo = new ApplicationInfo();
+        packageInfo.applicationInfo.packageName = packageName;
+        return new MockApp(PackageRecord.from(packageInfo, true),
+                EnumSet.of(DetectionRule.KNOWN_MOCK_APP), appLabelCache);
+    }
+}
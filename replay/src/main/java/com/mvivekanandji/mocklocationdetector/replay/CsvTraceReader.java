@@ -0,0 +1,211 @@
+package com.mvivekanandji.mocklocationdetector.replay;
+
+import com.mvivekanandji.mocklocationdetector.core.Fix;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Locale;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Reads a comma separated trace, one fix per line, as exported from Location objects.
+ * <p>
+ * The first line names the columns, in any order and case:
+ * <ul>
+ * <li>latitude (lat) and longitude (lon, lng) in degrees, required</li>
+ * <li>time (timestamp), UTC as milliseconds since the epoch or ISO-8601</li>
+ * <li>elapsed_realtime_nanos</li>
+ * <li>altitude (alt) in metres, speed in m/s and accuracy in metres</li>
+ * <li>mock (is_mock, from_mock_provider), true or 1 if the fix came from a mock provider,
+ * as reported by Location.isFromMockProvider()</li>
+ * </ul>
+ * Other columns are ignored, as are blank lines and lines starting with #. Empty fields read
+ * as 0. Quoted fields are not supported.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+public final class CsvTraceReader implements TraceReader {
+
+    private static final int LATITUDE = 0;
+    private static final int LONGITUDE = 1;
+    private static final int TIME = 2;
+    private static final int ELAPSED_REALTIME_NANOS = 3;
+    private static final int ALTITUDE = 4;
+    private static final int SPEED = 5;
+    private static final int ACCURACY = 6;
+    private static final int MOCK = 7;
+    private static final int IGNORED = -1;
+
+    private final BufferedReader reader;
+
+    private int[] columns;
+    private int[] fieldStarts;
+    private int[] fieldEnds;
+    private long lineNumber;
+
+    public CsvTraceReader(Reader reader) {
+        this.reader = reader instanceof BufferedReader
+                ? (BufferedReader) reader
+                : new BufferedReader(reader, 1 << 16);
+    }
+
+    @Override
+    public boolean next(Fix fix) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty() || line.charAt(0) == '#') continue;
+
+            if (columns == null) {
+                readHeader(line);
+                continue;
+            }
+
+            readFix(line, fix);
+            return true;
+        }
+        return false;
+    }
+
+    private void readHeader(String line) throws IOException {
+        String[] names = line.split(",");
+        columns = new int[names.length];
+        fieldStarts = new int[names.length];
+        fieldEnds = new int[names.length];
+
+        boolean hasLatitude = false;
+        boolean hasLongitude = false;
+        for (int i = 0; i < names.length; i++) {
+            columns[i] = columnOf(names[i].trim().toLowerCase(Locale.ROOT));
+            hasLatitude |= columns[i] == LATITUDE;
+            hasLongitude |= columns[i] == LONGITUDE;
+        }
+
+        if (!hasLatitude || !hasLongitude)
+            throw new IOException("CSV header must name latitude and longitude columns: " + line);
+    }
+
+    private static int columnOf(String name) {
+        switch (name) {
+            case "latitude":
+            case "lat":
+                return LATITUDE;
+            case "longitude":
+            case "lon":
+            case "lng":
+                return LONGITUDE;
+            case "time":
+            case "timestamp":
+                return TIME;
+            case "elapsed_realtime_nanos":
+                return ELAPSED_REALTIME_NANOS;
+            case "altitude":
+            case "alt":
+                return ALTITUDE;
+            case "speed":
+                return SPEED;
+            case "accuracy":
+                return ACCURACY;
+            case "mock":
+            case "is_mock":
+            case "from_mock_provider":
+                return MOCK;
+            default:
+                return IGNORED;
+        }
+    }
+
+    private void readFix(String line, Fix fix) throws IOException {
+        int fields = split(line);
+        if (fields < columns.length)
+            throw new IOException("Line " + lineNumber + ": expected " + columns.length
+                    + " fields, found " + fields);
+
+        fix.setLatitude(0).setLongitude(0).setAltitude(0).setSpeed(0).setAccuracy(0).setTime(0)
+                .setElapsedRealtimeNanos(0).setFromMockProvider(false);
+
+        try {
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i] == IGNORED || fieldStarts[i] == fieldEnds[i]) continue;
+
+                String field = line.substring(fieldStarts[i], fieldEnds[i]).trim();
+                if (field.isEmpty()) continue;
+
+                switch (columns[i]) {
+                    case LATITUDE:
+                        fix.setLatitude(Double.parseDouble(field));
+                        break;
+                    case LONGITUDE:
+                        fix.setLongitude(Double.parseDouble(field));
+                        break;
+                    case TIME:
+                        fix.setTime(field.indexOf('-') < 0
+                                ? Long.parseLong(field)
+                                : Times.parseIso8601(field));
+                        break;
+                    case ELAPSED_REALTIME_NANOS:
+                        fix.setElapsedRealtimeNanos(Long.parseLong(field));
+                        break;
+                    case ALTITUDE:
+                        fix.setAltitude(Double.parseDouble(field));
+                        break;
+                    case SPEED:
+                        fix.setSpeed(Float.parseFloat(field));
+                        break;
+                    case ACCURACY:
+                        fix.setAccuracy(Float.parseFloat(field));
+                        break;
+                    case MOCK:
+                        fix.setFromMockProvider("1".equals(field) || "true".equalsIgnoreCase(field));
+                        break;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException included
+            throw new IOException("Line " + lineNumber + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Finds the bounds of the fields of the line that have a column, without allocating
+     *
+     * @return number of fields in the line
+     */
+    private int split(String line) {
+        int field = 0;
+        int start = 0;
+        int length = line.length();
+
+        for (int i = 0; i <= length; i++) {
+            if (i == length || line.charAt(i) == ',') {
+                if (field < fieldStarts.length) {
+                    fieldStarts[field] = start;
+                    fieldEnds[field] = i;
+                }
+                field++;
+                start = i + 1;
+            }
+        }
+        return field;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,144 @@
+package com.mvivekanandji.mocklocationdetector.replay;
+
+import com.mvivekanandji.mocklocationdetector.core.Fix;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Reads the track, route and way points of a GPX 1.0 or 1.1 file with a pull parser, so the
+ * document is never held in memory.
+ * <p>
+ * Besides lat, lon, ele and time, a point may carry speed (GPX 1.0, or any extension element
+ * named speed), accuracy in metres, or hdop, and a mock extension element set to true for
+ * fixes that came from a mock provider. Namespaces are ignored. DTDs are not processed.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+public final class GpxTraceReader implements TraceReader {
+
+    private final InputStream inputStream;
+    private final XMLStreamReader reader;
+
+    public GpxTraceReader(InputStream inputStream) throws IOException {
+        this.inputStream = inputStream;
+
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        try {
+            reader = factory.createXMLStreamReader(inputStream);
+        } catch (XMLStreamException e) {
+            throw new IOException("Not a GPX document", e);
+        }
+    }
+
+    @Override
+    public boolean next(Fix fix) throws IOException {
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && isPoint(reader.getLocalName())) {
+                    readPoint(fix);
+                    return true;
+                }
+            }
+            return false;
+
+        } catch (XMLStreamException e) {
+            throw new IOException("Malformed GPX: " + e.getMessage(), e);
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException included
+            throw new IOException("Malformed GPX point at line "
+                    + reader.getLocation().getLineNumber() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static boolean isPoint(String name) {
+        return "trkpt".equals(name) || "rtept".equals(name) || "wpt".equals(name);
+    }
+
+    /**
+     * Reads the point the reader is positioned on, up to its end element
+     */
+    private void readPoint(Fix fix) throws XMLStreamException {
+        String latitude = reader.getAttributeValue(null, "lat");
+        String longitude = reader.getAttributeValue(null, "lon");
+        if (latitude == null || longitude == null)
+            throw new IllegalArgumentException("point without lat and lon");
+
+        fix.setLatitude(Double.parseDouble(latitude.trim()))
+                .setLongitude(Double.parseDouble(longitude.trim()))
+                .setAltitude(0).setSpeed(0).setAccuracy(0).setTime(0).setElapsedRealtimeNanos(0)
+                .setFromMockProvider(false);
+
+        float hdop = 0;
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+                continue;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) continue;
+
+            String name = reader.getLocalName();
+            switch (name) {
+                case "ele":
+                    fix.setAltitude(Double.parseDouble(reader.getElementText().trim()));
+                    break;
+                case "time":
+                    fix.setTime(Times.parseIso8601(reader.getElementText().trim()));
+                    break;
+                case "speed":
+                    fix.setSpeed(Float.parseFloat(reader.getElementText().trim()));
+                    break;
+                case "accuracy":
+                    fix.setAccuracy(Float.parseFloat(reader.getElementText().trim()));
+                    break;
+                case "hdop":
+                    hdop = Float.parseFloat(reader.getElementText().trim());
+                    break;
+                case "mock":
+                    String mock = reader.getElementText().trim();
+                    fix.setFromMockProvider("1".equals(mock) || "true".equalsIgnoreCase(mock));
+                    break;
+                default:
+                    // getElementText() consumed the end element of the cases above
+                    depth++;
+            }
+        }
+
+        if (fix.getAccuracy() == 0) fix.setAccuracy(hdop * NmeaTraceReader.METRES_PER_HDOP);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } finally {
+            inputStream.close();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.mvivekanandji.mocklocationdetector.replay;
+
+import com.mvivekanandji.mocklocationdetector.core.Fix;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Reads an NMEA 0183 log, as recorded by GPS receivers or by Android's OnNmeaMessageListener.
+ * <p>
+ * Each valid RMC sentence makes one fix, from any talker (GP, GN, GL...). Altitude and
+ * accuracy come from the GGA sentence of the same time, if it precedes the RMC; accuracy is
+ * estimated from the HDOP. Other sentences, sentences with a wrong checksum and RMC sentences
+ * with a void status are skipped. Parsing does not allocate beyond reading the lines.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+public final class NmeaTraceReader implements TraceReader {
+
+    /**
+     * Accuracy in metres per unit of HDOP, a typical user equivalent range error
+     */
+    static final float METRES_PER_HDOP = 5f;
+
+    private static final double METRES_PER_SECOND_PER_KNOT = 0.514444;
+    private static final int MAX_FIELDS = 24;
+
+    private final BufferedReader reader;
+    private final int[] fieldStarts = new int[MAX_FIELDS];
+    private final int[] fieldEnds = new int[MAX_FIELDS];
+    private int fieldCount;
+
+    private int ggaMillisOfDay = -1;
+    private double ggaAltitude;
+    private float ggaHdop;
+
+    private long skippedSentences;
+
+    public NmeaTraceReader(Reader reader) {
+        this.reader = reader instanceof BufferedReader
+                ? (BufferedReader) reader
+                : new BufferedReader(reader, 1 << 16);
+    }
+
+    @Override
+    public boolean next(Fix fix) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int start = line.indexOf('$');
+            if (start < 0) continue;
+
+            int end = line.indexOf('*', start);
+            if (end < 0) end = line.length();
+            else if (!isChecksumValid(line, start, end)) {
+                skippedSentences++;
+                continue;
+            }
+
+            split(line, start + 1, end);
+            if (fieldEnds[0] - fieldStarts[0] != 5) {
+                skippedSentences++;
+                continue;
+            }
+
+            int type = fieldStarts[0] + 2;
+            if (line.startsWith("GGA", type)) {
+                readGga(line);
+            } else if (line.startsWith("RMC", type)) {
+                if (readRmc(line, fix)) return true;
+                skippedSentences++;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Getter
+     * @return number of sentences skipped for a wrong checksum, a malformed or void fix so far
+     */
+    public long getSkippedSentences() {
+        return skippedSentences;
+    }
+
+    private static boolean isChecksumValid(String line, int start, int end) {
+        if (end + 3 > line.length()) return false;
+
+        int expected = Character.digit(line.charAt(end + 1), 16) << 4
+                | Character.digit(line.charAt(end + 2), 16);
+        int checksum = 0;
+        for (int i = start + 1; i < end; i++) checksum ^= line.charAt(i);
+
+        return checksum == expected;
+    }
+
+    private void split(String line, int start, int end) {
+        fieldCount = 0;
+        for (int i = start; i <= end && fieldCount < MAX_FIELDS; i++) {
+            if (i == end || line.charAt(i) == ',') {
+                fieldStarts[fieldCount] = start;
+                fieldEnds[fieldCount] = i;
+                fieldCount++;
+                start = i + 1;
+            }
+        }
+    }
+
+    private boolean isEmpty(int field) {
+        return field >= fieldCount || fieldStarts[field] == fieldEnds[field];
+    }
+
+    // $--GGA,hhmmss.ss,llll.ll,a,yyyyy.yy,a,quality,satellites,hdop,altitude,M,...
+    private void readGga(String line) {
+        ggaMillisOfDay = -1;
+        if (isEmpty(9) || isEmpty(1) || isEmpty(6) || line.charAt(fieldStarts[6]) == '0') return;
+
+        try {
+            ggaMillisOfDay = millisOfDay(line, 1);
+            ggaHdop = isEmpty(8) ? 0 : (float) decimal(line, 8);
+            ggaAltitude = decimal(line, 9);
+        } catch (IllegalArgumentException e) {
+            ggaMillisOfDay = -1;
+            skippedSentences++;
+        }
+    }
+
+    // $--RMC,hhmmss.ss,status,llll.ll,a,yyyyy.yy,a,knots,course,ddmmyy,...
+    private boolean readRmc(String line, Fix fix) {
+        if (isEmpty(9) || isEmpty(1) || isEmpty(3) || isEmpty(5)
+                || line.charAt(fieldStarts[2]) != 'A')
+            return false;
+
+        try {
+            int millisOfDay = millisOfDay(line, 1);
+            long time = Times.epochMillis(year(line, 9), Times.digits(line, fieldStarts[9] + 2, 2),
+                    Times.digits(line, fieldStarts[9], 2), 0, 0, 0, 0);
+            if (time == Times.INVALID) return false;
+
+            boolean hasGga = millisOfDay == ggaMillisOfDay;
+            fix.setLatitude(coordinate(line, 3, 'S'))
+                    .setLongitude(coordinate(line, 5, 'W'))
+                    .setSpeed(isEmpty(7) ? 0 : (float) (decimal(line, 7) * METRES_PER_SECOND_PER_KNOT))
+                    .setAltitude(hasGga ? ggaAltitude : 0)
+                    .setAccuracy(hasGga ? ggaHdop * METRES_PER_HDOP : 0)
+                    .setTime(time + millisOfDay)
+                    .setElapsedRealtimeNanos(0)
+                    .setFromMockProvider(false);
+            return true;
+
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private int year(String line, int field) {
+        int year = Times.digits(line, fieldStarts[field] + 4, 2);
+        return year < 80 ? 2000 + year : 1900 + year;
+    }
+
+    private int millisOfDay(String line, int field) {
+        if (fieldEnds[field] - fieldStarts[field] < 6) throw new IllegalArgumentException();
+
+        int start = fieldStarts[field];
+        int hours = Times.digits(line, start, 2);
+        int minutes = Times.digits(line, start + 2, 2);
+        double seconds = decimal(line, field) % 100;
+        if (hours > 23 || minutes > 59) throw new IllegalArgumentException();
+
+        return (hours * 60 + minutes) * 60_000 + (int) Math.round(seconds * 1000);
+    }
+
+    /**
+     * @param field      field of the ddmm.mmmm value, followed by the hemisphere field
+     * @param negativeHemisphere S or W
+     */
+    private double coordinate(String line, int field, char negativeHemisphere) {
+        double value = decimal(line, field);
+        double degrees = Math.floor(value / 100);
+        double coordinate = degrees + (value - degrees * 100) / 60;
+
+        return !isEmpty(field + 1) && line.charAt(fieldStarts[field + 1]) == negativeHemisphere
+                ? -coordinate
+                : coordinate;
+    }
+
+    /**
+     * Parses a plain decimal number, as NMEA writes them, without allocating
+     *
+     * @throws IllegalArgumentException if the field is not a decimal number
+     */
+    private double decimal(String line, int field) {
+        int position = fieldStarts[field];
+        int end = fieldEnds[field];
+        boolean negative = position < end && line.charAt(position) == '-';
+        if (negative) position++;
+        if (position == end) throw new IllegalArgumentException();
+
+        long mantissa = 0;
+        int fractionDigits = -1;
+        for (; position < end; position++) {
+            char c = line.charAt(position);
+            if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+                continue;
+            }
+            if (c < '0' || c > '9') throw new IllegalArgumentException();
+
+            mantissa = mantissa * 10 + (c - '0');
+            if (fractionDigits >= 0) fractionDigits++;
+        }
+
+        double value = fractionDigits > 0 ? mantissa / Math.pow(10, fractionDigits) : mantissa;
+        return negative ? -value : value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
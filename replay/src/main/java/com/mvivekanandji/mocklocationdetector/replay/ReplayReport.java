@@ -0,0 +1,147 @@
+package com.mvivekanandji.mocklocationdetector.replay;
+
+import com.mvivekanandji.mocklocationdetector.core.FixScorer;
+
+import java.util.Locale;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Throughput and verdict counts of one or more replayed traces.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+public final class ReplayReport {
+
+    private static final int[] FLAGS = {FixScorer.MOCK_PROVIDER, FixScorer.IMPOSSIBLE_SPEED,
+            FixScorer.IMPOSSIBLE_ACCELERATION, FixScorer.TIME_REVERSAL, FixScorer.CONSTANT_SENSORS};
+    private static final String[] FLAG_NAMES = {"mock provider", "impossible speed",
+            "impossible acceleration", "time reversal", "constant sensors"};
+
+    private final String name;
+    private long fixes;
+    private long spoofedFixes;
+    private final long[] flagCounts = new long[FLAGS.length];
+    private long wallNanos;
+    private long allocatedBytes;
+
+    ReplayReport(String name) {
+        this.name = name;
+    }
+
+    void record(boolean spoofed, int flags) {
+        fixes++;
+        if (spoofed) spoofedFixes++;
+        if (flags == 0) return;
+
+        for (int i = 0; i < FLAGS.length; i++)
+            if ((flags & FLAGS[i]) != 0) flagCounts[i]++;
+    }
+
+    void setWallNanos(long wallNanos) {
+        this.wallNanos = wallNanos;
+    }
+
+    void setAllocatedBytes(long allocatedBytes) {
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * Adds the counts of another report to this one
+     */
+    void add(ReplayReport report) {
+        fixes += report.fixes;
+        spoofedFixes += report.spoofedFixes;
+        for (int i = 0; i < FLAGS.length; i++) flagCounts[i] += report.flagCounts[i];
+        wallNanos += report.wallNanos;
+        allocatedBytes = allocatedBytes < 0 || report.allocatedBytes < 0
+                ? -1
+                : allocatedBytes + report.allocatedBytes;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getFixes() {
+        return fixes;
+    }
+
+    /**
+     * Getter
+     * @return number of fixes that scored at or above the threshold of the replay
+     */
+    public long getSpoofedFixes() {
+        return spoofedFixes;
+    }
+
+    /**
+     * @param flag one of the FixScorer flag constants
+     * @return number of fixes for which the rule fired
+     */
+    public long getFlagCount(int flag) {
+        for (int i = 0; i < FLAGS.length; i++)
+            if (FLAGS[i] == flag) return flagCounts[i];
+
+        throw new IllegalArgumentException("Unknown flag: " + flag);
+    }
+
+    /**
+     * Getter - including the time spent reading and parsing the trace
+     * @return nanoseconds
+     */
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    public double getFixesPerSecond() {
+        return wallNanos == 0 ? 0 : fixes * 1e9 / wallNanos;
+    }
+
+    /**
+     * Getter - bytes allocated by the replaying thread, parsing included
+     * @return bytes, -1 if the JVM does not measure thread allocations
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return bytes per second, -1 if the JVM does not measure thread allocations
+     */
+    public double getAllocationRate() {
+        if (allocatedBytes < 0) return -1;
+        return wallNanos == 0 ? 0 : allocatedBytes * 1e9 / wallNanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(name).append(": ")
+                .append(String.format(Locale.ROOT, "%d fixes in %.3f s, %.0f fixes/s",
+                        fixes, wallNanos / 1e9, getFixesPerSecond()));
+
+        if (allocatedBytes >= 0)
+            builder.append(String.format(Locale.ROOT, ", %.1f MB/s allocated (%.0f B/fix)",
+                    getAllocationRate() / 1e6, fixes == 0 ? 0.0 : (double) allocatedBytes / fixes));
+
+        builder.append(String.format(Locale.ROOT, "%n  spoofed %d (%.2f%%)", spoofedFixes,
+                fixes == 0 ? 0.0 : spoofedFixes * 100.0 / fixes));
+        for (int i = 0; i < FLAGS.length; i++)
+            builder.append(i == 0 ? ": " : ", ").append(FLAG_NAMES[i]).append(' ').append(flagCounts[i]);
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,39 @@
+package com.mvivekanandji.mocklocationdetector.replay;
+
+import com.mvivekanandji.mocklocationdetector.core.Fix;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Reads the fixes of a recorded trace one at a time, so traces of any size can be replayed
+ * in constant memory.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+public interface TraceReader extends Closeable {
+
+    /**
+     * Reads the next fix of the trace into the given fix, overwriting every field
+     *
+     * @param fix Fix, reused for every fix of the trace
+     * @return false at the end of the trace, the fix is left unchanged
+     * @throws IOException if the trace cannot be read or is malformed
+     */
+    boolean next(Fix fix) throws IOException;
+}
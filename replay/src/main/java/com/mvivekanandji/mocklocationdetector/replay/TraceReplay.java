@@ -0,0 +1,224 @@
+package com.mvivekanandji.mocklocationdetector.replay;
+
+import com.mvivekanandji.mocklocationdetector.core.Fix;
+import com.mvivekanandji.mocklocationdetector.core.FixScorer;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Copyright 2019 Vivekanand Mishra.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * <p>
+ * Replays recorded traces through the location checks of the library on a plain JVM, to
+ * measure detection and throughput before shipping an update.
+ * <p>
+ * Every fix goes through {@link FixScorer}, the checks behind the detector's location
+ * verdicts: the mock provider flag that isMockLocation reports, impossible travel and
+ * constant sensors. Each trace is replayed as its own stream. Traces are read one fix at a
+ * time into a single reused {@link Fix}, so memory use does not grow with their size.
+ *
+ * @author vivekanand
+ * @version 1.0
+ */
+public final class TraceReplay {
+
+    /**
+     * Score from which a fix is counted as spoofed
+     */
+    public static final float DEFAULT_THRESHOLD = FixScorer.DEFAULT_CONSTANT_SENSORS_THRESHOLD;
+
+    private static final String USAGE = "Usage: replay [--threshold <score>] [--repeat <passes>]"
+            + " [--format gpx|csv|nmea] <trace>...\n"
+            + "Traces are read by extension (.gpx, .csv, .nmea, .nmea.txt, .log), optionally"
+            + " gzip compressed (.gz).\n"
+            + "With --repeat, earlier passes warm up the JIT and only the last one is reported.";
+
+    private final FixScorer fixScorer;
+    private final float threshold;
+
+    public TraceReplay() {
+        this(new FixScorer(), DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param fixScorer FixScorer owned by this replay
+     * @param threshold score from which a fix is counted as spoofed
+     */
+    public TraceReplay(FixScorer fixScorer, float threshold) {
+        this.fixScorer = fixScorer;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Replays a trace to its end, the reader is not closed
+     *
+     * @param name   name of the trace in the report
+     * @param reader TraceReader
+     * @return ReplayReport
+     * @throws IOException if the trace cannot be read
+     */
+    public ReplayReport replay(String name, TraceReader reader) throws IOException {
+        ReplayReport report = new ReplayReport(name);
+        Fix fix = new Fix();
+        fixScorer.reset();
+
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+
+        while (reader.next(fix)) {
+            float score = fixScorer.score(fix);
+            report.record(score >= threshold, fixScorer.getLastFlags());
+        }
+
+        report.setWallNanos(System.nanoTime() - start);
+        long allocatedAfter = allocatedBytes();
+        report.setAllocatedBytes(allocatedBefore < 0 || allocatedAfter < 0
+                ? -1
+                : allocatedAfter - allocatedBefore);
+        return report;
+    }
+
+    /**
+     * @return bytes allocated by the current thread so far, -1 if the JVM does not measure it
+     */
+    static long allocatedBytes() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) return -1;
+
+        com.sun.management.ThreadMXBean hotSpotThreadMXBean =
+                (com.sun.management.ThreadMXBean) threadMXBean;
+        if (!hotSpotThreadMXBean.isThreadAllocatedMemorySupported()
+                || !hotSpotThreadMXBean.isThreadAllocatedMemoryEnabled())
+            return -1;
+
+        return hotSpotThreadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Opens a trace file
+     *
+     * @param file   File, gzip compressed if its name ends with .gz
+     * @param format gpx, csv or nmea, or null to pick it by the file's extension
+     * @return TraceReader, to be closed by the caller
+     * @throws IOException if the file cannot be opened or its format is unknown
+     */
+    public static TraceReader open(File file, String format) throws IOException {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        boolean compressed = name.endsWith(".gz");
+        if (compressed) name = name.substring(0, name.length() - 3);
+
+        if (format == null) format = formatOf(name);
+        if (format == null) throw new IOException("Unknown trace format: " + file);
+
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            inputStream = compressed
+                    ? new GZIPInputStream(inputStream, 1 << 16)
+                    : new BufferedInputStream(inputStream, 1 << 16);
+
+            switch (format) {
+                case "gpx":
+                    return new GpxTraceReader(inputStream);
+                case "csv":
+                    return new CsvTraceReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+                case "nmea":
+                    return new NmeaTraceReader(new InputStreamReader(inputStream, StandardCharsets.US_ASCII));
+                default:
+                    throw new IOException("Unknown trace format: " + format);
+            }
+        } catch (IOException | RuntimeException e) {
+            inputStream.close();
+            throw e;
+        }
+    }
+
+    private static String formatOf(String name) {
+        if (name.endsWith(".gpx")) return "gpx";
+        if (name.endsWith(".csv")) return "csv";
+        if (name.endsWith(".nmea") || name.endsWith(".nmea.txt") || name.endsWith(".log"))
+            return "nmea";
+        return null;
+    }
+
+    public static void main(String[] args) {
+        float threshold = DEFAULT_THRESHOLD;
+        int passes = 1;
+        String format = null;
+        List<File> files = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--threshold":
+                        threshold = Float.parseFloat(args[++i]);
+                        break;
+                    case "--repeat":
+                        passes = Integer.parseInt(args[++i]);
+                        break;
+                    case "--format":
+                        format = args[++i].toLowerCase(Locale.ROOT);
+                        break;
+                    case "--help":
+                        System.out.println(USAGE);
+                        return;
+                    default:
+                        files.add(new File(args[i]));
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            files.clear();
+        }
+
+        if (files.isEmpty() || passes < 1 || threshold <= 0) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        TraceReplay traceReplay = new TraceReplay(new FixScorer(), threshold);
+        ReplayReport total = new ReplayReport("total");
+        boolean failed = false;
+
+        for (File file : files) {
+            try {
+                ReplayReport report = null;
+                for (int pass = 0; pass < passes; pass++) {
+                    try (TraceReader reader = open(file, format)) {
+                        report = traceReplay.replay(file.getName(), reader);
+                    }
+                }
+                System.out.println(report);
+                total.add(report);
+
+            } catch (IOException e) {
+                System.err.println(file + ": " + e.getMessage());
+                failed = true;
+            }
+        }
+
+        if (files.size() > 1) System.out.println(total);
+        if (failed) System.exit(1);
+    }
+}
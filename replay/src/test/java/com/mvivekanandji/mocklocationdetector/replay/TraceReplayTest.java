@@ -0,0 +1,132 @@
+package com.mvivekanandji.mocklocationdetector.replay;
+
+import com.mvivekanandji.mocklocationdetector.core.Fix;
+import com.mvivekanandji.mocklocationdetector.core.FixScorer;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TraceReplayTest {
+
+    private static final long MAY_1_2019_10H = 1556704800000L;
+
+    @Test
+    public void csv_readsColumnsInAnyOrder() throws IOException {
+        CsvTraceReader reader = new CsvTraceReader(new StringReader(
+                "# exported trace\n"
+                        + "Time,Accuracy,Lng,Lat,Mock,Provider\n"
+                        + "1556704800000,4.5,77.2090,28.6139,false,gps\n"
+                        + "\n"
+                        + "2019-05-01T10:00:01.500Z,,77.2091,28.6140,1,gps\n"));
+        Fix fix = new Fix();
+
+        assertTrue(reader.next(fix));
+        assertEquals(28.6139, fix.getLatitude(), 1e-9);
+        assertEquals(77.2090, fix.getLongitude(), 1e-9);
+        assertEquals(4.5f, fix.getAccuracy(), 0);
+        assertEquals(MAY_1_2019_10H, fix.getTime());
+        assertFalse(fix.isFromMockProvider());
+
+        assertTrue(reader.next(fix));
+        assertEquals(0, fix.getAccuracy(), 0);
+        assertEquals(MAY_1_2019_10H + 1500, fix.getTime());
+        assertTrue(fix.isFromMockProvider());
+
+        assertFalse(reader.next(fix));
+    }
+
+    @Test(expected = IOException.class)
+    public void csv_withoutCoordinates_isRejected() throws IOException {
+        new CsvTraceReader(new StringReader("time,speed\n1,2\n")).next(new Fix());
+    }
+
+    @Test
+    public void gpx_readsPointsAndExtensions() throws IOException {
+        String gpx = "<?xml version=\"1.0\"?>\n"
+                + "<gpx version=\"1.1\" xmlns=\"http://www.topografix.com/GPX/1/1\">"
+                + "<trk><name>walk</name><trkseg>"
+                + "<trkpt lat=\"28.6139\" lon=\"77.2090\"><ele>216.5</ele>"
+                + "<time>2019-05-01T15:30:00+05:30</time><hdop>2</hdop></trkpt>"
+                + "<trkpt lat=\"28.6140\" lon=\"77.2091\"><time>2019-05-01T10:00:01Z</time>"
+                + "<extensions><speed>1.4</speed><accuracy>3</accuracy><mock>true</mock></extensions>"
+                + "</trkpt>"
+                + "</trkseg></trk></gpx>";
+        GpxTraceReader reader = new GpxTraceReader(
+                new ByteArrayInputStream(gpx.getBytes(StandardCharsets.UTF_8)));
+        Fix fix = new Fix();
+
+        assertTrue(reader.next(fix));
+        assertEquals(28.6139, fix.getLatitude(), 1e-9);
+        assertEquals(216.5, fix.getAltitude(), 1e-9);
+        assertEquals(MAY_1_2019_10H, fix.getTime());
+        assertEquals(2 * NmeaTraceReader.METRES_PER_HDOP, fix.getAccuracy(), 0);
+        assertFalse(fix.isFromMockProvider());
+
+        assertTrue(reader.next(fix));
+        assertEquals(0, fix.getAltitude(), 0);
+        assertEquals(1.4f, fix.getSpeed(), 0);
+        assertEquals(3f, fix.getAccuracy(), 0);
+        assertTrue(fix.isFromMockProvider());
+
+        assertFalse(reader.next(fix));
+        reader.close();
+    }
+
+    @Test
+    public void nmea_joinsGgaWithRmcAndSkipsBadSentences() throws IOException {
+        NmeaTraceReader reader = new NmeaTraceReader(new StringReader(
+                withChecksum("GPGGA,100000.00,2836.834,N,07712.540,E,1,08,1.5,216.0,M,,M,,") + "\n"
+                        + withChecksum("GPRMC,100000.00,A,2836.834,N,07712.540,E,2.0,,010519,,,A") + "\n"
+                        + "$GPRMC,100001.00,A,2836.834,N,07712.540,E,2.0,,010519,,,A*00\n"
+                        + withChecksum("GNRMC,100002.00,V,,,,,,,010519,,,N") + "\n"
+                        + withChecksum("GNRMC,100003.50,A,3352.000,S,15112.000,W,0.0,,010519,,,A") + "\n"));
+        Fix fix = new Fix();
+
+        assertTrue(reader.next(fix));
+        assertEquals(28 + 36.834 / 60, fix.getLatitude(), 1e-9);
+        assertEquals(77 + 12.540 / 60, fix.getLongitude(), 1e-9);
+        assertEquals(216.0, fix.getAltitude(), 1e-9);
+        assertEquals(1.5f * NmeaTraceReader.METRES_PER_HDOP, fix.getAccuracy(), 1e-6);
+        assertEquals(1.028888f, fix.getSpeed(), 1e-5);
+        assertEquals(MAY_1_2019_10H, fix.getTime());
+
+        assertTrue(reader.next(fix));
+        assertEquals(-(33 + 52.0 / 60), fix.getLatitude(), 1e-9);
+        assertEquals(-(151 + 12.0 / 60), fix.getLongitude(), 1e-9);
+        assertEquals(0, fix.getAltitude(), 0);
+        assertEquals(MAY_1_2019_10H + 3500, fix.getTime());
+
+        assertFalse(reader.next(fix));
+        assertEquals(2, reader.getSkippedSentences());
+    }
+
+    @Test
+    public void replay_countsVerdicts() throws IOException {
+        StringBuilder csv = new StringBuilder("time,latitude,longitude,accuracy,mock\n");
+        for (int i = 0; i < 10; i++)
+            csv.append(MAY_1_2019_10H + i * 1000).append(",28.6139,77.2090,5,").append(i < 3).append('\n');
+
+        ReplayReport report = new TraceReplay().replay("trace",
+                new CsvTraceReader(new StringReader(csv.toString())));
+
+        assertEquals(10, report.getFixes());
+        assertEquals(3, report.getFlagCount(FixScorer.MOCK_PROVIDER));
+        assertEquals(0, report.getFlagCount(FixScorer.IMPOSSIBLE_SPEED));
+        assertTrue(report.getSpoofedFixes() >= 3);
+        assertTrue(report.getWallNanos() > 0);
+    }
+
+    private static String withChecksum(String sentence) {
+        int checksum = 0;
+        for (int i = 0; i < sentence.length(); i++) checksum ^= sentence.charAt(i);
+        return String.format("$%s*%02X", sentence, checksum);
+    }
+}